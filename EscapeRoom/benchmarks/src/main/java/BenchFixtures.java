@@ -0,0 +1,127 @@
+import escaperoom.bench.Fixtures;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Random;
+
+// Game-side half of the benchmark fixtures, see escaperoom.bench.Fixtures
+public class BenchFixtures implements Fixtures {
+
+    // Output is rendered as in a real session, then flushed to a sink that drops it
+    @Override
+    public CommandFixture commands() {
+        GameOutput out = GameOutput.discard();
+        GameEngine engine = new GameEngine(World.createDefault(), new BufferedReader(new StringReader("")), out);
+        return command -> {
+            engine.processCommand(command);
+            out.flush();
+        };
+    }
+
+    @Override
+    public GraphFixture graph(String shape, int rooms) {
+        Room[] map = SyntheticWorlds.build(shape, rooms, 42);
+        map[map.length - 1].addContent(new Item("Needle", 1, "TOOL"));
+        Room start = map[0];
+        GameOutput out = GameOutput.discard();
+
+        return new GraphFixture() {
+            @Override
+            public void explore() {
+                start.exploreRecursive(0, out);
+                flush(out);
+            }
+
+            @Override
+            public int maxDepth() {
+                return start.maxDepthRecursive();
+            }
+
+            @Override
+            public boolean containsItem(String name) {
+                return start.containsItemRecursive(name);
+            }
+
+            @Override
+            public int roomCount() {
+                return map.length;
+            }
+        };
+    }
+
+    @Override
+    public InventoryFixture inventory(int size) {
+        Random random = new Random(42);
+        Room room = new Room("Hoard", false);
+        ArrayList<Item> held = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            held.add(new Item(itemName(i), random.nextInt(1000), i % 2 == 0 ? "KEY" : "TOOL"));
+            room.addContent(new Item("Loot " + i, random.nextInt(1000), "TOOL"));
+        }
+        World world = new World();
+        world.addRoom(room);
+        GameOutput out = GameOutput.discard();
+        Player player = new Player(world, out);
+        for (Item item : held) {
+            player.addToInventory(item);
+        }
+
+        return new InventoryFixture() {
+            private final Item extra = new Item("Extra", 500, "TOOL");
+
+            @Override
+            public void sortByValue() {
+                player.sortInventoryByValue();
+                flush(out);
+            }
+
+            @Override
+            public void addAndRemove() {
+                player.getInventory().add(extra);
+                player.getInventory().remove(extra);
+            }
+
+            @Override
+            public void showPage(int page) {
+                player.showInventory(page);
+                flush(out);
+            }
+
+            @Override
+            public boolean hasKey(String name) {
+                return player.hasKey(name);
+            }
+
+            @Override
+            public void pickup(String name) {
+                new Player(world, out).pickupItem(name);
+                flush(out);
+            }
+
+            @Override
+            public String itemName(int index) {
+                return "Loot " + index;
+            }
+
+            @Override
+            public String keyName(int index) {
+                return BenchFixtures.itemName(index);
+            }
+        };
+    }
+
+    private static void flush(GameOutput out) {
+        try {
+            out.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static String itemName(int index) {
+        return "Item " + index;
+    }
+}
@@ -0,0 +1,70 @@
+import java.util.Random;
+
+// Synthetic maps for the benchmarks. All rooms are returned; index 0 is the start
+// room and the last room is the exit. Every generator is deterministic for a seed.
+public class SyntheticWorlds {
+
+    private SyntheticWorlds() {
+    }
+
+    public static Room[] build(String shape, int rooms, long seed) {
+        switch (shape) {
+            case "tree":
+                return tree(rooms, 3);
+            case "grid":
+                return grid((int) Math.ceil(Math.sqrt(rooms)));
+            case "random":
+                return random(rooms, 3, seed);
+            default:
+                throw new IllegalArgumentException("Unknown shape: " + shape);
+        }
+    }
+
+    // Complete tree with the given branching factor, no cycles
+    public static Room[] tree(int rooms, int branching) {
+        Room[] map = newRooms(rooms);
+        for (int i = 1; i < rooms; i++) {
+            map[(i - 1) / branching].connectRoom(map[i]);
+        }
+        return map;
+    }
+
+    // side x side grid, every neighbour linked both ways, so it is full of cycles
+    public static Room[] grid(int side) {
+        Room[] map = newRooms(side * side);
+        for (int y = 0; y < side; y++) {
+            for (int x = 0; x < side; x++) {
+                Room room = map[y * side + x];
+                if (x + 1 < side) link(room, map[y * side + x + 1]);
+                if (y + 1 < side) link(room, map[(y + 1) * side + x]);
+            }
+        }
+        return map;
+    }
+
+    // A chain through every room (so all are reachable) plus random extra exits
+    public static Room[] random(int rooms, int extraExits, long seed) {
+        Random random = new Random(seed);
+        Room[] map = newRooms(rooms);
+        for (int i = 0; i + 1 < rooms; i++) {
+            map[i].connectRoom(map[i + 1]);
+            for (int e = 0; e < extraExits; e++) {
+                map[i].connectRoom(map[random.nextInt(rooms)]);
+            }
+        }
+        return map;
+    }
+
+    private static Room[] newRooms(int count) {
+        Room[] map = new Room[count];
+        for (int i = 0; i < count; i++) {
+            map[i] = new Room("Room " + i, i == count - 1);
+        }
+        return map;
+    }
+
+    private static void link(Room a, Room b) {
+        a.connectRoom(b);
+        b.connectRoom(a);
+    }
+}
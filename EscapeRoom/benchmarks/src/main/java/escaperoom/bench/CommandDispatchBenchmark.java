@@ -0,0 +1,40 @@
+package escaperoom.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/** Cost of one {@code GameEngine.processCommand} call, output discarded. */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CommandDispatchBenchmark {
+
+    @Param({"look", "status", "inventory", "help", "inspect flashlight", "move nowhere", "dance"})
+    public String command;
+
+    private Fixtures.CommandFixture game;
+
+    @Setup
+    public void setup() {
+        game = Fixtures.load().commands();
+    }
+
+    @Benchmark
+    public void dispatch() throws Exception {
+        game.dispatch(command);
+    }
+}
@@ -0,0 +1,68 @@
+package escaperoom.bench;
+
+/**
+ * Entry point to the game code under test.
+ *
+ * <p>JMH only accepts benchmarks in a named package, and the game lives in the
+ * unnamed package, which named packages cannot import. The benchmarks therefore
+ * talk to the game through these interfaces, implemented by {@code BenchFixtures}
+ * in the unnamed package and loaded by name.
+ */
+public interface Fixtures {
+
+    /** A single session on the built-in world, writing its output nowhere. */
+    CommandFixture commands();
+
+    /**
+     * A synthetic map.
+     *
+     * @param shape "tree", "grid" or "random" (random graphs contain cycles)
+     * @param rooms approximate number of rooms
+     */
+    GraphFixture graph(String shape, int rooms);
+
+    /** A player holding {@code size} items, half of them keys, in a room holding {@code size} more. */
+    InventoryFixture inventory(int size);
+
+    static Fixtures load() {
+        try {
+            return (Fixtures) Class.forName("BenchFixtures").getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("BenchFixtures not on the classpath", e);
+        }
+    }
+
+    interface CommandFixture {
+        void dispatch(String command) throws Exception;
+    }
+
+    interface GraphFixture {
+        /** The {@code map} command listing. */
+        void explore();
+
+        int maxDepth();
+
+        boolean containsItem(String name);
+
+        int roomCount();
+    }
+
+    interface InventoryFixture {
+        void sortByValue();
+
+        /** Adds one item and removes it again. */
+        void addAndRemove();
+
+        /** Renders one inventory page, pages start at 0. */
+        void showPage(int page);
+
+        boolean hasKey(String name);
+
+        /** Picks up an item with a fresh player, so every call finds it. */
+        void pickup(String name);
+
+        String itemName(int index);
+
+        String keyName(int index);
+    }
+}
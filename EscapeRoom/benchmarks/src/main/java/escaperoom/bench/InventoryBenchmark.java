@@ -0,0 +1,73 @@
+package escaperoom.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/** Inventory ordering, paging and the name lookups behind {@code hasKey} and {@code pickup}. */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class InventoryBenchmark {
+
+    @Param({"100", "1000", "10000"})
+    public int size;
+
+    private Fixtures.InventoryFixture inventory;
+    private String presentKey;
+    private String missingKey;
+    private String lastLoot;
+
+    @Setup
+    public void setup() {
+        inventory = Fixtures.load().inventory(size);
+        presentKey = inventory.keyName(size - 2); // Even indexes are keys
+        missingKey = "No Such Key";
+        lastLoot = inventory.itemName(size - 1);
+    }
+
+    /** The inventory is kept ordered on insert, so the sort command has nothing to do. */
+    @Benchmark
+    public void sortInventoryByValue() {
+        inventory.sortByValue();
+    }
+
+    @Benchmark
+    public void addAndRemove() {
+        inventory.addAndRemove();
+    }
+
+    @Benchmark
+    public void showFirstPage() {
+        inventory.showPage(0);
+    }
+
+    @Benchmark
+    public boolean hasKeyHit() {
+        return inventory.hasKey(presentKey);
+    }
+
+    @Benchmark
+    public boolean hasKeyMiss() {
+        return inventory.hasKey(missingKey);
+    }
+
+    /** Includes creating the player that picks the item up. */
+    @Benchmark
+    public void pickupItem() {
+        inventory.pickup(lastLoot);
+    }
+}
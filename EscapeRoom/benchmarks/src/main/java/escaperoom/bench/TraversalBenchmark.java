@@ -0,0 +1,54 @@
+package escaperoom.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/** Whole-map walks ({@code map}, {@code maxDepthRecursive}, item search) on synthetic graphs. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class TraversalBenchmark {
+
+    @Param({"tree", "grid", "random"})
+    public String shape;
+
+    @Param({"1000", "100000", "1000000"})
+    public int rooms;
+
+    private Fixtures.GraphFixture graph;
+
+    @Setup
+    public void setup() {
+        graph = Fixtures.load().graph(shape, rooms);
+    }
+
+    @Benchmark
+    public void exploreRecursive() {
+        graph.explore();
+    }
+
+    @Benchmark
+    public int maxDepthRecursive() {
+        return graph.maxDepth();
+    }
+
+    /** The only matching item sits in the exit room, so the whole map is searched. */
+    @Benchmark
+    public boolean containsItemRecursive() {
+        return graph.containsItem("Needle");
+    }
+}
@@ -0,0 +1,130 @@
+import java.util.concurrent.ConcurrentHashMap;
+
+// Rate limits on puzzle answers, so codes cannot be brute-forced at command speed.
+// Three token buckets have to allow an attempt:
+//   - per client: every attempt takes a token
+//   - per client and puzzle: only wrong answers take one, so guessing at one puzzle
+//     slows down sooner
+//   - per puzzle, shared by everybody: only wrong answers take one, for bots that
+//     spread their guesses over many clients
+// A client is a remote address where there is one, so reconnecting does not refill
+// its buckets; in-process sessions are each a client of their own. The shared limit
+// is well above what one client may spend, so a single client cannot lock the
+// others out. Empty answers are turned away before any bucket is asked.
+// A burst of 0 turns a limit off.
+public class AnswerGuard {
+    private static final int MAX_IDLE_CLIENTS = 1 << 16; // Kept before full buckets are swept out
+
+    private int sessionBurst = 5;
+    private double sessionPerSecond = 0.5;
+    private int clientPuzzleBurst = 10;
+    private double clientPuzzlePerSecond = 0.1;
+    private int puzzleBurst = 100;
+    private double puzzlePerSecond = 20;
+
+    private final ConcurrentHashMap<Object, Attempts> clients = new ConcurrentHashMap<>(); // By remote address
+    private final ConcurrentHashMap<Integer, TokenBucket> puzzleBuckets = new ConcurrentHashMap<>(); // By puzzle id
+
+    // One client's buckets
+    static final class Attempts {
+        private final TokenBucket session; // Null when clients are not limited
+        private final ConcurrentHashMap<Integer, TokenBucket> wrongAnswers = new ConcurrentHashMap<>(); // By puzzle id
+
+        private Attempts(TokenBucket session) {
+            this.session = session;
+        }
+
+        // Nothing spent that has not come back yet
+        private boolean isIdle(long now) {
+            if (session != null && !session.isFull(now)) return false;
+            for (TokenBucket bucket : wrongAnswers.values()) {
+                if (!bucket.isFull(now)) return false;
+            }
+            return true;
+        }
+    }
+
+    // No limits at all, e.g. for scripts that answer at machine speed
+    public static AnswerGuard unlimited() {
+        AnswerGuard guard = new AnswerGuard();
+        guard.setSessionLimit(0, 0);
+        guard.setClientPuzzleLimit(0, 0);
+        guard.setPuzzleLimit(0, 0);
+        return guard;
+    }
+
+    // Attempts a client can make in a row, and how fast they come back
+    public void setSessionLimit(int burst, double perSecond) {
+        this.sessionBurst = burst;
+        this.sessionPerSecond = perSecond;
+        clients.clear();
+    }
+
+    // Wrong answers a client can give one puzzle in a row, and how fast they come back
+    public void setClientPuzzleLimit(int burst, double perSecond) {
+        this.clientPuzzleBurst = burst;
+        this.clientPuzzlePerSecond = perSecond;
+        clients.clear();
+    }
+
+    // The same, across all clients, for one puzzle
+    public void setPuzzleLimit(int burst, double perSecond) {
+        this.puzzleBurst = burst;
+        this.puzzlePerSecond = perSecond;
+        puzzleBuckets.clear();
+    }
+
+    // The buckets of a remote client, shared by all its connections; a fresh set
+    // when client is null
+    Attempts attemptsFor(Object client) {
+        if (client == null) {
+            return newAttempts();
+        }
+        Attempts attempts = clients.get(client);
+        if (attempts == null) {
+            if (clients.size() >= MAX_IDLE_CLIENTS) {
+                long now = System.nanoTime();
+                clients.values().removeIf(a -> a.isIdle(now));
+            }
+            attempts = clients.computeIfAbsent(client, c -> newAttempts());
+        }
+        return attempts;
+    }
+
+    private Attempts newAttempts() {
+        return new Attempts(sessionBurst > 0 ? new TokenBucket(sessionBurst, sessionPerSecond) : null);
+    }
+
+    // 0 if the attempt may go ahead, otherwise nanoseconds to wait. Takes a token
+    // from the client's bucket when allowed; the wrong-answer buckets are only checked.
+    long admit(Attempts attempts, Puzzle puzzle) {
+        long now = System.nanoTime();
+        TokenBucket wrong = attempts.wrongAnswers.get(puzzle.getId());
+        if (wrong != null) {
+            long wait = wrong.nanosUntilToken(now);
+            if (wait > 0) return wait;
+        }
+        TokenBucket shared = puzzleBuckets.get(puzzle.getId());
+        if (shared != null) {
+            long wait = shared.nanosUntilToken(now);
+            if (wait > 0) return wait;
+        }
+        if (attempts.session != null && !attempts.session.tryTake(now)) {
+            return Math.max(1, attempts.session.nanosUntilToken(now));
+        }
+        return 0;
+    }
+
+    // Charges a wrong answer to the client's and the shared bucket of the puzzle
+    void wrongAnswer(Attempts attempts, Puzzle puzzle) {
+        long now = System.nanoTime();
+        if (clientPuzzleBurst > 0) {
+            attempts.wrongAnswers.computeIfAbsent(puzzle.getId(), id -> new TokenBucket(clientPuzzleBurst, clientPuzzlePerSecond))
+                    .tryTake(now);
+        }
+        if (puzzleBurst > 0) {
+            puzzleBuckets.computeIfAbsent(puzzle.getId(), id -> new TokenBucket(puzzleBurst, puzzlePerSecond))
+                    .tryTake(now);
+        }
+    }
+}
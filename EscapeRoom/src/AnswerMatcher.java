@@ -0,0 +1,10 @@
+// A compiled check of puzzle answers. Built once per puzzle by its MatcherType and
+// shared by every session, so it must be safe to call from many threads.
+//
+// Unlike riddle and code answers, a pattern, a range or a fuzzy answer cannot be
+// checked against a hash: matchers keep what the world file says and their time
+// may depend on the attempt. Exact answers belong in riddles, codes or plain
+// sequence steps, which are hashed (see HashedAnswer).
+public interface AnswerMatcher {
+    boolean matches(CharSequence attempt);
+}
@@ -0,0 +1,197 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
+// Headless mode: plays command scripts against the world as fast as it can, many at
+// a time, and reports how each one ended. A script is one command per line, the way
+// a player would type it; puzzles are answered inline ("solve safe lock 1234").
+// Blank lines and lines starting with '#' are skipped, except "# expect: <outcome>",
+// which makes the run fail unless the script ends that way (escaped, quit or
+// disconnected, the last meaning the script ran out of commands).
+public class BatchRunner {
+    private static final String EXPECT = "# expect:";
+
+    // One script, read and ready to play
+    record Script(Path path, String commands, GameEngine.Outcome expected) {
+    }
+
+    record Result(Script script, GameEngine.Outcome outcome, int turns, long nanos, String error) {
+        boolean passed() {
+            return error == null && (script.expected() == null || script.expected() == outcome);
+        }
+    }
+
+    private World world;
+    private AnswerGuard answerGuard; // The runner's own, unlimited; the world's is left alone
+    private int threads;
+    private boolean keepTranscripts;
+
+    // Scripts answer at machine speed, so their sessions play without answer rate
+    // limits; sessions of the world outside the runner keep theirs
+    public BatchRunner(World world, int threads) {
+        world.freeze();
+        this.world = world;
+        this.answerGuard = AnswerGuard.unlimited();
+        this.threads = threads;
+    }
+
+    // Keep each session's output in memory instead of dropping it, to measure rendering too
+    public void setKeepTranscripts(boolean keepTranscripts) {
+        this.keepTranscripts = keepTranscripts;
+    }
+
+    public static Script readScript(Path path) throws IOException {
+        StringBuilder commands = new StringBuilder();
+        GameEngine.Outcome expected = null;
+        for (String line : Files.readAllLines(path)) {
+            String trimmed = line.trim();
+            if (trimmed.regionMatches(true, 0, EXPECT, 0, EXPECT.length())) {
+                String outcome = trimmed.substring(EXPECT.length()).trim();
+                try {
+                    expected = GameEngine.Outcome.valueOf(outcome.toUpperCase(Locale.ROOT));
+                } catch (IllegalArgumentException e) {
+                    throw new IOException(path + ": unknown outcome '" + outcome + "'");
+                }
+            } else if (!trimmed.isEmpty() && !trimmed.startsWith("#")) {
+                commands.append(trimmed).append('\n');
+            }
+        }
+        return new Script(path, commands.toString(), expected);
+    }
+
+    // Every script is played `repeat` times; results come back in the same order
+    public List<Result> run(List<Script> scripts, int repeat) throws InterruptedException {
+        ArrayList<Future<Result>> pending = new ArrayList<>();
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            for (int i = 0; i < repeat; i++) {
+                for (Script script : scripts) {
+                    pending.add(pool.submit(() -> play(script)));
+                }
+            }
+            ArrayList<Result> results = new ArrayList<>(pending.size());
+            for (Future<Result> future : pending) {
+                try {
+                    results.add(future.get());
+                } catch (java.util.concurrent.ExecutionException e) {
+                    throw new IllegalStateException(e.getCause());
+                }
+            }
+            return results;
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    // A fresh session over the shared world; scripts are in memory, so nothing blocks
+    public Result play(Script script) {
+        GameOutput out = keepTranscripts ? new GameOutput(new GameOutput.MemorySink()) : GameOutput.discard();
+        BufferedReader in = new BufferedReader(new StringReader(script.commands()));
+        GameEngine engine = new GameEngine(world, in, out);
+        engine.setHintInterval(0); // Scripts run in no time; timed hints would only make runs differ
+        engine.setAnswerGuard(answerGuard);
+        long start = System.nanoTime();
+        try {
+            engine.start();
+        } catch (RuntimeException e) {
+            return new Result(script, null, engine.getTurns(), System.nanoTime() - start, e.toString());
+        }
+        return new Result(script, engine.getOutcome(), engine.getTurns(), System.nanoTime() - start, null);
+    }
+
+    // Files as given; directories contribute their *.txt files, in name order
+    private static List<Path> expand(List<String> args) throws IOException {
+        ArrayList<Path> paths = new ArrayList<>();
+        for (String arg : args) {
+            Path path = Path.of(arg);
+            if (Files.isDirectory(path)) {
+                try (Stream<Path> files = Files.list(path)) {
+                    files.filter(p -> p.toString().endsWith(".txt")).sorted().forEach(paths::add);
+                }
+            } else {
+                paths.add(path);
+            }
+        }
+        return paths;
+    }
+
+    private static void usage() {
+        System.out.println("Usage: BatchRunner [--world <file>] [--cache <rooms>] [--compact] [--threads <n>] [--repeat <n>] [--transcripts] <script or directory>...");
+    }
+
+    public static void main(String[] args) throws Exception {
+        Path worldFile = null;
+        int cachedRooms = 0; // Page a compiled world in through a cache this size
+        boolean compact = false; // Copy it into a CompactWorld first instead
+        int threads = Runtime.getRuntime().availableProcessors();
+        int repeat = 1;
+        boolean transcripts = false;
+        ArrayList<String> inputs = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--world" -> worldFile = Path.of(args[++i]);
+                case "--cache" -> cachedRooms = Integer.parseInt(args[++i]);
+                case "--compact" -> compact = true;
+                case "--threads" -> threads = Integer.parseInt(args[++i]);
+                case "--repeat" -> repeat = Integer.parseInt(args[++i]);
+                case "--transcripts" -> transcripts = true;
+                default -> inputs.add(args[i]);
+            }
+        }
+        if (inputs.isEmpty()) {
+            usage();
+            System.exit(2);
+        }
+
+        World world;
+        if (worldFile == null) {
+            world = World.createDefault();
+        } else if (compact) {
+            world = World.openCompact(worldFile, cachedRooms > 0 ? cachedRooms : 4096);
+        } else {
+            world = cachedRooms > 0 ? World.openPaged(worldFile, cachedRooms) : World.load(worldFile);
+        }
+        ArrayList<Script> scripts = new ArrayList<>();
+        for (Path path : expand(inputs)) {
+            scripts.add(readScript(path));
+        }
+
+        BatchRunner runner = new BatchRunner(world, threads);
+        runner.setKeepTranscripts(transcripts);
+        long start = System.nanoTime();
+        List<Result> results = runner.run(scripts, repeat);
+        long wall = System.nanoTime() - start;
+        world.close();
+
+        int failed = 0;
+        StringBuilder report = new StringBuilder();
+        report.append(String.format("%-40s %-13s %6s %10s%n", "SCRIPT", "OUTCOME", "TURNS", "TIME(ms)"));
+        for (int i = 0; i < results.size(); i++) {
+            Result result = results.get(i);
+            if (!result.passed()) failed++;
+            // With --repeat only the first round is listed, the totals cover all of them
+            if (i >= scripts.size()) continue;
+            String outcome = result.error() != null ? "ERROR" : result.outcome().name();
+            report.append(String.format("%-40s %-13s %6d %10.3f%s%n", result.script().path().getFileName(), outcome,
+                    result.turns(), result.nanos() / 1e6, result.passed() ? "" : "  FAIL"));
+            if (result.error() != null) {
+                report.append("    ").append(result.error()).append('\n');
+            } else if (!result.passed()) {
+                report.append("    expected ").append(result.script().expected()).append('\n');
+            }
+        }
+        report.append(String.format("%d runs on %d threads in %.1f ms (%.0f runs/s), %d failed%n",
+                results.size(), threads, wall / 1e6, results.size() / (wall / 1e9), failed));
+        System.out.print(report);
+        System.exit(failed == 0 ? 0 : 1);
+    }
+}
@@ -1,51 +1,59 @@
 public class CodePuzzle extends Puzzle {
-    private String code;
+    private HashedAnswer code; // Salted hash, the code itself is not kept
     private String hint;
-    private Item reward;
 
     public CodePuzzle(String name, int difficulty, String code, String hint, Item reward) {
-        super(name, difficulty);
+        this(name, difficulty, HashedAnswer.code(code), hint, reward);
+    }
+
+    CodePuzzle(String name, int difficulty, HashedAnswer code, String hint, Item reward) {
+        super(name, difficulty, reward);
         this.code = code;
         this.hint = hint;
-        this.reward = reward;
     }
 
     @Override
-    public void inspect() {
-        System.out.println("[Code Puzzle] " + name);
-        System.out.println("Hint: " + hint);
-        if (solved) {
-            System.out.println("Status: SOLVED");
+    public void inspect(Player viewer) {
+        GameOutput out = viewer.getOut();
+        out.print("[Code Puzzle] ").println(name);
+        out.print("Hint: ").println(hint);
+        if (viewer.hasSolved(this)) {
+            out.println("Status: SOLVED");
         } else {
-            System.out.println("Difficulty: " + difficulty);
+            out.print("Difficulty: ").println(difficulty);
         }
     }
 
     @Override
-    public boolean attemptSolve(String answer) throws InvalidPuzzleAnswerException {
-        if (solved) {
-            System.out.println("This puzzle is already solved!");
-            return true;
-        }
+    protected boolean accepts(CharSequence answer) {
+        return code.matches(answer);
+    }
 
-        if (answer == null || answer.trim().isEmpty()) {
-            throw new InvalidPuzzleAnswerException("Code cannot be empty!");
-        }
+    @Override
+    protected String emptyAnswerMessage() {
+        return "Code cannot be empty!";
+    }
 
-        if (answer.equals(code)) {
-            solved = true;
-            System.out.println("Code accepted! The puzzle is solved!");
-            if (reward != null) {
-                System.out.println("You received: " + reward.getName());
-            }
-            return true;
-        } else {
-            System.out.println("Wrong code. Try again!");
-            return false;
-        }
+    @Override
+    protected String solvedMessage() {
+        return "Code accepted! The puzzle is solved!";
+    }
+
+    @Override
+    protected String wrongAnswerMessage() {
+        return "Wrong code. Try again!";
     }
 
-    public Item getReward() {
-        return reward;
+    // "code" in world files; the text is the hint, the answer the code
+    public static class Type implements PuzzleType {
+        @Override
+        public String getName() {
+            return "code";
+        }
+
+        @Override
+        public Puzzle create(String name, int difficulty, String text, String answer, Item reward) {
+            return new CodePuzzle(name, difficulty, answer, text, reward);
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,89 @@
+// One input line split into a command word and its argument text, without copying.
+// The line is kept as given and both parts are [start, end) ranges into it, with
+// surrounding blanks left out. Each session reuses one instance for every line, so
+// parsing allocates nothing; args() is a view that is only valid until the next parse.
+public class CommandLine {
+    private CharSequence line;
+    private int commandStart;
+    private int commandEnd;
+    private int argsStart;
+    private int argsEnd;
+    private final Slice args = new Slice();
+
+    public CommandLine parse(CharSequence line) {
+        this.line = line;
+        int end = line.length();
+        while (end > 0 && isBlank(line.charAt(end - 1))) end--;
+        int i = 0;
+        while (i < end && isBlank(line.charAt(i))) i++;
+
+        commandStart = i;
+        while (i < end && !isBlank(line.charAt(i))) i++;
+        commandEnd = i;
+
+        while (i < end && isBlank(line.charAt(i))) i++;
+        argsStart = i;
+        argsEnd = end;
+        return this;
+    }
+
+    private static boolean isBlank(char c) {
+        return c <= ' ';
+    }
+
+    public CharSequence getLine() {
+        return line;
+    }
+
+    public int getCommandStart() {
+        return commandStart;
+    }
+
+    public int getCommandEnd() {
+        return commandEnd;
+    }
+
+    public boolean isEmpty() {
+        return commandStart == commandEnd;
+    }
+
+    public boolean hasArgs() {
+        return argsStart < argsEnd;
+    }
+
+    // Everything after the command word, e.g. "storage room" for "move storage room"
+    public CharSequence args() {
+        return args;
+    }
+
+    // The arguments as a String, for name lookups
+    public String argsString() {
+        return line.subSequence(argsStart, argsEnd).toString();
+    }
+
+    public int intArg() throws NumberFormatException {
+        return Integer.parseInt(line, argsStart, argsEnd, 10);
+    }
+
+    private class Slice implements CharSequence {
+        @Override
+        public int length() {
+            return argsEnd - argsStart;
+        }
+
+        @Override
+        public char charAt(int index) {
+            return line.charAt(argsStart + index);
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            return line.subSequence(argsStart + start, argsStart + end);
+        }
+
+        @Override
+        public String toString() {
+            return argsString();
+        }
+    }
+}
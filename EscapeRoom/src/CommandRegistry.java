@@ -0,0 +1,157 @@
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+// Command words and their handlers. Lookup walks a trie laid out in one int array,
+// one row of child slots per node, and folds case as it goes, so finding a handler
+// costs one array read per character and allocates nothing.
+//
+// Register everything before handing the registry to a GameEngine: sessions share
+// it and only read it.
+public class CommandRegistry {
+    public interface Handler {
+        void handle(GameEngine game, CommandLine line) throws IOException, LockedRoomException, InvalidPuzzleAnswerException;
+    }
+
+    // a-z (either case), 0-9, '-' and '_'
+    private static final int ALPHABET = 38;
+
+    private int[] children; // node * ALPHABET + symbol -> child node, 0 for none
+    private Handler[] handlers; // Per node, null if no command ends there
+    private int[] metricSlots; // Per node, the command's GameMetrics slot
+    private int nodeCount;
+
+    private ArrayList<String> usages; // Help lines, in registration order
+    private ArrayList<String> descriptions;
+    private String help;
+
+    public CommandRegistry() {
+        this.children = new int[ALPHABET * 32];
+        this.handlers = new Handler[32];
+        this.metricSlots = new int[32];
+        this.nodeCount = 1; // Node 0 is the root
+        this.usages = new ArrayList<>();
+        this.descriptions = new ArrayList<>();
+    }
+
+    // usage is the help form, e.g. "move <room>"; its first word is the command.
+    // Registering a command again replaces its handler and help line.
+    public CommandRegistry register(String usage, String description, Handler handler) {
+        int end = usage.indexOf(' ');
+        String name = end < 0 ? usage : usage.substring(0, end);
+        if (name.isEmpty()) {
+            throw new IllegalArgumentException("Empty command name");
+        }
+
+        int node = 0;
+        for (int i = 0; i < name.length(); i++) {
+            int s = symbol(name.charAt(i));
+            if (s < 0) {
+                throw new IllegalArgumentException("Unsupported character in command name: " + name);
+            }
+            int slot = node * ALPHABET + s;
+            if (children[slot] == 0) {
+                int child = newNode(); // May replace children, so not in one statement
+                children[slot] = child;
+            }
+            node = children[slot];
+        }
+
+        if (handlers[node] != null) {
+            int index = indexOfName(name);
+            usages.set(index, usage);
+            descriptions.set(index, description);
+        } else {
+            usages.add(usage);
+            descriptions.add(description);
+        }
+        handlers[node] = handler;
+        metricSlots[node] = GameMetrics.commandSlot(name);
+        help = null;
+        return this;
+    }
+
+    private int newNode() {
+        if (nodeCount == handlers.length) {
+            handlers = Arrays.copyOf(handlers, nodeCount * 2);
+            metricSlots = Arrays.copyOf(metricSlots, nodeCount * 2);
+            children = Arrays.copyOf(children, nodeCount * 2 * ALPHABET);
+        }
+        return nodeCount++;
+    }
+
+    // Names ignore case, as in the trie; they are ASCII, so regionMatches folds them the same
+    private int indexOfName(String name) {
+        for (int i = 0; i < usages.size(); i++) {
+            String usage = usages.get(i);
+            if (usage.regionMatches(true, 0, name, 0, name.length()) && (usage.length() == name.length() || usage.charAt(name.length()) == ' ')) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    // Handler for text[start, end), ignoring case, or null
+    public Handler lookup(CharSequence text, int start, int end) {
+        int command = find(text, start, end);
+        return command < 0 ? null : handlers[command];
+    }
+
+    public Handler lookup(CommandLine line) {
+        return lookup(line.getLine(), line.getCommandStart(), line.getCommandEnd());
+    }
+
+    // Number of the command in text[start, end), or -1; see handlerOf and metricSlotOf
+    public int find(CharSequence text, int start, int end) {
+        int node = 0;
+        for (int i = start; i < end; i++) {
+            int s = symbol(text.charAt(i));
+            if (s < 0) return -1;
+            node = children[node * ALPHABET + s];
+            if (node == 0) return -1;
+        }
+        return handlers[node] == null ? -1 : node;
+    }
+
+    public int find(CommandLine line) {
+        return find(line.getLine(), line.getCommandStart(), line.getCommandEnd());
+    }
+
+    public Handler handlerOf(int command) {
+        return handlers[command];
+    }
+
+    int metricSlotOf(int command) {
+        return metricSlots[command];
+    }
+
+    private static int symbol(char c) {
+        if (c >= 'a' && c <= 'z') return c - 'a';
+        if (c >= 'A' && c <= 'Z') return c - 'A';
+        if (c >= '0' && c <= '9') return 26 + (c - '0');
+        if (c == '-') return 36;
+        if (c == '_') return 37;
+        return -1;
+    }
+
+    // Help listing, built once per set of commands
+    public String getHelp() {
+        if (help == null) {
+            int width = 18;
+            for (String usage : usages) {
+                width = Math.max(width, usage.length() + 2);
+            }
+            StringBuilder sb = new StringBuilder("\n=== Available Commands ===\n");
+            for (int i = 0; i < usages.size(); i++) {
+                String usage = usages.get(i);
+                sb.append(usage);
+                for (int pad = usage.length(); pad < width; pad++) {
+                    sb.append(' ');
+                }
+                sb.append("- ").append(descriptions.get(i)).append('\n');
+            }
+            help = sb.toString();
+        }
+        return help;
+    }
+}
@@ -0,0 +1,369 @@
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+// A whole world in a handful of primitive arrays, for worlds too big to keep as
+// Room and Item objects. Rooms are int ids; exits and contents are CSR (a start
+// offset per room into one int array); room, item and puzzle names are runs of
+// varints in one byte array, each a word from a shared table or a plain number,
+// so "Dusty Hall 1234567" costs five bytes; item types are a byte into a type
+// table; locks are a sorted room array with the key item next to it.
+//
+// Nothing here is a game object: play it through a RoomStore, which builds thin
+// Room and Item views on demand and keeps the recently used ones.
+public class CompactWorld implements WorldData {
+    static final int TARGET_BYTES_PER_ROOM = 32;
+
+    private final int roomCount;
+    private final int itemCount;
+    private final int puzzleCount;
+
+    // Names of rooms, then items, then puzzles (component order)
+    private final byte[] names;
+    private final int[] nameStart; // One more than there are names
+    private final String[] words;
+
+    private final long[] exitRooms; // One bit per room
+    private final int[] exitStart;
+    private final int[] exits;
+    private final int[] contentStart;
+    private final int[] contents;
+    private final int[] lockedRooms; // Ascending
+    private final int[] lockKeys;
+
+    private final int[] itemValues;
+    private final byte[] itemTypes;
+    private final String[] types;
+
+    private final byte[] puzzleTypes; // Into puzzleTypeNames
+    private final String[] puzzleTypeNames;
+    private final int[] puzzleDifficulties;
+    private final int[] puzzleTexts; // Into texts
+    private final int[] puzzleAnswers; // Into texts
+    private final int[] puzzleRewards;
+    private final String[] texts;
+
+    private final List<String> hints;
+
+    // Growable int array for the build
+    private static final class Ints {
+        int[] values = new int[1024];
+        int size;
+
+        void add(int value) {
+            if (size == values.length) values = Arrays.copyOf(values, size * 2);
+            values[size++] = value;
+        }
+
+        int[] trimmed() {
+            return Arrays.copyOf(values, size);
+        }
+    }
+
+    // Reads everything from the source once; the source is not kept
+    public CompactWorld(WorldData source) throws WorldFormatException {
+        roomCount = source.roomCount();
+        itemCount = source.itemCount();
+        puzzleCount = source.puzzleCount();
+
+        HashMap<String, Integer> wordIds = new HashMap<>();
+        ArrayList<String> wordList = new ArrayList<>();
+        byte[] nameBytes = new byte[1024];
+        int nameSize = 0;
+        nameStart = new int[roomCount + itemCount + puzzleCount + 1];
+
+        exitRooms = new long[(roomCount + 63) / 64];
+        exitStart = new int[roomCount + 1];
+        contentStart = new int[roomCount + 1];
+        Ints exitList = new Ints();
+        Ints contentList = new Ints();
+        Ints lockedList = new Ints();
+        Ints keyList = new Ints();
+        for (int r = 0; r < roomCount; r++) {
+            nameStart[r] = nameSize;
+            nameBytes = encodeName(source.roomName(r), nameBytes, nameSize, wordIds, wordList);
+            nameSize = encodedSize;
+            if (source.isExitRoom(r)) exitRooms[r >>> 6] |= 1L << r;
+            for (int target : source.exitsOf(r)) {
+                exitList.add(target);
+            }
+            exitStart[r + 1] = exitList.size;
+            for (int content : source.contentsOf(r)) {
+                contentList.add(content);
+            }
+            contentStart[r + 1] = contentList.size;
+            int key = source.lockKeyOf(r);
+            if (key != WorldDefinition.NONE) {
+                lockedList.add(r);
+                keyList.add(key);
+            }
+        }
+        exits = exitList.trimmed();
+        contents = contentList.trimmed();
+        lockedRooms = lockedList.trimmed();
+        lockKeys = keyList.trimmed();
+
+        HashMap<String, Integer> typeIds = new HashMap<>();
+        ArrayList<String> typeList = new ArrayList<>();
+        itemValues = new int[itemCount];
+        itemTypes = new byte[itemCount];
+        for (int i = 0; i < itemCount; i++) {
+            WorldDefinition.ItemDef def = source.itemDef(i);
+            nameStart[roomCount + i] = nameSize;
+            nameBytes = encodeName(def.name, nameBytes, nameSize, wordIds, wordList);
+            nameSize = encodedSize;
+            itemValues[i] = def.value;
+            int type = intern(def.type, typeIds, typeList);
+            if (type > 255) {
+                throw new WorldFormatException("more than 256 item types");
+            }
+            itemTypes[i] = (byte) type;
+        }
+
+        HashMap<String, Integer> textIds = new HashMap<>();
+        ArrayList<String> textList = new ArrayList<>();
+        HashMap<String, Integer> puzzleTypeIds = new HashMap<>();
+        ArrayList<String> puzzleTypeList = new ArrayList<>();
+        puzzleTypes = new byte[puzzleCount];
+        puzzleDifficulties = new int[puzzleCount];
+        puzzleTexts = new int[puzzleCount];
+        puzzleAnswers = new int[puzzleCount];
+        puzzleRewards = new int[puzzleCount];
+        for (int p = 0; p < puzzleCount; p++) {
+            WorldDefinition.PuzzleDef def = source.puzzleDef(p);
+            nameStart[roomCount + itemCount + p] = nameSize;
+            nameBytes = encodeName(def.name, nameBytes, nameSize, wordIds, wordList);
+            nameSize = encodedSize;
+            int type = intern(def.type, puzzleTypeIds, puzzleTypeList);
+            if (type > 255) {
+                throw new WorldFormatException("more than 256 puzzle types");
+            }
+            puzzleTypes[p] = (byte) type;
+            puzzleDifficulties[p] = def.difficulty;
+            puzzleTexts[p] = intern(def.text, textIds, textList);
+            puzzleAnswers[p] = intern(def.answer, textIds, textList);
+            puzzleRewards[p] = def.reward;
+        }
+        nameStart[nameStart.length - 1] = nameSize;
+
+        names = Arrays.copyOf(nameBytes, nameSize);
+        words = wordList.toArray(new String[0]);
+        types = typeList.toArray(new String[0]);
+        texts = textList.toArray(new String[0]);
+        puzzleTypeNames = puzzleTypeList.toArray(new String[0]);
+        hints = List.copyOf(source.hints());
+    }
+
+    // Compiled world file, read once into memory
+    public static CompactWorld load(Path path) throws IOException, WorldFormatException {
+        return new CompactWorld(WorldBinaryFormat.openData(path));
+    }
+
+    private static int intern(String s, HashMap<String, Integer> ids, ArrayList<String> list) {
+        Integer id = ids.get(s);
+        if (id == null) {
+            id = list.size();
+            ids.put(s, id);
+            list.add(s);
+        }
+        return id;
+    }
+
+    // Name encoding: the name split at single spaces, each part one varint, a number
+    // n (digits without a leading zero) as 2n + 1, any other word w as 2 * id(w)
+
+    private int encodedSize; // End of the last encodeName output
+
+    private byte[] encodeName(String name, byte[] out, int at, HashMap<String, Integer> wordIds, ArrayList<String> wordList) {
+        for (String part : name.split(" ", -1)) {
+            long code = isNumber(part) ? Long.parseLong(part) << 1 | 1 : (long) intern(part, wordIds, wordList) << 1;
+            if (at + 10 > out.length) out = Arrays.copyOf(out, out.length * 2);
+            while ((code & ~0x7FL) != 0) {
+                out[at++] = (byte) (code & 0x7F | 0x80);
+                code >>>= 7;
+            }
+            out[at++] = (byte) code;
+        }
+        encodedSize = at;
+        return out;
+    }
+
+    private static boolean isNumber(String part) {
+        if (part.isEmpty() || part.length() > 18 || (part.charAt(0) == '0' && part.length() > 1)) return false;
+        for (int i = 0; i < part.length(); i++) {
+            char c = part.charAt(i);
+            if (c < '0' || c > '9') return false;
+        }
+        return true;
+    }
+
+    // Name of a room, item or puzzle by component order
+    private String name(int index) {
+        StringBuilder sb = new StringBuilder(24);
+        int at = nameStart[index];
+        int end = nameStart[index + 1];
+        boolean first = true;
+        while (at < end) {
+            long code = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = names[at++];
+                code |= (long) (b & 0x7F) << shift;
+                shift += 7;
+            } while (b < 0);
+            if (!first) sb.append(' ');
+            first = false;
+            if ((code & 1) != 0) {
+                sb.append(code >>> 1);
+            } else {
+                sb.append(words[(int) (code >>> 1)]);
+            }
+        }
+        return sb.toString();
+    }
+
+    private void checkRoom(int room) throws WorldFormatException {
+        if (room < 0 || room >= roomCount) {
+            throw new WorldFormatException("no room #" + room);
+        }
+    }
+
+    @Override
+    public int roomCount() {
+        return roomCount;
+    }
+
+    @Override
+    public int itemCount() {
+        return itemCount;
+    }
+
+    @Override
+    public int puzzleCount() {
+        return puzzleCount;
+    }
+
+    @Override
+    public String roomName(int room) throws WorldFormatException {
+        checkRoom(room);
+        return name(room);
+    }
+
+    @Override
+    public boolean isExitRoom(int room) {
+        return (exitRooms[room >>> 6] & 1L << room) != 0;
+    }
+
+    @Override
+    public int[] exitsOf(int room) throws WorldFormatException {
+        checkRoom(room);
+        return Arrays.copyOfRange(exits, exitStart[room], exitStart[room + 1]);
+    }
+
+    @Override
+    public int[] contentsOf(int room) throws WorldFormatException {
+        checkRoom(room);
+        return Arrays.copyOfRange(contents, contentStart[room], contentStart[room + 1]);
+    }
+
+    @Override
+    public int lockKeyOf(int room) throws WorldFormatException {
+        checkRoom(room);
+        int at = Arrays.binarySearch(lockedRooms, room);
+        return at < 0 ? WorldDefinition.NONE : lockKeys[at];
+    }
+
+    @Override
+    public String itemName(int item) throws WorldFormatException {
+        if (item < 0 || item >= itemCount) {
+            throw new WorldFormatException("no item #" + item);
+        }
+        return name(roomCount + item);
+    }
+
+    @Override
+    public WorldDefinition.ItemDef itemDef(int item) throws WorldFormatException {
+        return new WorldDefinition.ItemDef(null, itemName(item), itemValues[item], types[itemTypes[item] & 0xFF]);
+    }
+
+    @Override
+    public int rewardIndex(int puzzle) throws WorldFormatException {
+        if (puzzle < 0 || puzzle >= puzzleCount) {
+            throw new WorldFormatException("no puzzle #" + puzzle);
+        }
+        return puzzleRewards[puzzle];
+    }
+
+    @Override
+    public WorldDefinition.PuzzleDef puzzleDef(int puzzle) throws WorldFormatException {
+        int reward = rewardIndex(puzzle);
+        return new WorldDefinition.PuzzleDef(puzzleTypeNames[puzzleTypes[puzzle] & 0xFF], null, name(roomCount + itemCount + puzzle),
+                puzzleDifficulties[puzzle], texts[puzzleTexts[puzzle]], texts[puzzleAnswers[puzzle]], reward);
+    }
+
+    @Override
+    public List<String> hints() {
+        return hints;
+    }
+
+    // Heap taken by the arrays and tables above, in bytes, estimated with 16 byte
+    // array headers and compressed references
+    public long footprint() {
+        long bytes = 0;
+        for (int[] a : new int[][]{nameStart, exitStart, exits, contentStart, contents, lockedRooms, lockKeys,
+                itemValues, puzzleDifficulties, puzzleTexts, puzzleAnswers, puzzleRewards}) {
+            bytes += 16 + a.length * 4L;
+        }
+        bytes += 16 + names.length + 16 + itemTypes.length + 16 + puzzleTypes.length + 16 + exitRooms.length * 8L;
+        for (String[] table : new String[][]{words, types, texts, puzzleTypeNames, hints.toArray(new String[0])}) {
+            bytes += 16 + table.length * 4L;
+            for (String s : table) {
+                bytes += 40 + s.length(); // String, its array, Latin-1 bytes
+            }
+        }
+        return bytes;
+    }
+
+    // Bytes per room of the part that grows with rooms: names, exits, contents (the
+    // CSR offsets and the ids they point to), flags, locks. Items and puzzles
+    // themselves, and the shared tables, are left out; footprint() has everything.
+    public double bytesPerRoom() {
+        long bytes = (nameStart.length - itemCount - puzzleCount) * 4L + exitStart.length * 4L + exits.length * 4L
+                + exitRooms.length * 8L + lockedRooms.length * 8L + contentStart.length * 4L + contents.length * 4L;
+        for (int r = 0; r < roomCount; r++) {
+            bytes += nameStart[r + 1] - nameStart[r];
+        }
+        return roomCount == 0 ? 0 : (double) bytes / roomCount;
+    }
+
+    // Usage: java CompactWorld <compiled world file>
+    public static void main(String[] args) {
+        if (args.length != 1) {
+            System.out.println("Usage: java CompactWorld <compiled world file>");
+            System.exit(2);
+        }
+        try {
+            long start = System.nanoTime();
+            CompactWorld world = load(Path.of(args[0]));
+            long elapsed = System.nanoTime() - start;
+            System.out.println("Rooms:      " + world.roomCount());
+            System.out.println("Exits:      " + world.exits.length);
+            System.out.println("Items:      " + world.itemCount() + " (" + world.types.length + " types)");
+            System.out.println("Puzzles:    " + world.puzzleCount());
+            System.out.println("Words:      " + world.words.length);
+            System.out.printf("Footprint:  %d bytes (%.1f per room, items and puzzles included)%n", world.footprint(),
+                    (double) world.footprint() / Math.max(1, world.roomCount()));
+            double perRoom = world.bytesPerRoom();
+            System.out.printf("Per room:   %.1f bytes (names, exits, contents, flags, locks; target under %d, %s)%n",
+                    perRoom, TARGET_BYTES_PER_ROOM, perRoom < TARGET_BYTES_PER_ROOM ? "met" : "missed");
+            System.out.printf("Built in:   %.1f ms%n", elapsed / 1e6);
+        } catch (IOException | WorldFormatException e) {
+            System.out.println("Cannot load " + args[0] + ": " + e.getMessage());
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,224 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+// In-process publish/subscribe for GameEvents. Subscribers pick a topic: one room,
+// one session, or everything. Each subscription owns a bounded ring buffer, filled by
+// the publishing game threads and drained by the subscription's own virtual thread,
+// which hands the subscriber everything that piled up as one batch, so a slow
+// subscriber gets fewer, bigger batches instead of falling further behind.
+//
+// When a ring is full the subscription's policy decides: DROP counts the event and
+// moves on, so the publisher never waits (use it for spectators and anything else
+// that may flood); BLOCK makes the publisher wait for room, for consumers that must
+// not lose events and can keep up. With no subscribers at all, publishing costs a
+// single volatile read.
+public class EventBus {
+    public enum Policy { DROP, BLOCK }
+
+    public interface Subscriber {
+        // Called on the subscription's thread, in publish order, never concurrently
+        void onEvents(List<GameEvent> batch);
+    }
+
+    private static final AtomicInteger sessions = new AtomicInteger();
+
+    private final ConcurrentHashMap<Integer, CopyOnWriteArrayList<Subscription>> byRoom;
+    private final ConcurrentHashMap<Integer, CopyOnWriteArrayList<Subscription>> bySession;
+    private final CopyOnWriteArrayList<Subscription> everything;
+    private final AtomicInteger subscriptionCount;
+
+    public EventBus() {
+        this.byRoom = new ConcurrentHashMap<>();
+        this.bySession = new ConcurrentHashMap<>();
+        this.everything = new CopyOnWriteArrayList<>();
+        this.subscriptionCount = new AtomicInteger();
+    }
+
+    // Session number for events, unique in the process
+    static int newSession() {
+        return sessions.incrementAndGet();
+    }
+
+    public Subscription subscribeRoom(int room, Subscriber subscriber, int capacity, Policy policy) {
+        return start(byRoom.computeIfAbsent(room, id -> new CopyOnWriteArrayList<>()), subscriber, capacity, policy);
+    }
+
+    public Subscription subscribeSession(int session, Subscriber subscriber, int capacity, Policy policy) {
+        return start(bySession.computeIfAbsent(session, id -> new CopyOnWriteArrayList<>()), subscriber, capacity, policy);
+    }
+
+    public Subscription subscribeAll(Subscriber subscriber, int capacity, Policy policy) {
+        return start(everything, subscriber, capacity, policy);
+    }
+
+    private Subscription start(List<Subscription> topic, Subscriber subscriber, int capacity, Policy policy) {
+        Subscription subscription = new Subscription(this, topic, subscriber, capacity, policy);
+        topic.add(subscription);
+        subscriptionCount.incrementAndGet();
+        return subscription;
+    }
+
+    // Lets publishers skip building an event nobody will see
+    public boolean hasSubscribers() {
+        return subscriptionCount.get() > 0;
+    }
+
+    public void publish(GameEvent event) {
+        if (subscriptionCount.get() == 0) return;
+        deliver(everything, event);
+        deliver(byRoom.get(event.room()), event);
+        deliver(bySession.get(event.session()), event);
+    }
+
+    private static void deliver(List<Subscription> topic, GameEvent event) {
+        if (topic == null) return;
+        for (Subscription subscription : topic) {
+            subscription.offer(event);
+        }
+    }
+
+    public static final class Subscription implements AutoCloseable {
+        private static final int MAX_BATCH = 1024;
+
+        private final EventBus bus;
+        private final List<Subscription> topic;
+        private final Subscriber subscriber;
+        private final Policy policy;
+
+        // Multi-producer, single-consumer ring: producers claim a sequence number with
+        // a CAS on tail, fill the slot, then mark it published with its sequence number;
+        // the consumer takes slots in order while they are marked and moves head on
+        private final GameEvent[] slots;
+        private final AtomicLongArray published;
+        private final int mask;
+        private final AtomicLong tail;
+        private volatile long head;
+
+        private final Thread consumer;
+        private volatile boolean parked;
+        private volatile boolean closed;
+        private final LongAdder dropped;
+        private final LongAdder delivered;
+        private final LongAdder failed;
+
+        private Subscription(EventBus bus, List<Subscription> topic, Subscriber subscriber, int capacity, Policy policy) {
+            if (capacity < 1) {
+                throw new IllegalArgumentException("Capacity must be at least 1");
+            }
+            int size = Integer.highestOneBit(capacity) == capacity ? capacity : Integer.highestOneBit(capacity) << 1;
+            this.bus = bus;
+            this.topic = topic;
+            this.subscriber = subscriber;
+            this.policy = policy;
+            this.slots = new GameEvent[size];
+            this.published = new AtomicLongArray(size);
+            for (int i = 0; i < size; i++) {
+                published.set(i, -1);
+            }
+            this.mask = size - 1;
+            this.tail = new AtomicLong();
+            this.dropped = new LongAdder();
+            this.delivered = new LongAdder();
+            this.failed = new LongAdder();
+            this.consumer = Thread.ofVirtual().name("event-subscriber").start(this::consume);
+        }
+
+        private boolean tryOffer(GameEvent event) {
+            long seq;
+            do {
+                seq = tail.get();
+                if (seq - head >= slots.length) return false;
+            } while (!tail.compareAndSet(seq, seq + 1));
+            int slot = (int) (seq & mask);
+            slots[slot] = event;
+            published.set(slot, seq);
+            return true;
+        }
+
+        void offer(GameEvent event) {
+            if (closed) return;
+            if (!tryOffer(event)) {
+                if (policy == Policy.DROP) {
+                    dropped.increment();
+                    return;
+                }
+                while (!tryOffer(event)) {
+                    if (closed) return;
+                    LockSupport.unpark(consumer);
+                    LockSupport.parkNanos(50_000);
+                }
+            }
+            if (parked) LockSupport.unpark(consumer);
+        }
+
+        private boolean isEmpty() {
+            long h = head;
+            return published.get((int) (h & mask)) != h;
+        }
+
+        private void consume() {
+            ArrayList<GameEvent> batch = new ArrayList<>();
+            while (true) {
+                long h = head;
+                batch.clear();
+                while (batch.size() < MAX_BATCH) {
+                    int slot = (int) (h & mask);
+                    if (published.get(slot) != h) break;
+                    batch.add(slots[slot]);
+                    slots[slot] = null;
+                    h++;
+                }
+                if (batch.isEmpty()) {
+                    if (closed) return;
+                    // Say we are about to sleep, then look once more, so a publisher
+                    // either sees the flag or we see its event
+                    parked = true;
+                    if (isEmpty() && !closed) LockSupport.park(this);
+                    parked = false;
+                    continue;
+                }
+                head = h;
+                try {
+                    subscriber.onEvents(batch);
+                } catch (RuntimeException e) {
+                    failed.increment(); // A broken subscriber must not take the others down
+                }
+                delivered.add(batch.size());
+            }
+        }
+
+        // Stops delivery once what is already queued has been handed over
+        @Override
+        public void close() {
+            if (closed) return;
+            closed = true;
+            if (topic.remove(this)) bus.subscriptionCount.decrementAndGet();
+            LockSupport.unpark(consumer);
+        }
+
+        // Waits until the queued events have been delivered, after close()
+        public void awaitDrained() throws InterruptedException {
+            consumer.join();
+        }
+
+        public long getDropped() {
+            return dropped.sum();
+        }
+
+        public long getDelivered() {
+            return delivered.sum();
+        }
+
+        // Batches whose subscriber threw
+        public long getFailed() {
+            return failed.sum();
+        }
+    }
+}
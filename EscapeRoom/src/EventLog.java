@@ -0,0 +1,26 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.util.List;
+
+// Event bus subscriber that writes one line per event, flushing once per batch
+public class EventLog implements EventBus.Subscriber {
+    private final Writer out;
+
+    public EventLog(Writer out) {
+        this.out = out;
+    }
+
+    @Override
+    public void onEvents(List<GameEvent> batch) {
+        try {
+            for (GameEvent event : batch) {
+                out.write(event.toString());
+                out.write('\n');
+            }
+            out.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
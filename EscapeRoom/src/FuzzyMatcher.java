@@ -0,0 +1,149 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+// "fuzzy" puzzles: attempts within a few typing mistakes of the answer are right.
+// The answer is "text" or "text~k", k the edits allowed (inserted, deleted or
+// changed characters; 1 if not given, at most 3); case and blanks are normalized
+// as for riddles.
+//
+// The answer is compiled into a Levenshtein automaton: a DFA whose states are the
+// edit distances from the input so far to every prefix of the answer, capped at
+// k + 1, over an alphabet of the answer's own characters plus "anything else". An
+// attempt then costs one table lookup per character, and is given up as soon as
+// every distance passes k.
+public class FuzzyMatcher implements AnswerMatcher {
+    private static final int MAX_LENGTH = 64;
+    private static final int MAX_EDITS = 3;
+    private static final int MAX_STATES = 1 << 16;
+
+    private final int classes; // Characters of the answer, plus 0 for any other
+    private final int[] latin1Class = new int[256];
+    private final char[] otherChars; // Sorted, answer characters beyond Latin-1
+    private final int[] otherClasses;
+    private final int[] next; // state * classes + class -> state
+    private final boolean[] accepting;
+    private final int dead;
+
+    public FuzzyMatcher(String answer, int edits) throws WorldFormatException {
+        if (edits < 0 || edits > MAX_EDITS) {
+            throw new WorldFormatException("fuzzy answers allow 0 to " + MAX_EDITS + " edits, not " + edits);
+        }
+        char[] target = HashedAnswer.normalize(answer, true).toCharArray();
+        if (target.length == 0 || target.length > MAX_LENGTH) {
+            throw new WorldFormatException("fuzzy answers must be 1 to " + MAX_LENGTH + " characters long");
+        }
+
+        // One class per distinct character
+        char[] distinct = new String(target).chars().distinct().sorted()
+                .collect(StringBuilder::new, StringBuilder::appendCodePoint, StringBuilder::append).toString().toCharArray();
+        this.classes = distinct.length + 1;
+        char[] classChar = new char[classes];
+        StringBuilder others = new StringBuilder();
+        ArrayList<Integer> otherIds = new ArrayList<>();
+        for (int i = 0; i < distinct.length; i++) {
+            classChar[i + 1] = distinct[i];
+            if (distinct[i] < 256) {
+                latin1Class[distinct[i]] = i + 1;
+            } else {
+                others.append(distinct[i]);
+                otherIds.add(i + 1);
+            }
+        }
+        this.otherChars = others.toString().toCharArray();
+        this.otherClasses = otherIds.stream().mapToInt(Integer::intValue).toArray();
+
+        // Subset construction, one distance vector per state
+        int cap = edits + 1;
+        HashMap<String, Integer> ids = new HashMap<>();
+        ArrayList<char[]> states = new ArrayList<>();
+        char[] start = new char[target.length + 1];
+        for (int i = 0; i < start.length; i++) {
+            start[i] = (char) Math.min(i, cap);
+        }
+        ids.put(new String(start), 0);
+        states.add(start);
+        int[] table = new int[classes * 64];
+        for (int s = 0; s < states.size(); s++) {
+            char[] d = states.get(s);
+            for (int c = 0; c < classes; c++) {
+                char[] e = new char[d.length];
+                e[0] = (char) Math.min(d[0] + 1, cap);
+                for (int i = 1; i < d.length; i++) {
+                    int cost = c != 0 && target[i - 1] == classChar[c] ? 0 : 1;
+                    e[i] = (char) Math.min(Math.min(d[i - 1] + cost, d[i] + 1), Math.min(e[i - 1] + 1, cap));
+                }
+                String key = new String(e);
+                Integer id = ids.get(key);
+                if (id == null) {
+                    if (states.size() == MAX_STATES) {
+                        throw new WorldFormatException("fuzzy answer '" + answer + "' is too complex");
+                    }
+                    id = states.size();
+                    ids.put(key, id);
+                    states.add(e);
+                }
+                int at = s * classes + c;
+                if (at >= table.length) table = Arrays.copyOf(table, table.length * 2);
+                table[at] = id;
+            }
+        }
+        this.next = Arrays.copyOf(table, states.size() * classes);
+        this.accepting = new boolean[states.size()];
+        char[] none = new char[target.length + 1];
+        Arrays.fill(none, (char) cap);
+        Integer deadId = ids.get(new String(none));
+        this.dead = deadId == null ? -1 : deadId;
+        for (int s = 0; s < states.size(); s++) {
+            accepting[s] = states.get(s)[target.length] <= edits;
+        }
+    }
+
+    private int classOf(char c) {
+        if (c < 256) return latin1Class[c];
+        int at = Arrays.binarySearch(otherChars, c);
+        return at < 0 ? 0 : otherClasses[at];
+    }
+
+    @Override
+    public boolean matches(CharSequence attempt) {
+        String text = HashedAnswer.normalize(attempt, true);
+        int state = 0;
+        for (int i = 0; i < text.length(); i++) {
+            state = next[state * classes + classOf(text.charAt(i))];
+            if (state == dead) return false;
+        }
+        return accepting[state];
+    }
+
+    // States of the compiled automaton
+    public int stateCount() {
+        return accepting.length;
+    }
+
+    public static class Type extends MatcherType {
+        @Override
+        public String getName() {
+            return "fuzzy";
+        }
+
+        @Override
+        public AnswerMatcher compile(String answer) throws WorldFormatException {
+            int tilde = answer.lastIndexOf('~');
+            if (tilde < 0) {
+                return new FuzzyMatcher(answer, 1);
+            }
+            try {
+                return new FuzzyMatcher(answer.substring(0, tilde), Integer.parseInt(answer.substring(tilde + 1).trim()));
+            } catch (NumberFormatException e) {
+                throw new WorldFormatException("'" + answer.substring(tilde + 1) + "' after ~ is not a number of edits");
+            }
+        }
+
+        @Override
+        public String sampleAnswer(String answer) {
+            int tilde = answer.lastIndexOf('~');
+            return tilde < 0 ? answer : answer.substring(0, tilde);
+        }
+    }
+}
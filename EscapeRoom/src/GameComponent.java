@@ -1,15 +1,50 @@
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicInteger;
 
 // Abstract base class for all game objects
 public abstract class GameComponent {
+    private static final AtomicInteger componentCount = new AtomicInteger();
+
     protected String name;
+    private int id; // Unique on construction, renumbered densely when its World is frozen
+    private boolean frozen;
 
     public GameComponent(String name) {
         this.name = name;
+        this.id = componentCount.getAndIncrement();
     }
 
-    public abstract void inspect();
+    // Describe this component to one player; output goes to that player's session
+    public abstract void inspect(Player viewer);
 
     public String getName() {
         return name;
     }
+
+    // Index into per-session bitsets and MapTraversal's visited set
+    public int getId() {
+        return id;
+    }
+
+    public boolean isFrozen() {
+        return frozen;
+    }
+
+    // Called by World.freeze(); the component is read-only afterwards
+    void freeze(int denseId) {
+        this.id = denseId;
+        this.frozen = true;
+    }
+
+    protected void checkMutable() {
+        if (frozen) {
+            throw new IllegalStateException(name + " belongs to a frozen world and cannot be changed");
+        }
+    }
+
+    // Case-folded form used as the key of all name indexes; the same under any
+    // default locale (a Turkish one would otherwise fold the I of "LIBRARY" to a dotless i)
+    public static String foldName(String name) {
+        return name.toLowerCase(Locale.ROOT);
+    }
 }
\ No newline at end of file
@@ -1,316 +1,453 @@
-import java.util.ArrayList;
-import java.util.LinkedList;
-import java.util.Queue;
-import java.util.Scanner;
-
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+// One game session: a player walking a shared World, reading commands from `in`
+// and writing everything to `out`.
 public class GameEngine {
-    private ArrayList<Room> map;
-    private Queue<String> hintQueue;
+    // How a session ended
+    public enum Outcome { ESCAPED, QUIT, DISCONNECTED }
+
+    // Shared by every session that does not bring its own registry
+    private static final CommandRegistry STANDARD_COMMANDS = standardCommands();
+    private static final long DEFAULT_HINT_INTERVAL = 30_000; // Milliseconds
+
+    private World world;
+    private List<String> hints; // The world's, read through hintCursor
+    private int hintCursor;
+    private long hintInterval; // Milliseconds between timed hints, 0 for none
+    private TimerWheel.Timeout hintTimer;
+    private ConcurrentLinkedQueue<Runnable> due; // Timers that went off, run at the next turn
     private Player player;
-    private Scanner scanner;
+    private BufferedReader in;
+    private GameOutput out;
+    private CommandRegistry commands;
+    private CommandLine line; // Reused for every command
+    private NameKey nameKey; // Reused for every name looked up
+    private GameJournal.Session journal; // Null unless progress is saved
+    private GameMetrics metrics; // The world's, shared with every other session
+    private AnswerGuard answerGuard; // The world's unless set
+    private Object client; // Remote address, null for in-process sessions
+    private AnswerGuard.Attempts answerAttempts; // This client's answer limits
+    private SharedState shared; // Null for a world of one's own
+    private int session; // Number on events and the state stream
     private int turnCounter;
+    private boolean running;
+    private Outcome outcome;
 
-    public GameEngine() {
-        this.map = new ArrayList<>();
-        this.hintQueue = new LinkedList<>();
-        this.scanner = new Scanner(System.in);
-        this.turnCounter = 0;
-        setupGame();
+    public GameEngine(World world, BufferedReader in, GameOutput out) {
+        this(world, in, out, STANDARD_COMMANDS);
     }
 
-    private void setupGame() {
-        // Create rooms
-        Room entrance = new Room("Entrance Hall", false);
-        Room library = new Room("Library", false);
-        Room corridor = new Room("Secret Corridor", false);
-        Room basement = new Room("Dark Basement", false);
-        Room treasury = new Room("Treasury", false);
-        Room exitRoom = new Room("Exit Door", true);
-
-        // Create items
-        Item rustyKey = new Item("Rusty Key", 10, "KEY");
-        Item goldKey = new Item("Gold Key", 50, "KEY");
-        Item flashlight = new Item("Flashlight", 20, "TOOL");
-        Item clue1 = new Item("Mysterious Note", 5, "CLUE");
-        Item torchItem = new Item("Torch", 25, "TOOL");
-
-        // Create puzzles with rewards
-        RiddlePuzzle riddle1 = new RiddlePuzzle(
-                "Ancient Riddle",
-                3,
-                "I speak without a mouth and hear without ears. I have no body, but I come alive with wind. What am I?",
-                "echo",
-                rustyKey
-        );
-
-        // Puzzle to unlock path to basement (answer reveals connection)
-        RiddlePuzzle corridorPuzzle = new RiddlePuzzle(
-                "Guardian Riddle",
-                4,
-                "What has keys but no locks, space but no room, and you can enter but can't go inside?",
-                "keyboard",
-                torchItem
-        );
-
-        CodePuzzle codeLock = new CodePuzzle(
-                "Safe Lock",
-                5,
-                "1234",
-                "The code is the first four counting numbers",
-                goldKey
-        );
-
-        // Add contents to rooms
-        entrance.addContent(flashlight);
-        entrance.addContent(riddle1);
-        library.addContent(clue1);
-        library.addContent(codeLock);
-        corridor.addContent(corridorPuzzle);
-        basement.addContent(new Item("Old Coin", 15, "TOOL"));
-
-        // Connect rooms - corridor is required to reach basement
-        entrance.connectRoom(library);
-        entrance.connectRoom(corridor);
-        library.connectRoom(treasury);
-        corridor.connectRoom(basement); // Only corridor connects to basement
-        basement.connectRoom(exitRoom);
-
-        // Set locks
-        basement.setRequiredKey("Rusty Key");
-        treasury.setRequiredKey("Gold Key");
-
-        // Add to map
-        map.add(entrance);
-        map.add(library);
-        map.add(corridor);
-        map.add(basement);
-        map.add(treasury);
-        map.add(exitRoom);
-
-        // Create player
-        player = new Player(entrance);
-
-        // Add hints to queue
-        hintQueue.offer("Try exploring all rooms first.");
-        hintQueue.offer("Some puzzles give you keys as rewards.");
-        hintQueue.offer("The Secret Corridor might lead somewhere important.");
-        hintQueue.offer("Use 'back' to retrace your steps.");
-        hintQueue.offer("Check your inventory with 'inventory' command.");
+    public GameEngine(World world, BufferedReader in, GameOutput out, CommandRegistry commands) {
+        world.freeze();
+        this.world = world;
+        this.hints = world.getHints();
+        this.hintInterval = DEFAULT_HINT_INTERVAL;
+        this.due = new ConcurrentLinkedQueue<>();
+        this.in = in;
+        this.out = out;
+        this.commands = commands;
+        this.line = new CommandLine();
+        this.nameKey = new NameKey();
+        this.metrics = world.getMetrics();
+        this.answerGuard = world.getAnswerGuard();
+        this.answerAttempts = answerGuard.attemptsFor(null);
+        this.turnCounter = 0;
+        this.player = new Player(world, out);
+        this.session = EventBus.newSession();
+        player.setEvents(world.getEvents(), session);
     }
 
     public void start() {
-        System.out.println("===================================");
-        System.out.println("  WELCOME TO THE ESCAPE ROOM!");
-        System.out.println("===================================");
-        System.out.println("Find your way to the exit!");
-        System.out.println("Type 'help' for commands.\n");
+        out.println("===================================");
+        out.println("  WELCOME TO THE ESCAPE ROOM!");
+        out.println("===================================");
+        out.println("Find your way to the exit!");
+        out.println("Type 'help' for commands.\n");
+        if (turnCounter > 0) {
+            out.print("Welcome back! Resuming at turn ").print(turnCounter)
+                    .print(" in the ").print(player.getCurrentRoom().getName()).println(".");
+        }
 
-        while (true) {
+        running = true;
+        outcome = Outcome.DISCONNECTED;
+        metrics.sessionStarted();
+        if (shared != null) shared.adopt(player.getState());
+        player.enterGame();
+        if (hintInterval > 0) scheduleHint();
+        while (running) {
             try {
                 turnCounter++;
-
-                // Show hint every 3 turns
-                if (turnCounter % 3 == 0 && !hintQueue.isEmpty()) {
-                    System.out.println("\n[HINT] " + hintQueue.poll());
+                if (journal != null) journal.setTurn(turnCounter);
+
+                runDue();
+                player.showNotices();
+                out.print("\n> ");
+                String input = readLine();
+                if (input == null) {
+                    turnCounter--; // Connection closed before this turn was played
+                    break;
                 }
 
-                System.out.print("\n> ");
-                String input = scanner.nextLine().trim();
-
-                if (input.isEmpty()) continue;
-
                 processCommand(input);
+                player.endTurn();
 
                 if (winConditionCheck()) {
-                    System.out.println("\n***********************************");
-                    System.out.println("  CONGRATULATIONS! YOU ESCAPED!");
-                    System.out.println("***********************************");
-                    System.out.println("You completed the game in " + turnCounter + " turns!");
+                    out.println("\n***********************************");
+                    out.println("  CONGRATULATIONS! YOU ESCAPED!");
+                    out.println("***********************************");
+                    out.print("You completed the game in ").print(turnCounter).println(" turns!");
+                    outcome = Outcome.ESCAPED;
                     break;
                 }
 
+            } catch (IOException e) {
+                break;
             } catch (Exception e) {
-                System.out.println("Error: " + e.getMessage());
+                out.print("Error: ").println(e.getMessage());
+            }
+        }
+
+        if (hintTimer != null) hintTimer.cancel();
+        metrics.sessionEnded();
+        player.leaveGame();
+        if (journal != null) {
+            if (outcome == Outcome.DISCONNECTED) {
+                journal.detach(); // Keep the save for next time
+            } else {
+                journal.end();
             }
         }
 
-        scanner.close();
+        try {
+            out.flush();
+        } catch (IOException e) {
+            // Nobody left to read it
+        }
     }
 
-    private void processCommand(String cmd) throws InvalidCommandException {
-        String[] parts = cmd.toLowerCase().split(" ", 2);
-        String command = parts[0];
+    // Call before start() and resume(): how many moves `back` can undo from memory;
+    // older ones are kept compressed on disk
+    public void setHistoryLimit(int limit) {
+        player.setHistoryLimit(limit);
+    }
 
-        try {
-            switch (command) {
-                case "help":
-                    showHelp();
-                    break;
+    // Call before start(): where the player connects from, so answer limits are kept
+    // across reconnects (see AnswerGuard)
+    public void setClient(Object client) {
+        this.client = client;
+        this.answerAttempts = answerGuard.attemptsFor(client);
+    }
 
-                case "look":
-                    player.getCurrentRoom().inspect();
-                    break;
+    // Call before start(): answer limits from this guard instead of the world's,
+    // e.g. AnswerGuard.unlimited() for scripts
+    public void setAnswerGuard(AnswerGuard answerGuard) {
+        this.answerGuard = answerGuard;
+        this.answerAttempts = answerGuard.attemptsFor(client);
+    }
 
-                case "move":
-                    if (parts.length < 2) {
-                        System.out.println("Move where? Usage: move <room name>");
-                        break;
-                    }
-                    handleMove(parts[1]);
-                    break;
+    // Call before start(): how often a hint comes up by itself, 0 for never
+    public void setHintInterval(long millis) {
+        this.hintInterval = millis;
+    }
 
-                case "back":
-                    player.goBack();
-                    break;
+    // Runs the action on this session's thread at the first turn after the delay,
+    // so a session nobody is typing into is left alone until somebody does
+    public TimerWheel.Timeout schedule(long delay, TimeUnit unit, Runnable action) {
+        return world.getScheduler().schedule(delay, unit, () -> due.add(action));
+    }
 
-                case "pickup":
-                    if (parts.length < 2) {
-                        System.out.println("Pickup what? Usage: pickup <item name>");
-                        break;
-                    }
-                    player.pickupItem(parts[1]);
-                    break;
+    private void runDue() {
+        for (Runnable action = due.poll(); action != null; action = due.poll()) {
+            action.run();
+        }
+    }
 
-                case "inventory":
-                    player.showInventory();
-                    break;
+    // A timed hint shows up at the next prompt, and the clock starts over from there
+    private void scheduleHint() {
+        hintTimer = schedule(hintInterval, TimeUnit.MILLISECONDS, () -> {
+            String hint = nextHint();
+            if (hint != null) {
+                out.print("\n[HINT] ").println(hint);
+            }
+            scheduleHint();
+        });
+    }
 
-                case "sort":
-                    player.sortInventoryByValue();
-                    player.showInventory();
-                    break;
+    // Route advice first, the world's general tips in order when there is none
+    private String nextHint() {
+        PathOracle oracle = world.getPathOracle();
+        String hint = oracle != null ? oracle.hintFor(player) : null;
+        if (hint == null && hintCursor < hints.size()) {
+            hint = hints.get(hintCursor++);
+        }
+        return hint;
+    }
 
-                case "solve":
-                    if (parts.length < 2) {
-                        System.out.println("Solve what? Usage: solve <puzzle name>");
-                        break;
-                    }
-                    handleSolve(parts[1]);
-                    break;
+    // Call before start(): publish this session's room, inventory and solved puzzles
+    // on the stream, as they change
+    public void streamTo(StateStream stream) {
+        player.setStream(stream.open(session));
+    }
 
-                case "inspect":
-                    if (parts.length < 2) {
-                        System.out.println("Inspect what? Usage: inspect <item/puzzle name>");
-                        break;
-                    }
-                    handleInspect(parts[1]);
-                    break;
+    // Call before start() and resume(): play alongside everybody else in this shared
+    // state, where items, puzzles and doors are taken or opened once for all
+    public void joinShared(SharedState shared) {
+        this.shared = shared;
+        player.setShared(shared);
+    }
 
-                case "map":
-                    System.out.println("\n=== Game Map (Recursive) ===");
-                    map.get(0).exploreRecursive(0);
-                    break;
+    // Call before start(): saves progress in this journal session and continues
+    // from what it already holds
+    public void resume(GameJournal.Session session) {
+        journal = session;
+        turnCounter = session.resume(player);
+    }
 
-                case "status":
-                    printStatus();
-                    break;
+    // Flushes the whole turn's output first, so the player sees it before we block
+    private String readLine() throws IOException {
+        out.flush();
+        String text = in.readLine();
+        return text == null ? null : text.trim();
+    }
 
-                case "quit":
-                    System.out.println("Thanks for playing!");
-                    System.exit(0);
-                    break;
+    // The built-in commands. Add to the returned registry and pass it to the
+    // constructor to give sessions extra commands.
+    public static CommandRegistry standardCommands() {
+        return new CommandRegistry()
+                .register("look", "Look around current room",
+                        (game, line) -> game.player.getCurrentRoom().inspect(game.player))
+                .register("move <room>", "Move to a connected room", GameEngine::handleMove)
+                .register("back [steps]", "Go back to previous room", GameEngine::handleBack)
+                .register("pickup <item>", "Pick up an item", GameEngine::handlePickup)
+                .register("inventory [page]", "Show your inventory", GameEngine::handleInventory)
+                .register("sort", "Sort inventory by value", (game, line) -> {
+                    game.player.sortInventoryByValue();
+                    game.player.showInventory();
+                })
+                .register("inspect <name>", "Inspect an item or puzzle", GameEngine::handleInspect)
+                .register("solve <puzzle> [answer]", "Attempt to solve a puzzle", GameEngine::handleSolve)
+                .register("map", "Show game map", (game, line) -> {
+                    game.out.println("\n=== Game Map ===");
+                    game.world.getStartRoom().exploreRecursive(0, game.out);
+                })
+                .register("hint", "Ask which way to go", (game, line) -> game.showHint())
+                .register("status", "Show game status", (game, line) -> game.printStatus())
+                .register("stats", "Show server statistics", (game, line) -> game.out.print(game.metrics.report()))
+                .register("help", "Show this help", (game, line) -> game.out.print(game.commands.getHelp()))
+                .register("quit", "Exit game", (game, line) -> {
+                    game.out.println("Thanks for playing!");
+                    game.running = false; // Ends this session only
+                    game.outcome = Outcome.QUIT;
+                });
+    }
 
-                default:
-                    throw new InvalidCommandException("Unknown command: " + command + ". Type 'help' for available commands.");
-            }
+    // Package-private so benchmarks and tools can drive the dispatcher directly
+    void processCommand(CharSequence input) throws IOException {
+        long start = System.nanoTime();
+        line.parse(input);
+        if (line.isEmpty()) return;
+
+        int command = commands.find(line);
+        if (command < 0) {
+            out.print("Unknown command: ").print(line.getLine(), line.getCommandStart(), line.getCommandEnd())
+                    .println(". Type 'help' for available commands.");
+            metrics.unknownCommand();
+            metrics.commandProcessed(System.nanoTime() - start);
+            return;
+        }
+
+        long handlerStart = System.nanoTime();
+        try {
+            commands.handlerOf(command).handle(this, line);
         } catch (LockedRoomException e) {
-            System.out.println(e.getMessage());
+            metrics.lockedRoom();
+            out.println(e.getMessage());
         } catch (InvalidPuzzleAnswerException e) {
-            System.out.println(e.getMessage());
+            out.println(e.getMessage());
+        } finally {
+            long end = System.nanoTime();
+            metrics.commandHandled(commands.metricSlotOf(command), end - handlerStart);
+            metrics.commandProcessed(end - start);
         }
     }
 
-    private void handleMove(String roomName) throws LockedRoomException {
-        Room targetRoom = null;
-
-        for (Room room : player.getCurrentRoom().getConnectedRooms()) {
-            if (room.getName().equalsIgnoreCase(roomName)) {
-                targetRoom = room;
-                break;
-            }
+    private void handleMove(CommandLine line) throws LockedRoomException {
+        if (!line.hasArgs()) {
+            out.println("Move where? Usage: move <room name>");
+            return;
         }
+        CharSequence args = line.args();
+        Room targetRoom = player.getCurrentRoom().findExit(nameKey.fold(args, 0, args.length()));
 
         if (targetRoom != null) {
             player.moveTo(targetRoom);
         } else {
-            System.out.println("You can't go there from here!");
+            out.println("You can't go there from here!");
         }
     }
 
-    private void handleSolve(String puzzleName) throws InvalidPuzzleAnswerException {
-        Puzzle targetPuzzle = null;
+    private void handlePickup(CommandLine line) {
+        if (!line.hasArgs()) {
+            out.println("Pickup what? Usage: pickup <item name>");
+            return;
+        }
+        player.pickupItem(line.args());
+    }
 
-        for (GameComponent component : player.getCurrentRoom().getContents()) {
-            if (component instanceof Puzzle && component.getName().equalsIgnoreCase(puzzleName)) {
-                targetPuzzle = (Puzzle) component;
-                break;
+    private void handleBack(CommandLine line) {
+        if (!line.hasArgs()) {
+            player.goBack();
+            return;
+        }
+        try {
+            player.goBack(line.intArg());
+        } catch (NumberFormatException e) {
+            out.println("Usage: back [steps]");
+        }
+    }
+
+    private void handleInventory(CommandLine line) {
+        if (!line.hasArgs()) {
+            player.showInventory();
+            return;
+        }
+        try {
+            player.showInventory(line.intArg() - 1);
+        } catch (NumberFormatException e) {
+            out.println("Usage: inventory [page]");
+        }
+    }
+
+    // "solve <puzzle> <answer>" answers inline; with just the puzzle name the
+    // answer is asked for on the next line
+    private void handleSolve(CommandLine line) throws InvalidPuzzleAnswerException, IOException {
+        if (!line.hasArgs()) {
+            out.println("Solve what? Usage: solve <puzzle name> [answer]");
+            return;
+        }
+        CharSequence args = line.args();
+        int length = args.length();
+        Room room = player.getCurrentRoom();
+        Puzzle targetPuzzle = room.findPuzzle(nameKey.fold(args, 0, length));
+        String answer = null;
+
+        // Longest leading run of words that names a puzzle here; the rest is the answer
+        for (int split = length - 1; targetPuzzle == null && split > 0; split--) {
+            if (args.charAt(split) != ' ') continue;
+            targetPuzzle = room.findPuzzle(nameKey.fold(args, 0, split));
+            if (targetPuzzle != null) {
+                answer = args.subSequence(split + 1, length).toString().trim();
             }
         }
 
         if (targetPuzzle == null) {
-            System.out.println("Puzzle not found: " + puzzleName);
+            out.print("Puzzle not found: ").print(args, 0, length).println();
             return;
         }
 
-        targetPuzzle.inspect();
-        System.out.print("Enter your answer: ");
-        String answer = scanner.nextLine().trim();
+        if (answer == null) {
+            targetPuzzle.inspect(player);
+            out.print("Enter your answer: ");
+            answer = readLine();
+            if (answer == null) return; // Input ended mid-prompt
+        }
 
-        if (targetPuzzle.attemptSolve(answer)) {
+        boolean solvedBefore = player.hasSolved(targetPuzzle);
+        // An empty answer is refused by the puzzle, so it costs no token
+        boolean limited = !solvedBefore && !answer.isBlank();
+        if (limited) {
+            long wait = answerGuard.admit(answerAttempts, targetPuzzle);
+            if (wait > 0) {
+                out.print("Too many attempts. Try again in ").print((int) ((wait + 999_999_999) / 1_000_000_000))
+                        .println(" s.");
+                return;
+            }
+        }
+        boolean solved = false;
+        try {
+            solved = targetPuzzle.attemptSolve(answer, player);
+        } finally {
+            if (!solvedBefore) metrics.puzzleAttempted(targetPuzzle, solved);
+        }
+        // Someone else solving it first is not a wrong answer
+        if (limited && !solved && !player.hasSolved(targetPuzzle)) {
+            answerGuard.wrongAnswer(answerAttempts, targetPuzzle);
+        }
+        if (solved && !solvedBefore) {
             // Give reward if puzzle solved
-            if (targetPuzzle instanceof RiddlePuzzle) {
-                Item reward = ((RiddlePuzzle) targetPuzzle).getReward();
-                if (reward != null) {
-                    player.addToInventory(reward);
-                }
-            } else if (targetPuzzle instanceof CodePuzzle) {
-                Item reward = ((CodePuzzle) targetPuzzle).getReward();
-                if (reward != null) {
-                    player.addToInventory(reward);
-                }
+            Item reward = targetPuzzle.getReward();
+            if (reward != null) {
+                player.addToInventory(reward);
             }
         }
     }
 
-    private void handleInspect(String name) {
-        for (GameComponent component : player.getCurrentRoom().getContents()) {
-            if (component.getName().equalsIgnoreCase(name)) {
-                component.inspect();
-                return;
-            }
+    private void handleInspect(CommandLine line) {
+        if (!line.hasArgs()) {
+            out.println("Inspect what? Usage: inspect <item/puzzle name>");
+            return;
         }
-        System.out.println("Not found: " + name);
+        CharSequence name = line.args();
+        GameComponent component = player.getCurrentRoom().findContent(nameKey.fold(name, 0, name.length()));
+        if (component != null) {
+            component.inspect(player);
+            return;
+        }
+        out.print("Not found: ").print(name, 0, name.length()).println();
     }
 
     private void printStatus() {
-        System.out.println("\n=== Status ===");
-        System.out.println("Current Room: " + player.getCurrentRoom().getName());
-        System.out.println("Turn: " + turnCounter);
-        System.out.println("Items in inventory: " + player.getInventory().size());
+        out.println("\n=== Status ===");
+        out.print("Current Room: ").println(player.getCurrentRoom().getName());
+        out.print("Turn: ").println(turnCounter);
+        out.print("Items in inventory: ").println(player.getInventory().size());
     }
 
-    private boolean winConditionCheck() {
-        return player.getCurrentRoom().isExit();
+    private void showHint() {
+        String hint = nextHint();
+        out.print("[HINT] ").println(hint != null ? hint : "You're on your own now!");
+    }
+
+    public Player getPlayer() {
+        return player;
     }
 
-    private void showHelp() {
-        System.out.println("\n=== Available Commands ===");
-        System.out.println("look              - Look around current room");
-        System.out.println("move <room>       - Move to a connected room");
-        System.out.println("back              - Go back to previous room");
-        System.out.println("pickup <item>     - Pick up an item");
-        System.out.println("inventory         - Show your inventory");
-        System.out.println("sort              - Sort inventory by value");
-        System.out.println("inspect <name>    - Inspect an item or puzzle");
-        System.out.println("solve <puzzle>    - Attempt to solve a puzzle");
-        System.out.println("map               - Show game map (recursive)");
-        System.out.println("status            - Show game status");
-        System.out.println("help              - Show this help");
-        System.out.println("quit              - Exit game");
+    // Commands played so far
+    public int getTurns() {
+        return turnCounter;
     }
 
+    // Set when start() returns
+    public Outcome getOutcome() {
+        return outcome;
+    }
+
+    private boolean winConditionCheck() {
+        return player.getCurrentRoom().isExit();
+    }
+
+    // Usage: GameEngine [world file]
     public static void main(String[] args) {
-        GameEngine game = new GameEngine();
+        World world;
+        if (args.length > 0) {
+            try {
+                world = World.load(Path.of(args[0]));
+            } catch (IOException | WorldFormatException e) {
+                System.out.println("Could not load world: " + e.getMessage());
+                return;
+            }
+        } else {
+            world = World.createDefault();
+        }
+
+        BufferedReader stdin = new BufferedReader(new InputStreamReader(System.in));
+        GameEngine game = new GameEngine(world, stdin, GameOutput.toStdout());
         game.start();
     }
 }
\ No newline at end of file
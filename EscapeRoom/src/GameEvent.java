@@ -0,0 +1,20 @@
+// Something a player did, as published on the world's EventBus. room is the id of
+// the room it happened in; subject names what it happened to (an item, a puzzle,
+// the room moved to or from, the room unlocked), or is null.
+public record GameEvent(Type type, int session, String player, int room, String subject, long time) {
+    public enum Type {
+        JOINED,    // Came into the game, in this room
+        QUIT,      // Left the game, from this room
+        ENTERED,   // Came in here; subject is the room they came from
+        LEFT,      // Left here; subject is the room they went to
+        PICKED_UP, // subject is the item
+        SOLVED,    // subject is the puzzle
+        UNLOCKED   // Opened the door from here; subject is the room behind it
+    }
+
+    @Override
+    public String toString() {
+        return time + " " + type + " session=" + session + (player != null ? " player=" + player : "")
+                + " room=" + room + (subject != null ? " subject=" + subject : "");
+    }
+}
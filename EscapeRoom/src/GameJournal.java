@@ -0,0 +1,562 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+// Append-only journal of every named session's progress, so a game survives a crash
+// or a dropped connection and can be resumed.
+//
+// Sessions record each state change (move, back, pickup, solve) as a small binary
+// record and carry on without waiting: one writer thread takes whatever records have
+// piled up from all sessions, writes them in one go and fsyncs once for the lot
+// (group commit). A crash loses at most the batch that was being written.
+//
+// Every SNAPSHOT_INTERVAL events a session also records a snapshot of its full state.
+// The journal is split into segment files; when one fills up, the next one starts
+// with each live session's latest snapshot and the events after it, and the old
+// segments are deleted. Opening the journal does the same, so recovery only ever
+// reads a snapshot plus a short tail per session.
+//
+// Segment layout:
+//   header  int magic "ESJL", short version, int component count of the world
+//   record  int length, int CRC32 of the payload, payload
+//   payload byte type, int session, then per type:
+//           NAME      UTF-8 player name
+//           MOVE      int turn, int room id
+//           BACK      int turn, then optionally int steps (1 when absent)
+//           PICKUP    int turn, int item id
+//           SOLVE     int turn, int puzzle id
+//           SNAPSHOT  int turn, int room id, int n, n history room ids (oldest first; only
+//                     what the player holds in memory, see MoveHistory), int n, n inventory item ids, then collected, solved and unlocked
+//                     bits, each as int n and n longs
+//           END       nothing; the session is over and its name is free again
+// Ids are component ids of the frozen World, so a journal only fits the world it was
+// written for.
+public class GameJournal implements Closeable {
+    private static final int MAGIC = 0x45534a4c; // "ESJL"
+    private static final short VERSION = 1;
+    private static final int HEADER_BYTES = 10;
+    private static final int RECORD_HEADER = 8;
+    private static final int SNAPSHOT_INTERVAL = 64; // Events between snapshots
+    private static final long SEGMENT_LIMIT = 8L << 20;
+    private static final int PENDING_LIMIT = 4 << 20; // Appends wait for the writer beyond this
+
+    private static final byte NAME = 1;
+    private static final byte MOVE = 2;
+    private static final byte BACK = 3;
+    private static final byte PICKUP = 4;
+    private static final byte SOLVE = 5;
+    private static final byte SNAPSHOT = 6;
+    private static final byte END = 7;
+
+    // What recovery and segment rolls need to know about one session
+    private static class Tail {
+        byte[] name;
+        byte[] bytes = new byte[256]; // Latest snapshot and the events after it, as records
+        int length;
+
+        void add(ByteBuffer source, int offset, int count) {
+            if (length + count > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, length + count));
+            }
+            source.get(offset, bytes, length, count);
+            length += count;
+        }
+    }
+
+    private World world;
+    private Path directory;
+    private FileChannel channel; // Writer thread only, after open
+    private int segmentNumber;
+    private long segmentBytes;
+
+    // Records waiting for the writer; guarded by lock
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition hasWork = lock.newCondition();
+    private final Condition committedChanged = lock.newCondition();
+    private ByteBuffer pending = ByteBuffer.allocate(64 << 10);
+    private ByteBuffer writing = ByteBuffer.allocate(64 << 10);
+    private long appended;
+    private long committed;
+    private boolean closing;
+    private IOException failure;
+
+    private final ReentrantLock tailLock = new ReentrantLock();
+    private final HashMap<Integer, Tail> tails = new HashMap<>();
+
+    private final ConcurrentHashMap<String, Session> sessions = new ConcurrentHashMap<>();
+    private final AtomicInteger nextSessionId = new AtomicInteger();
+    private Thread writer;
+
+    private GameJournal(World world, Path directory) {
+        world.freeze();
+        this.world = world;
+        this.directory = directory;
+    }
+
+    // Recovers whatever the directory holds, compacts it into a fresh segment and
+    // starts the writer
+    public static GameJournal open(Path directory, World world) throws IOException {
+        Files.createDirectories(directory);
+        GameJournal journal = new GameJournal(world, directory);
+        journal.recover();
+        journal.roll();
+        journal.writer = new Thread(journal::writeLoop, "game-journal");
+        journal.writer.setDaemon(true);
+        journal.writer.start();
+        return journal;
+    }
+
+    private void recover() throws IOException {
+        List<Path> segments = segments();
+        for (Path segment : segments) {
+            ByteBuffer data = ByteBuffer.wrap(Files.readAllBytes(segment));
+            if (data.limit() < HEADER_BYTES || data.getInt(0) != MAGIC) {
+                throw new IOException(segment + ": not a journal segment");
+            }
+            if (data.getShort(4) != VERSION) {
+                throw new IOException(segment + ": unsupported journal version " + data.getShort(4));
+            }
+            if (data.getInt(6) != world.getComponentCount()) {
+                throw new IOException(segment + ": written for a different world");
+            }
+            // A torn record can only be the last one written before a crash
+            track(data, HEADER_BYTES, data.limit(), true);
+            segmentNumber = Math.max(segmentNumber, segmentNumber(segment));
+        }
+
+        int maxId = -1;
+        for (Tail tail : tails.values()) {
+            int id = ByteBuffer.wrap(tail.name).getInt(RECORD_HEADER + 1);
+            String name = new String(tail.name, RECORD_HEADER + 5, tail.name.length - RECORD_HEADER - 5, StandardCharsets.UTF_8);
+            sessions.put(name, new Session(name, id, true));
+            maxId = Math.max(maxId, id);
+        }
+        nextSessionId.set(maxId + 1);
+    }
+
+    // Updates the per-session tails from records in [from, to); returns where valid records end
+    private int track(ByteBuffer data, int from, int to, boolean verify) {
+        CRC32 crc = verify ? new CRC32() : null;
+        int p = from;
+        tailLock.lock();
+        try {
+            while (p + RECORD_HEADER <= to) {
+                int length = data.getInt(p);
+                if (length < 5 || p + RECORD_HEADER + length > to) break;
+                if (verify) {
+                    crc.reset();
+                    crc.update(data.slice(p + RECORD_HEADER, length));
+                    if ((int) crc.getValue() != data.getInt(p + 4)) break;
+                }
+                int size = RECORD_HEADER + length;
+                byte type = data.get(p + RECORD_HEADER);
+                int session = data.getInt(p + RECORD_HEADER + 1);
+                if (type == END) {
+                    tails.remove(session);
+                } else if (type == NAME) {
+                    // A new NAME starts the session over, so nothing before it is replayed
+                    Tail tail = tails.computeIfAbsent(session, k -> new Tail());
+                    tail.name = new byte[size];
+                    data.get(p, tail.name);
+                    tail.length = 0;
+                } else {
+                    Tail tail = tails.get(session);
+                    if (tail != null) {
+                        if (type == SNAPSHOT) tail.length = 0;
+                        tail.add(data, p, size);
+                    }
+                }
+                p += size;
+            }
+        } finally {
+            tailLock.unlock();
+        }
+        return p;
+    }
+
+    // Starts the next segment with every live session's tail, then drops the older ones.
+    // The segment is written under a temporary name and only renamed into place once it
+    // is on disk, so a crash part way through never leaves a short segment to recover.
+    private void roll() throws IOException {
+        int next = segmentNumber + 1;
+        Path temporary = directory.resolve(segmentPath(next).getFileName() + ".tmp");
+        FileChannel fresh = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+        header.putInt(MAGIC).putShort(VERSION).putInt(world.getComponentCount()).flip();
+        long size = writeFully(fresh, header);
+
+        tailLock.lock();
+        try {
+            for (Tail tail : tails.values()) {
+                size += writeFully(fresh, ByteBuffer.wrap(tail.name));
+                size += writeFully(fresh, ByteBuffer.wrap(tail.bytes, 0, tail.length));
+            }
+        } finally {
+            tailLock.unlock();
+        }
+        fresh.force(true);
+        Files.move(temporary, segmentPath(next), StandardCopyOption.ATOMIC_MOVE);
+
+        if (channel != null) channel.close();
+        channel = fresh;
+        segmentNumber = next;
+        segmentBytes = size;
+        for (Path old : segments()) {
+            if (segmentNumber(old) < next) Files.delete(old);
+        }
+    }
+
+    private static long writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        long written = buffer.remaining();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        return written;
+    }
+
+    private void writeLoop() {
+        try {
+            while (true) {
+                lock.lock();
+                try {
+                    while (pending.position() == 0 && !closing) {
+                        hasWork.await();
+                    }
+                    if (pending.position() == 0) return; // Closing and drained
+                    ByteBuffer batch = pending;
+                    pending = writing;
+                    writing = batch;
+                } finally {
+                    lock.unlock();
+                }
+
+                writing.flip();
+                int count = writing.remaining();
+                track(writing, 0, count, false);
+                writeFully(channel, writing);
+                channel.force(false);
+                segmentBytes += count;
+                writing.clear();
+
+                lock.lock();
+                try {
+                    committed += count;
+                    committedChanged.signalAll();
+                } finally {
+                    lock.unlock();
+                }
+
+                if (segmentBytes >= SEGMENT_LIMIT) roll();
+            }
+        } catch (IOException e) {
+            fail(e);
+        } catch (InterruptedException e) {
+            fail(new IOException("Journal writer interrupted"));
+        }
+    }
+
+    private void fail(IOException e) {
+        lock.lock();
+        try {
+            failure = e;
+            committedChanged.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        System.err.println("Game journal stopped, progress is no longer saved: " + e.getMessage());
+    }
+
+    // Queues one record; returns the journal position it ends at, or -1 if the journal is down
+    private long append(byte[] record, int length) {
+        lock.lock();
+        try {
+            // Only a stalled disk gets here; hold sessions back rather than grow without bound
+            while (pending.position() > PENDING_LIMIT && failure == null && !closing) {
+                committedChanged.awaitUninterruptibly();
+            }
+            if (failure != null || closing) return -1;
+            if (pending.remaining() < length) {
+                ByteBuffer bigger = ByteBuffer.allocate(Math.max(pending.capacity() * 2, pending.position() + length));
+                pending.flip();
+                bigger.put(pending);
+                pending = bigger;
+            }
+            pending.put(record, 0, length);
+            appended += length;
+            hasWork.signal();
+            return appended;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Blocks until everything up to position is on disk
+    private void awaitCommitted(long position) {
+        lock.lock();
+        try {
+            while (committed < position && failure == null) {
+                committedChanged.awaitUninterruptibly();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // The session saved under this name, resumable if it has progress, or null if
+    // that name is playing right now
+    public Session session(String name) {
+        Session session = sessions.computeIfAbsent(name, n -> new Session(n, nextSessionId.getAndIncrement(), false));
+        return session.active.compareAndSet(false, true) ? session : null;
+    }
+
+    // Waits for every queued record, then stops the writer
+    @Override
+    public void close() throws IOException {
+        lock.lock();
+        try {
+            closing = true;
+            hasWork.signal();
+        } finally {
+            lock.unlock();
+        }
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        channel.close();
+        if (failure != null) throw failure;
+    }
+
+    private List<Path> segments() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            ArrayList<Path> segments = new ArrayList<>();
+            files.filter(p -> p.getFileName().toString().matches("journal-\\d{8}\\.log")).sorted().forEach(segments::add);
+            return segments;
+        }
+    }
+
+    private Path segmentPath(int number) {
+        return directory.resolve(String.format("journal-%08d.log", number));
+    }
+
+    private static int segmentNumber(Path segment) {
+        String name = segment.getFileName().toString();
+        return Integer.parseInt(name.substring(8, 16));
+    }
+
+    // One player's save slot. Used by that player's session thread only.
+    public class Session {
+        private final String name;
+        private final int id;
+        private final AtomicBoolean active = new AtomicBoolean();
+        private boolean named; // NAME record written
+        private final ByteBuffer scratch = ByteBuffer.allocate(RECORD_HEADER + 13);
+        private final CRC32 crc = new CRC32();
+        private Player player;
+        private int turn;
+        private int sinceSnapshot;
+        private long lastPosition;
+
+        private Session(String name, int id, boolean named) {
+            this.name = name;
+            this.id = id;
+            this.named = named;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        // Brings a fresh player up to date and starts recording it; returns the turn
+        // the saved game had reached, 0 for a new one
+        public int resume(Player p) {
+            if (!named) {
+                byte[] utf8 = name.getBytes(StandardCharsets.UTF_8);
+                ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER + 5 + utf8.length);
+                record.position(RECORD_HEADER);
+                record.put(NAME).putInt(id).put(utf8);
+                write(record);
+                named = true;
+            }
+
+            // Everything this session wrote must have reached the tails before reading them
+            awaitCommitted(lastPosition);
+            byte[] saved;
+            int length;
+            tailLock.lock();
+            try {
+                Tail tail = tails.get(id);
+                saved = tail == null ? new byte[0] : Arrays.copyOf(tail.bytes, tail.length);
+                length = saved.length;
+            } finally {
+                tailLock.unlock();
+            }
+            turn = replay(p, ByteBuffer.wrap(saved, 0, length));
+            player = p;
+            p.setJournal(this);
+            return turn;
+        }
+
+        private int replay(Player p, ByteBuffer saved) {
+            int lastTurn = 0;
+            while (saved.remaining() > RECORD_HEADER) {
+                int length = saved.getInt();
+                saved.getInt(); // CRC, already checked
+                int next = saved.position() + length;
+                byte type = saved.get();
+                saved.getInt(); // Session
+                lastTurn = saved.getInt();
+                switch (type) {
+                    case MOVE -> p.replayMove((Room) world.getComponent(saved.getInt()));
+                    case BACK -> p.replayBack(saved.position() < next ? saved.getInt() : 1);
+                    case PICKUP -> p.replayPickup((Item) world.getComponent(saved.getInt()));
+                    case SOLVE -> p.replaySolve((Puzzle) world.getComponent(saved.getInt()));
+                    case SNAPSHOT -> restoreSnapshot(p, saved);
+                    default -> {
+                    }
+                }
+                saved.position(next);
+            }
+            return lastTurn;
+        }
+
+        private void restoreSnapshot(Player p, ByteBuffer saved) {
+            Room current = (Room) world.getComponent(saved.getInt());
+            int[] history = new int[saved.getInt()];
+            for (int i = 0; i < history.length; i++) {
+                history[i] = saved.getInt();
+            }
+            ArrayList<Item> items = new ArrayList<>();
+            for (int n = saved.getInt(); n > 0; n--) {
+                items.add((Item) world.getComponent(saved.getInt()));
+            }
+            BitSet collected = readBits(saved);
+            BitSet solved = readBits(saved);
+            BitSet unlocked = readBits(saved);
+            p.restore(current, history, items, new SessionState(collected, solved, unlocked));
+        }
+
+        private BitSet readBits(ByteBuffer saved) {
+            long[] words = new long[saved.getInt()];
+            for (int i = 0; i < words.length; i++) {
+                words[i] = saved.getLong();
+            }
+            return BitSet.valueOf(words);
+        }
+
+        // The engine's turn counter, stamped on the records that follow
+        public void setTurn(int turn) {
+            this.turn = turn;
+        }
+
+        void moved(Room room) {
+            event(MOVE, room.getId());
+        }
+
+        void wentBack(long steps) {
+            event(BACK, (int) Math.min(steps, Integer.MAX_VALUE));
+        }
+
+        void pickedUp(Item item) {
+            event(PICKUP, item.getId());
+        }
+
+        void solved(Puzzle puzzle) {
+            event(SOLVE, puzzle.getId());
+        }
+
+        private void event(byte type, int componentId) {
+            scratch.clear();
+            scratch.position(RECORD_HEADER);
+            scratch.put(type).putInt(id).putInt(turn);
+            if (type != BACK || componentId != 1) scratch.putInt(componentId);
+            write(scratch);
+            if (++sinceSnapshot >= SNAPSHOT_INTERVAL) {
+                snapshot();
+            }
+        }
+
+        private void snapshot() {
+            SessionState state = player.getState();
+            int[] history = player.getRecentMoves();
+            long[] collected = state.getCollectedItems().toLongArray();
+            long[] solved = state.getSolvedPuzzles().toLongArray();
+            long[] unlocked = state.getUnlockedDoors().toLongArray();
+            Inventory inventory = player.getInventory();
+
+            int size = RECORD_HEADER + 13 + 4 + 4 * history.length + 4 + 4 * inventory.size()
+                    + 12 + 8 * (collected.length + solved.length + unlocked.length);
+            ByteBuffer record = ByteBuffer.allocate(size);
+            record.position(RECORD_HEADER);
+            record.put(SNAPSHOT).putInt(id).putInt(turn).putInt(player.getCurrentRoom().getId());
+            record.putInt(history.length);
+            for (int room : history) {
+                record.putInt(room);
+            }
+            record.putInt(inventory.size());
+            for (Item item : inventory) {
+                record.putInt(item.getId());
+            }
+            for (long[] words : new long[][]{collected, solved, unlocked}) {
+                record.putInt(words.length);
+                for (long word : words) {
+                    record.putLong(word);
+                }
+            }
+            write(record);
+            sinceSnapshot = 0;
+        }
+
+        // Fills in length and CRC around a payload written from RECORD_HEADER on
+        private void write(ByteBuffer record) {
+            int end = record.position();
+            int length = end - RECORD_HEADER;
+            crc.reset();
+            crc.update(record.array(), RECORD_HEADER, length);
+            record.putInt(0, length).putInt(4, (int) crc.getValue());
+            long position = append(record.array(), end);
+            if (position >= 0) lastPosition = position;
+        }
+
+        // The game is over: forget it, so the name starts fresh next time
+        public void end() {
+            write(ByteBuffer.allocate(RECORD_HEADER + 5).position(RECORD_HEADER).put(END).putInt(id));
+            detach();
+            sessions.remove(name, this);
+        }
+
+        // The player left mid-game; the save stays and can be resumed
+        public void detach() {
+            if (player != null) {
+                player.setJournal(null);
+                player = null;
+            }
+            sinceSnapshot = 0;
+            active.set(false);
+        }
+
+        // Blocks until everything this session recorded is on disk
+        public void sync() {
+            awaitCommitted(lastPosition);
+        }
+    }
+}
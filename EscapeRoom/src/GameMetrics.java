@@ -0,0 +1,291 @@
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+// Runtime counters for one World, shared by all its sessions: commands and their
+// latency by command word, puzzle attempts and solves per puzzle, locked doors and
+// sessions. Counters are LongAdders (striped, so concurrent sessions don't fight over
+// one cache line) and histograms are LatencyHistograms; recording takes no locks and,
+// once a command's histogram exists, allocates nothing.
+//
+// Shown in game by the "stats" command and over JMX once registerMBean() is called.
+public class GameMetrics implements GameMetricsMBean {
+    static final int MAX_COMMANDS = 64;
+    private static final int PUZZLE_SLOTS = 1 << 12; // Puzzles tracked one by one; the rest only in totals
+    private static final int TOP_PUZZLES = 10;
+
+    // Command word -> slot, the same for every registry in the process
+    private static final HashMap<String, Integer> commandSlots = new HashMap<>();
+    private static final ArrayList<String> commandNames = new ArrayList<>();
+
+    private final World world; // For puzzle names
+    private final long startNanos;
+
+    private final LongAdder[] commandCounts;
+    private final AtomicReferenceArray<LatencyHistogram> handlerLatency; // Created on first use
+    private final LatencyHistogram processLatency;
+    private final LongAdder unknownCommands;
+    private final LongAdder activeSessions;
+    private final LongAdder sessionsStarted;
+    private final LongAdder lockedRooms;
+    private final LongAdder puzzleAttempts;
+    private final LongAdder puzzleSolves;
+
+    // Open addressing by puzzle id; a slot holds id + 1 once claimed
+    private final AtomicIntegerArray puzzleIds;
+    private final AtomicLongArray attemptsByPuzzle;
+    private final AtomicLongArray solvesByPuzzle;
+
+    public GameMetrics(World world) {
+        this.world = world;
+        this.startNanos = System.nanoTime();
+        this.commandCounts = new LongAdder[MAX_COMMANDS];
+        for (int i = 0; i < MAX_COMMANDS; i++) {
+            commandCounts[i] = new LongAdder();
+        }
+        this.handlerLatency = new AtomicReferenceArray<>(MAX_COMMANDS);
+        this.processLatency = new LatencyHistogram();
+        this.unknownCommands = new LongAdder();
+        this.activeSessions = new LongAdder();
+        this.sessionsStarted = new LongAdder();
+        this.lockedRooms = new LongAdder();
+        this.puzzleAttempts = new LongAdder();
+        this.puzzleSolves = new LongAdder();
+        this.puzzleIds = new AtomicIntegerArray(PUZZLE_SLOTS);
+        this.attemptsByPuzzle = new AtomicLongArray(PUZZLE_SLOTS);
+        this.solvesByPuzzle = new AtomicLongArray(PUZZLE_SLOTS);
+    }
+
+    // Slot for a command word, given out when the command is registered
+    static synchronized int commandSlot(String name) {
+        String key = GameComponent.foldName(name);
+        Integer slot = commandSlots.get(key);
+        if (slot == null) {
+            if (commandNames.size() == MAX_COMMANDS) {
+                throw new IllegalStateException("More than " + MAX_COMMANDS + " distinct commands");
+            }
+            slot = commandNames.size();
+            commandSlots.put(key, slot);
+            commandNames.add(key);
+        }
+        return slot;
+    }
+
+    private static synchronized String commandName(int slot) {
+        return slot < commandNames.size() ? commandNames.get(slot) : null;
+    }
+
+    private static synchronized int commandSlotCount() {
+        return commandNames.size();
+    }
+
+    // Recording
+
+    // Whole processCommand call, parsing included
+    public void commandProcessed(long nanos) {
+        processLatency.record(nanos);
+    }
+
+    // Handler time of a registered command
+    public void commandHandled(int slot, long nanos) {
+        commandCounts[slot].increment();
+        LatencyHistogram histogram = handlerLatency.get(slot);
+        if (histogram == null) {
+            handlerLatency.compareAndSet(slot, null, new LatencyHistogram());
+            histogram = handlerLatency.get(slot);
+        }
+        histogram.record(nanos);
+    }
+
+    public void unknownCommand() {
+        unknownCommands.increment();
+    }
+
+    public void lockedRoom() {
+        lockedRooms.increment();
+    }
+
+    public void sessionStarted() {
+        sessionsStarted.increment();
+        activeSessions.increment();
+    }
+
+    public void sessionEnded() {
+        activeSessions.decrement();
+    }
+
+    public void puzzleAttempted(Puzzle puzzle, boolean solved) {
+        puzzleAttempts.increment();
+        if (solved) puzzleSolves.increment();
+
+        int slot = puzzleSlot(puzzle.getId());
+        if (slot >= 0) {
+            attemptsByPuzzle.incrementAndGet(slot);
+            if (solved) solvesByPuzzle.incrementAndGet(slot);
+        }
+    }
+
+    private int puzzleSlot(int id) {
+        int key = id + 1;
+        int slot = (key * 0x9E3779B9 >>> 20) & (PUZZLE_SLOTS - 1);
+        for (int probes = 0; probes < PUZZLE_SLOTS; ) {
+            int held = puzzleIds.get(slot);
+            if (held == key) return slot;
+            if (held == 0) {
+                // Claim it, or look again if another thread just did
+                if (puzzleIds.compareAndSet(slot, 0, key)) return slot;
+                continue;
+            }
+            slot = (slot + 1) & (PUZZLE_SLOTS - 1);
+            probes++;
+        }
+        return -1;
+    }
+
+    // Reading
+
+    private double uptimeSeconds() {
+        return (System.nanoTime() - startNanos) / 1e9;
+    }
+
+    @Override
+    public long getCommandsTotal() {
+        long total = 0;
+        for (LongAdder count : commandCounts) {
+            total += count.sum();
+        }
+        return total;
+    }
+
+    @Override
+    public double getCommandsPerSecond() {
+        return getCommandsTotal() / uptimeSeconds();
+    }
+
+    @Override
+    public long getUnknownCommands() {
+        return unknownCommands.sum();
+    }
+
+    @Override
+    public long getActiveSessions() {
+        return activeSessions.sum();
+    }
+
+    @Override
+    public long getSessionsStarted() {
+        return sessionsStarted.sum();
+    }
+
+    @Override
+    public long getLockedRoomRejections() {
+        return lockedRooms.sum();
+    }
+
+    @Override
+    public long getPuzzleAttempts() {
+        return puzzleAttempts.sum();
+    }
+
+    @Override
+    public long getPuzzleSolves() {
+        return puzzleSolves.sum();
+    }
+
+    @Override
+    public double getProcessCommandMeanMicros() {
+        return processLatency.getMean() / 1000;
+    }
+
+    @Override
+    public long getProcessCommandP50Micros() {
+        return processLatency.getValueAtPercentile(50) / 1000;
+    }
+
+    @Override
+    public long getProcessCommandP99Micros() {
+        return processLatency.getValueAtPercentile(99) / 1000;
+    }
+
+    @Override
+    public long getProcessCommandMaxMicros() {
+        return processLatency.getMax() / 1000;
+    }
+
+    @Override
+    public String[] getCommandSummary() {
+        ArrayList<String> lines = new ArrayList<>();
+        double uptime = uptimeSeconds();
+        for (int slot = 0; slot < commandSlotCount(); slot++) {
+            LatencyHistogram histogram = handlerLatency.get(slot);
+            if (histogram == null) continue;
+            long count = commandCounts[slot].sum();
+            lines.add(String.format("%-12s %9d %9.1f %9.1f %9.1f %9.1f", commandName(slot), count, count / uptime,
+                    histogram.getValueAtPercentile(50) / 1e3, histogram.getValueAtPercentile(99) / 1e3,
+                    histogram.getMax() / 1e3));
+        }
+        return lines.toArray(new String[0]);
+    }
+
+    @Override
+    public long commandCount(String command) {
+        int slot = knownSlot(command);
+        return slot < 0 ? 0 : commandCounts[slot].sum();
+    }
+
+    @Override
+    public long commandLatencyMicros(String command, double percentile) {
+        int slot = knownSlot(command);
+        LatencyHistogram histogram = slot < 0 ? null : handlerLatency.get(slot);
+        return histogram == null ? 0 : histogram.getValueAtPercentile(percentile) / 1000;
+    }
+
+    private static synchronized int knownSlot(String command) {
+        Integer slot = commandSlots.get(GameComponent.foldName(command));
+        return slot == null ? -1 : slot;
+    }
+
+    @Override
+    public String report() {
+        StringBuilder sb = new StringBuilder("\n=== Stats ===\n");
+        sb.append(String.format("Uptime %.1f s, %d sessions active, %d started%n",
+                uptimeSeconds(), getActiveSessions(), getSessionsStarted()));
+        sb.append(String.format("Commands: %d (%.1f/s), %d unknown%n",
+                getCommandsTotal(), getCommandsPerSecond(), getUnknownCommands()));
+        sb.append(String.format("processCommand: mean %.1f us, p50 %d us, p99 %d us, max %d us%n",
+                getProcessCommandMeanMicros(), getProcessCommandP50Micros(), getProcessCommandP99Micros(),
+                getProcessCommandMaxMicros()));
+        sb.append(String.format("%-12s %9s %9s %9s %9s %9s%n", "COMMAND", "COUNT", "PER SEC", "P50(us)", "P99(us)", "MAX(us)"));
+        for (String line : getCommandSummary()) {
+            sb.append(line).append('\n');
+        }
+        sb.append(String.format("Locked doors hit: %d%n", getLockedRoomRejections()));
+        sb.append(String.format("Puzzles: %d attempts, %d solved%n", getPuzzleAttempts(), getPuzzleSolves()));
+
+        // Most attempted puzzles first
+        ArrayList<Integer> slots = new ArrayList<>();
+        for (int slot = 0; slot < PUZZLE_SLOTS; slot++) {
+            if (puzzleIds.get(slot) != 0) slots.add(slot);
+        }
+        slots.sort((a, b) -> Long.compare(attemptsByPuzzle.get(b), attemptsByPuzzle.get(a)));
+        for (int i = 0; i < Math.min(TOP_PUZZLES, slots.size()); i++) {
+            int slot = slots.get(i);
+            String name = world.getComponent(puzzleIds.get(slot) - 1).getName();
+            sb.append(String.format("  %-30s %6d attempts %6d solved%n", name,
+                    attemptsByPuzzle.get(slot), solvesByPuzzle.get(slot)));
+        }
+        return sb.toString();
+    }
+
+    // Publish on the platform MBean server as escaperoom:type=GameMetrics,name=<name>
+    public void registerMBean(String name) throws JMException {
+        ManagementFactory.getPlatformMBeanServer().registerMBean(this,
+                new ObjectName("escaperoom:type=GameMetrics,name=" + ObjectName.quote(name)));
+    }
+}
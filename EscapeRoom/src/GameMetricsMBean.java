@@ -0,0 +1,36 @@
+// JMX view of GameMetrics; latencies are in microseconds
+public interface GameMetricsMBean {
+    long getCommandsTotal();
+
+    double getCommandsPerSecond();
+
+    long getUnknownCommands();
+
+    long getActiveSessions();
+
+    long getSessionsStarted();
+
+    long getLockedRoomRejections();
+
+    long getPuzzleAttempts();
+
+    long getPuzzleSolves();
+
+    double getProcessCommandMeanMicros();
+
+    long getProcessCommandP50Micros();
+
+    long getProcessCommandP99Micros();
+
+    long getProcessCommandMaxMicros();
+
+    // One line per command that has been played
+    String[] getCommandSummary();
+
+    long commandCount(String command);
+
+    long commandLatencyMicros(String command, double percentile);
+
+    // Same text as the in-game stats command
+    String report();
+}
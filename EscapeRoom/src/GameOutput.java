@@ -0,0 +1,152 @@
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+
+// Per-session output buffer. Components render into it during a turn and the
+// engine flushes once per command, so a turn costs one write to the sink instead
+// of one locked, flushed println per line. Fixed messages are appended as-is and
+// composed ones are chained (out.print("You moved to: ").println(name)), so no
+// intermediate Strings are built. Not thread-safe: one instance per session.
+public class GameOutput {
+    // Where flushed text ends up
+    public interface Sink {
+        void write(CharSequence text) throws IOException;
+    }
+
+    private final StringBuilder buffer;
+    private final Sink sink;
+
+    public GameOutput(Sink sink) {
+        this.buffer = new StringBuilder(512);
+        this.sink = sink;
+    }
+
+    public GameOutput print(String s) {
+        buffer.append(s);
+        return this;
+    }
+
+    // Part of a line being processed, without copying it out first
+    public GameOutput print(CharSequence s, int start, int end) {
+        buffer.append(s, start, end);
+        return this;
+    }
+
+    public GameOutput print(int n) {
+        buffer.append(n);
+        return this;
+    }
+
+    public GameOutput print(char c) {
+        buffer.append(c);
+        return this;
+    }
+
+    public GameOutput repeat(char c, int count) {
+        for (int i = 0; i < count; i++) {
+            buffer.append(c);
+        }
+        return this;
+    }
+
+    public GameOutput println(String s) {
+        buffer.append(s).append('\n');
+        return this;
+    }
+
+    public GameOutput println(int n) {
+        buffer.append(n).append('\n');
+        return this;
+    }
+
+    public GameOutput println() {
+        buffer.append('\n');
+        return this;
+    }
+
+    // Hand everything rendered since the last flush to the sink
+    public void flush() throws IOException {
+        if (buffer.length() == 0) return;
+        try {
+            sink.write(buffer);
+        } finally {
+            buffer.setLength(0);
+        }
+    }
+
+    // Text rendered but not flushed yet
+    public int pending() {
+        return buffer.length();
+    }
+
+    public static GameOutput toStdout() {
+        return new GameOutput(new StreamSink(System.out));
+    }
+
+    public static GameOutput discard() {
+        return new GameOutput(text -> {
+        });
+    }
+
+    // UTF-8 encodes straight from the buffer into a reusable byte buffer
+    public static class StreamSink implements Sink {
+        private final OutputStream stream;
+        private final CharsetEncoder encoder;
+        private final byte[] bytes;
+        private final ByteBuffer byteBuffer;
+
+        public StreamSink(OutputStream stream) {
+            this(stream, 4096);
+        }
+
+        public StreamSink(OutputStream stream, int bufferSize) {
+            this.stream = stream;
+            this.encoder = StandardCharsets.UTF_8.newEncoder()
+                    .onMalformedInput(CodingErrorAction.REPLACE)
+                    .onUnmappableCharacter(CodingErrorAction.REPLACE);
+            this.bytes = new byte[bufferSize];
+            this.byteBuffer = ByteBuffer.wrap(bytes);
+        }
+
+        @Override
+        public void write(CharSequence text) throws IOException {
+            CharBuffer chars = CharBuffer.wrap(text);
+            encoder.reset();
+            while (encoder.encode(chars, byteBuffer, true).isOverflow()) {
+                drain();
+            }
+            while (encoder.flush(byteBuffer).isOverflow()) {
+                drain();
+            }
+            drain();
+            stream.flush();
+        }
+
+        private void drain() throws IOException {
+            stream.write(bytes, 0, byteBuffer.position());
+            byteBuffer.clear();
+        }
+    }
+
+    // Keeps everything that was flushed, e.g. for tests and scripted runs
+    public static class MemorySink implements Sink {
+        private final StringBuilder text = new StringBuilder();
+
+        @Override
+        public void write(CharSequence chunk) {
+            text.append(chunk);
+        }
+
+        public String getText() {
+            return text.toString();
+        }
+
+        public void clear() {
+            text.setLength(0);
+        }
+    }
+}
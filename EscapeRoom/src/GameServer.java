@@ -0,0 +1,196 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.management.JMException;
+
+// Headless host: every connection gets its own GameEngine on a virtual thread,
+// all of them sharing one read-only World.
+public class GameServer {
+    // Small buffers keep idle sessions cheap; commands and replies are short
+    private static final int INPUT_BUFFER = 256;
+    private static final int OUTPUT_BUFFER = 1024;
+
+    private World world;
+    private GameJournal journal; // Null when games are not saved
+    private SharedState shared; // Null when every session plays its own copy of the world
+    private int historyLimit = MoveHistory.DEFAULT_LIMIT;
+    private StateStream stateStream; // Null when live state is not streamed
+    private ExecutorService sessions;
+    private AtomicInteger activeSessions;
+    private volatile ServerSocket serverSocket; // While listen() runs
+
+    public GameServer(World world) {
+        this(world, null);
+    }
+
+    // With a journal, players give a name first and pick up their saved game
+    public GameServer(World world, GameJournal journal) {
+        this.world = world;
+        this.journal = journal;
+        this.sessions = Executors.newVirtualThreadPerTaskExecutor();
+        this.activeSessions = new AtomicInteger();
+    }
+
+    // Put every session from now on in one shared game: items, puzzles and doors are
+    // taken or opened once for everybody, and players see each other come and go
+    public void setShared(boolean shared) {
+        this.shared = shared ? new SharedState(world) : null;
+    }
+
+    // Moves each player keeps in memory for `back`; older ones go to disk
+    public void setHistoryLimit(int historyLimit) {
+        if (historyLimit < 1) {
+            throw new IllegalArgumentException("The move history needs room for at least one move");
+        }
+        this.historyLimit = historyLimit;
+    }
+
+    // Every session from now on publishes its live state on this stream
+    public void setStateStream(StateStream stateStream) {
+        this.stateStream = stateStream;
+    }
+
+    // Accept TCP connections until shutdown() closes the socket
+    public void listen(int port) throws IOException {
+        try (ServerSocket server = new ServerSocket(port)) {
+            serverSocket = server;
+            System.out.println("Escape Room server listening on port " + port);
+            while (!server.isClosed()) {
+                Socket socket;
+                try {
+                    socket = server.accept();
+                } catch (SocketException e) {
+                    if (server.isClosed()) return; // Shut down
+                    throw e;
+                }
+                sessions.submit(() -> {
+                    try (socket) {
+                        runSession(socket.getInputStream(), socket.getOutputStream(), socket.getInetAddress());
+                    } catch (IOException e) {
+                        // Client went away, nothing else to clean up
+                    }
+                });
+            }
+        }
+    }
+
+    // In-process channel, e.g. piped streams from a bot or a test harness
+    public Future<?> startSession(InputStream in, OutputStream out) {
+        return sessions.submit(() -> runSession(in, out, null));
+    }
+
+    private void runSession(InputStream in, OutputStream out, Object client) {
+        activeSessions.incrementAndGet();
+        try {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8), INPUT_BUFFER);
+            GameOutput writer = new GameOutput(new GameOutput.StreamSink(out, OUTPUT_BUFFER));
+            GameEngine engine = new GameEngine(world, reader, writer);
+            if (client != null) engine.setClient(client);
+            if (historyLimit != MoveHistory.DEFAULT_LIMIT) engine.setHistoryLimit(historyLimit);
+            if (shared != null) engine.joinShared(shared);
+            if (stateStream != null) engine.streamTo(stateStream);
+            if (journal != null) {
+                writer.print("Your name (to save or resume your game): ");
+                writer.flush();
+                String name = reader.readLine();
+                if (name == null || name.isBlank()) return;
+                GameJournal.Session saved = journal.session(name.trim());
+                if (saved == null) {
+                    writer.print("Someone is already playing as ").print(name.trim()).println(".");
+                    writer.flush();
+                    return;
+                }
+                engine.getPlayer().setName(name.trim());
+                engine.resume(saved);
+            }
+            engine.start();
+        } catch (IOException e) {
+            // Client went away before the game started
+        } finally {
+            activeSessions.decrementAndGet();
+        }
+    }
+
+    public int getActiveSessions() {
+        return activeSessions.get();
+    }
+
+    // Stops accepting connections and ends the running sessions
+    public void shutdown() {
+        ServerSocket server = serverSocket;
+        if (server != null) {
+            try {
+                server.close();
+            } catch (IOException e) {
+                // Closing anyway
+            }
+        }
+        sessions.shutdownNow();
+    }
+
+    // Usage: GameServer [--shared] [--event-log <file>] [--history <moves>] [--state-file <file>]
+    //                  [--state-socket <port or path>] [port] [world file or "default"]
+    //                  [journal directory or "none"] [cached rooms]
+    // With a room cache size a compiled world is paged in from the file instead of loaded whole
+    // (the default and text worlds are always loaded whole);
+    // --shared puts all players in one game; --event-log writes every GameEvent to a file;
+    // --history sets how many moves per player stay in memory; --state-file and --state-socket
+    // stream every player's live state (see StateStream) to a file or a local socket
+    public static void main(String[] args) throws IOException, WorldFormatException {
+        boolean sharedGame = false;
+        Path eventLog = null;
+        int historyLimit = MoveHistory.DEFAULT_LIMIT;
+        StateStream stateStream = null;
+        int first = 0;
+        for (; first < args.length && args[first].startsWith("--"); first++) {
+            switch (args[first]) {
+                case "--shared" -> sharedGame = true;
+                case "--event-log" -> eventLog = Path.of(args[++first]);
+                case "--history" -> historyLimit = Integer.parseInt(args[++first]);
+                case "--state-file" -> stateStream = StateStream.toFile(Path.of(args[++first]));
+                case "--state-socket" -> stateStream = StateStream.listen(StateStream.localAddress(args[++first]));
+                default -> throw new IllegalArgumentException("Unknown option: " + args[first]);
+            }
+        }
+        args = Arrays.copyOfRange(args, first, args.length);
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 4000;
+        World world;
+        boolean named = args.length > 1 && !args[1].equals("default");
+        if (args.length > 3 && named && WorldBinaryFormat.isBinary(Path.of(args[1]))) {
+            world = World.openPaged(Path.of(args[1]), Integer.parseInt(args[3]));
+        } else {
+            if (args.length > 3) {
+                System.out.println("Only compiled worlds are paged; loading the whole world instead");
+            }
+            world = named ? World.load(Path.of(args[1])) : World.createDefault();
+        }
+        GameJournal journal = args.length > 2 && !args[2].equals("none") ? GameJournal.open(Path.of(args[2]), world) : null;
+        try {
+            world.getMetrics().registerMBean("port-" + port);
+        } catch (JMException e) {
+            System.out.println("Metrics not published over JMX: " + e.getMessage());
+        }
+        if (eventLog != null) {
+            // Dropped rather than waited for: a slow disk must not hold up the games
+            world.getEvents().subscribeAll(new EventLog(Files.newBufferedWriter(eventLog)), 1 << 16, EventBus.Policy.DROP);
+        }
+        GameServer server = new GameServer(world, journal);
+        server.setShared(sharedGame);
+        server.setHistoryLimit(historyLimit);
+        server.setStateStream(stateStream);
+        server.listen(port);
+    }
+}
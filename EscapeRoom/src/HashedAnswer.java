@@ -0,0 +1,119 @@
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.HexFormat;
+
+// A puzzle's accepted answers, kept only as salted SHA-256 digests. An attempt is
+// hashed once and compared with every accepted digest using MessageDigest.isEqual,
+// whose time does not depend on where the bytes differ; all digests are checked
+// even after a match.
+//
+// Answers are normalized before hashing, on both sides. Riddles: surrounding blanks
+// dropped, inner runs of blanks squeezed to one space, case folded through a
+// table; codes: only the surrounding blanks are dropped. "echo|an echo" accepts
+// either form (the alternatives are synonyms).
+final class HashedAnswer {
+    static final char SYNONYM_SEPARATOR = '|';
+
+    private static final SecureRandom SALTS = new SecureRandom();
+    private static final ThreadLocal<MessageDigest> SHA_256 = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    });
+
+    // Case folding for Latin-1, worked out once; other characters go to Character.toLowerCase
+    private static final char[] FOLD = new char[256];
+
+    static {
+        for (char c = 0; c < FOLD.length; c++) {
+            FOLD[c] = Character.toLowerCase(c);
+        }
+    }
+
+    private final boolean foldCase;
+    private final byte[] salt;
+    private final byte[][] digests;
+
+    private HashedAnswer(String answers, boolean foldCase) {
+        this.foldCase = foldCase;
+        this.salt = new byte[16];
+        SALTS.nextBytes(salt);
+        String[] forms = answers.split("\\" + SYNONYM_SEPARATOR);
+        this.digests = new byte[forms.length][];
+        for (int i = 0; i < forms.length; i++) {
+            digests[i] = digest(normalize(forms[i], foldCase));
+        }
+    }
+
+    private HashedAnswer(boolean foldCase, byte[] salt, byte[][] digests) {
+        this.foldCase = foldCase;
+        this.salt = salt;
+        this.digests = digests;
+    }
+
+    // Digests worked out beforehand, in hex, so the answers never appear in the code.
+    // Riddles fold case, codes do not; see normalize.
+    static HashedAnswer precomputed(boolean foldCase, String salt, String... digests) {
+        byte[][] bytes = new byte[digests.length][];
+        for (int i = 0; i < digests.length; i++) {
+            bytes[i] = HexFormat.of().parseHex(digests[i]);
+        }
+        return new HashedAnswer(foldCase, HexFormat.of().parseHex(salt), bytes);
+    }
+
+    // Answer text, with '|' between synonyms; case does not matter
+    static HashedAnswer riddle(String answers) {
+        return new HashedAnswer(answers, true);
+    }
+
+    // Exact code
+    static HashedAnswer code(String code) {
+        return new HashedAnswer(code, false);
+    }
+
+    boolean matches(CharSequence attempt) {
+        byte[] digest = digest(normalize(attempt, foldCase));
+        boolean matched = false;
+        for (byte[] accepted : digests) {
+            matched |= MessageDigest.isEqual(accepted, digest);
+        }
+        return matched;
+    }
+
+    private byte[] digest(String normalized) {
+        MessageDigest sha = SHA_256.get();
+        sha.update(salt);
+        return sha.digest(normalized.getBytes(StandardCharsets.UTF_8));
+    }
+
+    // One pass: trim, and for riddles squeeze blanks and fold case as well
+    static String normalize(CharSequence text, boolean foldCase) {
+        int start = 0;
+        int end = text.length();
+        while (start < end && Character.isWhitespace(text.charAt(start))) start++;
+        while (end > start && Character.isWhitespace(text.charAt(end - 1))) end--;
+        if (!foldCase) {
+            return text.subSequence(start, end).toString();
+        }
+
+        StringBuilder sb = new StringBuilder(end - start);
+        boolean blank = false;
+        for (int i = start; i < end; i++) {
+            char c = text.charAt(i);
+            if (Character.isWhitespace(c)) {
+                blank = true;
+                continue;
+            }
+            if (blank) {
+                sb.append(' ');
+                blank = false;
+            }
+            sb.append(c < FOLD.length ? FOLD[c] : Character.toLowerCase(c));
+        }
+        return sb.toString();
+    }
+}
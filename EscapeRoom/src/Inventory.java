@@ -0,0 +1,266 @@
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+// Player inventory that is always ordered by value (Item.compareTo), with
+// secondary views by item type and by name. Insert and remove are O(log n), and so
+// is finding where a page starts: the value ordering is a treap whose nodes know
+// the size of their subtree.
+public class Inventory implements Iterable<Item> {
+    // Items of equal value keep the order they were added in
+    private static final class Slot {
+        final Item item;
+        final long seq;
+
+        Slot(Item item, long seq) {
+            this.item = item;
+            this.seq = seq;
+        }
+    }
+
+    private static final Comparator<Slot> BY_VALUE = (a, b) -> {
+        int c = a.item.compareTo(b.item);
+        return c != 0 ? c : Long.compare(a.seq, b.seq);
+    };
+
+    // Treap node; priorities come from the slot's sequence number, so the shape
+    // does not depend on a random source
+    private static final class Node {
+        final Slot slot;
+        final int priority;
+        Node left;
+        Node right;
+        int size = 1; // Nodes in this subtree
+
+        Node(Slot slot) {
+            this.slot = slot;
+            long z = slot.seq * 0x9E3779B97F4A7C15L;
+            this.priority = (int) (z ^ (z >>> 32));
+        }
+    }
+
+    private Node byValue; // Root, null when empty
+    private HashMap<String, TreeSet<Slot>> byType;
+    private TreeMap<String, TreeSet<Slot>> byName; // Folded name, alphabetical
+    private HashMap<Integer, Slot> slots; // By id: a paged world may hand out a fresh copy of the same item
+    private long nextSeq;
+
+    public Inventory() {
+        this.byValue = null;
+        this.byType = new HashMap<>();
+        this.byName = new TreeMap<>();
+        this.slots = new HashMap<>();
+    }
+
+    public void add(Item item) {
+        if (slots.containsKey(item.getId())) return;
+
+        Slot slot = new Slot(item, nextSeq++);
+        slots.put(item.getId(), slot);
+        byValue = insert(byValue, new Node(slot));
+        byType.computeIfAbsent(item.getItemType(), k -> new TreeSet<>(BY_VALUE)).add(slot);
+        byName.computeIfAbsent(GameComponent.foldName(item.getName()), k -> new TreeSet<>(BY_VALUE)).add(slot);
+    }
+
+    public boolean remove(Item item) {
+        Slot slot = slots.remove(item.getId());
+        if (slot == null) return false;
+
+        byValue = delete(byValue, slot);
+        removeFrom(byType, item.getItemType(), slot);
+        removeFrom(byName, GameComponent.foldName(item.getName()), slot);
+        return true;
+    }
+
+    private static void removeFrom(Map<String, TreeSet<Slot>> view, String key, Slot slot) {
+        TreeSet<Slot> set = view.get(key);
+        set.remove(slot);
+        if (set.isEmpty()) {
+            view.remove(key);
+        }
+    }
+
+    // Lowest-value item with this name (case-insensitive), or null
+    public Item findByName(String name) {
+        TreeSet<Slot> set = byName.get(GameComponent.foldName(name));
+        return set == null ? null : set.first().item;
+    }
+
+    // Same as findByName but only items of the given type, e.g. "KEY"
+    public Item findByName(String name, String itemType) {
+        TreeSet<Slot> set = byName.get(GameComponent.foldName(name));
+        if (set == null) return null;
+        for (Slot slot : set) {
+            if (slot.item.getItemType().equals(itemType)) {
+                return slot.item;
+            }
+        }
+        return null;
+    }
+
+    // All items of one type, lowest value first
+    public List<Item> ofType(String itemType) {
+        TreeSet<Slot> set = byType.get(itemType);
+        if (set == null) return Collections.emptyList();
+        ArrayList<Item> items = new ArrayList<>(set.size());
+        for (Slot slot : set) {
+            items.add(slot.item);
+        }
+        return items;
+    }
+
+    public int countOfType(String itemType) {
+        TreeSet<Slot> set = byType.get(itemType);
+        return set == null ? 0 : set.size();
+    }
+
+    // One page of the value ordering, pages start at 0
+    public List<Item> page(int page, int pageSize) {
+        ArrayList<Item> items = new ArrayList<>(pageSize);
+        Iterator<Slot> it = slotsFrom((long) page * pageSize);
+        while (items.size() < pageSize && it.hasNext()) {
+            items.add(it.next().item);
+        }
+        return items;
+    }
+
+    private static int size(Node node) {
+        return node == null ? 0 : node.size;
+    }
+
+    private static Node insert(Node root, Node node) {
+        if (root == null) return node;
+        if (BY_VALUE.compare(node.slot, root.slot) < 0) {
+            root.left = insert(root.left, node);
+            if (root.left.priority > root.priority) root = rotateRight(root);
+        } else {
+            root.right = insert(root.right, node);
+            if (root.right.priority > root.priority) root = rotateLeft(root);
+        }
+        root.size = 1 + size(root.left) + size(root.right);
+        return root;
+    }
+
+    private static Node delete(Node root, Slot slot) {
+        if (root == null) return null;
+        int c = BY_VALUE.compare(slot, root.slot);
+        if (c < 0) {
+            root.left = delete(root.left, slot);
+        } else if (c > 0) {
+            root.right = delete(root.right, slot);
+        } else {
+            return merge(root.left, root.right);
+        }
+        root.size = 1 + size(root.left) + size(root.right);
+        return root;
+    }
+
+    // Joins two treaps where every node of a comes before every node of b
+    private static Node merge(Node a, Node b) {
+        if (a == null) return b;
+        if (b == null) return a;
+        if (a.priority > b.priority) {
+            a.right = merge(a.right, b);
+            a.size = 1 + size(a.left) + size(a.right);
+            return a;
+        }
+        b.left = merge(a, b.left);
+        b.size = 1 + size(b.left) + size(b.right);
+        return b;
+    }
+
+    private static Node rotateRight(Node node) {
+        Node top = node.left;
+        node.left = top.right;
+        top.right = node;
+        node.size = 1 + size(node.left) + size(node.right);
+        top.size = 1 + size(top.left) + size(top.right);
+        return top;
+    }
+
+    private static Node rotateLeft(Node node) {
+        Node top = node.right;
+        node.right = top.left;
+        top.left = node;
+        node.size = 1 + size(node.left) + size(node.right);
+        top.size = 1 + size(top.left) + size(top.right);
+        return top;
+    }
+
+    // In value order from the given rank on. The stack holds the nodes still to
+    // visit whose left subtrees are done, so the start is found in one descent.
+    private Iterator<Slot> slotsFrom(long rank) {
+        ArrayDeque<Node> stack = new ArrayDeque<>();
+        Node node = byValue;
+        while (node != null) {
+            int left = size(node.left);
+            if (rank < left) {
+                stack.push(node);
+                node = node.left;
+            } else if (rank == left) {
+                stack.push(node);
+                break;
+            } else {
+                rank -= left + 1;
+                node = node.right;
+            }
+        }
+        return new Iterator<Slot>() {
+            @Override
+            public boolean hasNext() {
+                return !stack.isEmpty();
+            }
+
+            @Override
+            public Slot next() {
+                if (stack.isEmpty()) throw new NoSuchElementException();
+                Node next = stack.pop();
+                for (Node n = next.right; n != null; n = n.left) {
+                    stack.push(n);
+                }
+                return next.slot;
+            }
+        };
+    }
+
+    public int pageCount(int pageSize) {
+        return (size() + pageSize - 1) / pageSize;
+    }
+
+    public boolean contains(Item item) {
+        return slots.containsKey(item.getId());
+    }
+
+    public int size() {
+        return slots.size();
+    }
+
+    public boolean isEmpty() {
+        return slots.isEmpty();
+    }
+
+    // Lowest value first
+    @Override
+    public Iterator<Item> iterator() {
+        Iterator<Slot> it = slotsFrom(0);
+        return new Iterator<Item>() {
+            @Override
+            public boolean hasNext() {
+                return it.hasNext();
+            }
+
+            @Override
+            public Item next() {
+                return it.next().item;
+            }
+        };
+    }
+}
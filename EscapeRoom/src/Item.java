@@ -10,14 +10,15 @@ public class Item extends GameComponent implements Collectible, Comparable<Item>
     }
 
     @Override
-    public void inspect() {
-        System.out.println("[Item] " + name + " (Type: " + itemType + ", Value: " + value + ")");
+    public void inspect(Player viewer) {
+        viewer.getOut().print("[Item] ").print(name).print(" (Type: ").print(itemType)
+                .print(", Value: ").print(value).println(")");
     }
 
     @Override
     public void collect(Player p) {
         p.addToInventory(this);
-        System.out.println("Picked up: " + name);
+        p.getOut().print("Picked up: ").println(name);
     }
 
     // Compare by value for sorting
@@ -0,0 +1,108 @@
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+// Latency histogram in nanoseconds with log-linear buckets, the HdrHistogram layout:
+// values below 64 get a bucket each, and every power of two above that is split into
+// 32 buckets, so any recorded value is reported within about 3%. Values past 2^41 ns
+// (about 36 minutes) land in the last bucket.
+//
+// record() takes no locks and allocates nothing. Buckets are striped by thread, so
+// threads recording at once rarely touch the same counter; readers add the stripes up.
+public class LatencyHistogram {
+    private static final int SUB_BITS = 5;
+    private static final int SUB_COUNT = 1 << SUB_BITS;
+    private static final int MAX_EXPONENT = 40;
+    static final int BUCKETS = 2 * SUB_COUNT + (MAX_EXPONENT - SUB_BITS) * SUB_COUNT;
+
+    private static final int STRIPES = Math.min(8, Integer.highestOneBit(Runtime.getRuntime().availableProcessors()));
+
+    private final AtomicLongArray counts; // Stripe-major: stripe * BUCKETS + bucket
+    private final LongAdder total;
+    private final AtomicLong max;
+
+    public LatencyHistogram() {
+        this.counts = new AtomicLongArray(STRIPES * BUCKETS);
+        this.total = new LongAdder();
+        this.max = new AtomicLong();
+    }
+
+    public void record(long nanos) {
+        if (nanos < 0) nanos = 0;
+        int stripe = (int) (Thread.currentThread().threadId() * 0x9E3779B9L >>> 16) & (STRIPES - 1);
+        counts.incrementAndGet(stripe * BUCKETS + bucketOf(nanos));
+        total.add(nanos);
+        long seen = max.get();
+        while (nanos > seen && !max.compareAndSet(seen, nanos)) {
+            seen = max.get();
+        }
+    }
+
+    static int bucketOf(long value) {
+        if (value < 2 * SUB_COUNT) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        if (exponent > MAX_EXPONENT) {
+            return BUCKETS - 1;
+        }
+        int shift = exponent - SUB_BITS;
+        return 2 * SUB_COUNT + (shift - 1) * SUB_COUNT + (int) (value >>> shift) - SUB_COUNT;
+    }
+
+    // Largest value that falls in the bucket
+    static long highestValueOf(int bucket) {
+        if (bucket < 2 * SUB_COUNT) {
+            return bucket;
+        }
+        int shift = (bucket - 2 * SUB_COUNT) / SUB_COUNT + 1;
+        long sub = (bucket - 2 * SUB_COUNT) % SUB_COUNT + SUB_COUNT;
+        return ((sub + 1) << shift) - 1;
+    }
+
+    // Counts per bucket, all stripes added up
+    private long[] merged() {
+        long[] merged = new long[BUCKETS];
+        for (int i = 0; i < counts.length(); i++) {
+            merged[i % BUCKETS] += counts.get(i);
+        }
+        return merged;
+    }
+
+    public long getCount() {
+        long count = 0;
+        for (int i = 0; i < counts.length(); i++) {
+            count += counts.get(i);
+        }
+        return count;
+    }
+
+    public double getMean() {
+        long count = getCount();
+        return count == 0 ? 0 : (double) total.sum() / count;
+    }
+
+    public long getMax() {
+        return max.get();
+    }
+
+    // Smallest bucket bound with at least this percentage of values at or below it
+    public long getValueAtPercentile(double percentile) {
+        long[] merged = merged();
+        long count = 0;
+        for (long c : merged) {
+            count += c;
+        }
+        if (count == 0) return 0;
+
+        long wanted = Math.max(1, (long) Math.ceil(count * percentile / 100));
+        long seen = 0;
+        for (int bucket = 0; bucket < BUCKETS; bucket++) {
+            seen += merged[bucket];
+            if (seen >= wanted) {
+                return Math.min(highestValueOf(bucket), getMax());
+            }
+        }
+        return getMax();
+    }
+}
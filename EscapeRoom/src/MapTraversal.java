@@ -0,0 +1,121 @@
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+// Iterative map walker: explicit stack/queue plus a visited bitset keyed by room id,
+// so cyclic maps terminate and every room is visited at most once.
+public class MapTraversal {
+    public static final int NO_LIMIT = Integer.MAX_VALUE;
+
+    private MapTraversal() {
+    }
+
+    // Breadth-first walk; depth is the shortest number of moves from start
+    public static int bfs(Room start, int maxDepth, RoomVisitor visitor) {
+        BitSet visited = new BitSet();
+        Room[] queue = new Room[16];
+        int[] depths = new int[16];
+        int head = 0;
+        int tail = 0;
+        int count = 0;
+
+        queue[tail] = start;
+        depths[tail] = 0;
+        tail++;
+        visited.set(start.getId());
+
+        while (head < tail) {
+            Room room = queue[head];
+            int depth = depths[head];
+            queue[head] = null;
+            head++;
+            count++;
+
+            if (!visitor.visit(room, depth)) {
+                break;
+            }
+            if (depth >= maxDepth) {
+                continue;
+            }
+
+            List<Room> exits = room.getConnectedRooms();
+            for (int i = 0; i < exits.size(); i++) {
+                Room next = exits.get(i);
+                if (visited.get(next.getId())) {
+                    continue;
+                }
+                visited.set(next.getId());
+
+                if (tail == queue.length) {
+                    // Compact first, grow only if the queue is really full
+                    if (head > 0) {
+                        System.arraycopy(queue, head, queue, 0, tail - head);
+                        System.arraycopy(depths, head, depths, 0, tail - head);
+                        Arrays.fill(queue, tail - head, tail, null);
+                        tail -= head;
+                        head = 0;
+                    }
+                    if (tail == queue.length) {
+                        queue = Arrays.copyOf(queue, queue.length * 2);
+                        depths = Arrays.copyOf(depths, depths.length * 2);
+                    }
+                }
+                queue[tail] = next;
+                depths[tail] = depth + 1;
+                tail++;
+            }
+        }
+        return count;
+    }
+
+    // Depth-first pre-order walk; exits are visited in the order they were connected
+    public static int dfs(Room start, int maxDepth, RoomVisitor visitor) {
+        BitSet visited = new BitSet();
+        Room[] stack = new Room[16];
+        int[] depths = new int[16];
+        int top = 0;
+        int count = 0;
+
+        stack[top] = start;
+        depths[top] = 0;
+        top++;
+
+        while (top > 0) {
+            top--;
+            Room room = stack[top];
+            int depth = depths[top];
+            stack[top] = null;
+
+            // A room can be pushed by several parents before it is popped
+            if (visited.get(room.getId())) {
+                continue;
+            }
+            visited.set(room.getId());
+            count++;
+
+            if (!visitor.visit(room, depth)) {
+                break;
+            }
+            if (depth >= maxDepth) {
+                continue;
+            }
+
+            // Push in reverse so the first exit is popped first
+            List<Room> exits = room.getConnectedRooms();
+            for (int i = exits.size() - 1; i >= 0; i--) {
+                Room next = exits.get(i);
+                if (visited.get(next.getId())) {
+                    continue;
+                }
+                if (top == stack.length) {
+                    stack = Arrays.copyOf(stack, stack.length * 2);
+                    depths = Arrays.copyOf(depths, depths.length * 2);
+                }
+                stack[top] = next;
+                depths[top] = depth + 1;
+                top++;
+            }
+        }
+        return count;
+    }
+}
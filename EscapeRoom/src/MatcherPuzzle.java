@@ -0,0 +1,37 @@
+// Puzzle whose answers are checked by a compiled AnswerMatcher; the riddle-like
+// puzzle of every MatcherType.
+public class MatcherPuzzle extends Puzzle {
+    private String type;
+    private String label; // "[Type Puzzle] ", for inspect
+    private String text;
+    private AnswerMatcher matcher;
+
+    public MatcherPuzzle(String type, String name, int difficulty, String text, AnswerMatcher matcher, Item reward) {
+        super(name, difficulty, reward);
+        this.type = type;
+        this.label = "[" + Character.toUpperCase(type.charAt(0)) + type.substring(1) + " Puzzle] ";
+        this.text = text;
+        this.matcher = matcher;
+    }
+
+    @Override
+    public void inspect(Player viewer) {
+        GameOutput out = viewer.getOut();
+        out.print(label).println(name);
+        out.print("Puzzle: ").println(text);
+        if (viewer.hasSolved(this)) {
+            out.println("Status: SOLVED");
+        } else {
+            out.print("Difficulty: ").println(difficulty);
+        }
+    }
+
+    @Override
+    protected boolean accepts(CharSequence answer) {
+        return matcher.matches(answer);
+    }
+
+    public String getType() {
+        return type;
+    }
+}
@@ -0,0 +1,15 @@
+// Base for puzzle types that differ only in how answers are checked: the answer
+// notation is compiled into an AnswerMatcher, and the puzzle is a MatcherPuzzle.
+// Matchers can also be the steps of a sequence puzzle, see SequenceMatcher.
+public abstract class MatcherType implements PuzzleType {
+    public abstract AnswerMatcher compile(String answer) throws WorldFormatException;
+
+    @Override
+    public Puzzle create(String name, int difficulty, String text, String answer, Item reward) throws WorldFormatException {
+        try {
+            return new MatcherPuzzle(getName(), name, difficulty, text, compile(answer), reward);
+        } catch (WorldFormatException e) {
+            throw new WorldFormatException("puzzle '" + name + "': " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,246 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+// The rooms a player came through, newest last, as room ids. The newest `limit` of
+// them sit in a ring; when it is full the oldest move on to a spill buffer, and a
+// full spill buffer is written as one block to a temporary file: ids delta coded
+// as zigzag varints, then deflated, which makes the back-and-forth walks players
+// leave behind shrink to a few bits a move. Going back only reads from disk when
+// the ring has run dry, a whole block at a time, so it stays O(1) per step.
+//
+// The ring starts small and doubles up to the limit, so short sessions stay cheap.
+// Not thread safe; a Player only touches its history from its own session.
+final class MoveHistory implements Closeable {
+    static final int DEFAULT_LIMIT = 4096;
+
+    private final int limit;
+    private int[] ring;
+    private int head; // Oldest entry
+    private int size;
+
+    private int[] spill; // Evicted from the ring, newer than anything on disk; made when first needed
+    private int spillSize;
+
+    private FileChannel file; // Opened with the first block
+    private long[] blockEnds = new long[16];
+    private int blocks;
+    private byte[] scratch = new byte[64];
+
+    MoveHistory(int limit) {
+        if (limit < 1) {
+            throw new IllegalArgumentException("The move history needs room for at least one move");
+        }
+        this.limit = limit;
+        this.ring = new int[Math.min(limit, 16)];
+    }
+
+    // Moves recorded, on disk and in memory
+    long size() {
+        return size + spillSize + (long) blocks * limit;
+    }
+
+    boolean isEmpty() {
+        return size() == 0;
+    }
+
+    int getLimit() {
+        return limit;
+    }
+
+    void push(int room) {
+        if (size == ring.length && ring.length < limit) {
+            int[] bigger = new int[(int) Math.min(limit, ring.length * 2L)];
+            for (int i = 0; i < size; i++) {
+                bigger[i] = ring[(head + i) % ring.length];
+            }
+            ring = bigger;
+            head = 0;
+        } else if (size == ring.length) {
+            if (spill == null) spill = new int[limit];
+            spill[spillSize++] = ring[head];
+            head = (head + 1) % ring.length;
+            size--;
+            if (spillSize == spill.length) {
+                writeBlock();
+            }
+        }
+        ring[(head + size) % ring.length] = room;
+        size++;
+    }
+
+    // Drops the newest `steps` entries and returns the last one dropped, the room
+    // that many moves back; steps must be between 1 and size()
+    int pop(long steps) {
+        if (steps < 1 || steps > size()) {
+            throw new IllegalArgumentException("Cannot go back " + steps + " moves");
+        }
+        int room = -1;
+        while (steps > 0) {
+            if (size == 0) refill();
+            int taken = (int) Math.min(steps, size);
+            room = ring[(head + size - taken) % ring.length];
+            size -= taken;
+            steps -= taken;
+        }
+        return room;
+    }
+
+    // What is in memory, oldest first; the journal saves this much
+    int[] recent() {
+        int[] ids = new int[spillSize + size];
+        if (spillSize > 0) System.arraycopy(spill, 0, ids, 0, spillSize);
+        for (int i = 0; i < size; i++) {
+            ids[spillSize + i] = ring[(head + i) % ring.length];
+        }
+        return ids;
+    }
+
+    void clear() {
+        head = 0;
+        size = 0;
+        spillSize = 0;
+        blocks = 0;
+        if (file != null) {
+            try {
+                file.truncate(0);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    // Deletes the spill file; what was on disk is gone
+    @Override
+    public void close() {
+        blocks = 0;
+        if (file == null) return;
+        try {
+            file.close();
+        } catch (IOException e) {
+            // Deleted on close either way
+        }
+        file = null;
+    }
+
+    // The ring is empty: take back the spill buffer, or else the newest block on disk
+    private void refill() {
+        head = 0;
+        if (spillSize > 0) {
+            System.arraycopy(spill, 0, ring, 0, spillSize);
+            size = spillSize;
+            spillSize = 0;
+            return;
+        }
+        readBlock();
+        size = limit;
+    }
+
+    private void writeBlock() {
+        // Zigzag deltas as varints
+        int length = 0;
+        int previous = 0;
+        for (int i = 0; i < spillSize; i++) {
+            int delta = spill[i] - previous;
+            previous = spill[i];
+            int zigzag = (delta << 1) ^ (delta >> 31);
+            if (length + 5 > scratch.length) scratch = Arrays.copyOf(scratch, Math.max(scratch.length * 2, length + 5));
+            while ((zigzag & ~0x7F) != 0) {
+                scratch[length++] = (byte) (zigzag & 0x7F | 0x80);
+                zigzag >>>= 7;
+            }
+            scratch[length++] = (byte) zigzag;
+        }
+
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        byte[] packed = new byte[length / 2 + 64];
+        int packedLength = 0;
+        try {
+            deflater.setInput(scratch, 0, length);
+            deflater.finish();
+            while (!deflater.finished()) {
+                if (packedLength == packed.length) packed = Arrays.copyOf(packed, packed.length * 2);
+                packedLength += deflater.deflate(packed, packedLength, packed.length - packedLength);
+            }
+        } finally {
+            deflater.end();
+        }
+
+        try {
+            if (file == null) {
+                Path path = Files.createTempFile("move-history", ".bin");
+                file = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE,
+                        StandardOpenOption.DELETE_ON_CLOSE);
+            }
+            long start = blocks == 0 ? 0 : blockEnds[blocks - 1];
+            ByteBuffer buffer = ByteBuffer.wrap(packed, 0, packedLength);
+            for (long at = start; buffer.hasRemaining(); ) {
+                at += file.write(buffer, at);
+            }
+            if (blocks == blockEnds.length) blockEnds = Arrays.copyOf(blockEnds, blocks * 2);
+            blockEnds[blocks++] = start + packedLength;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot spill move history: " + e.getMessage(), e);
+        }
+        spillSize = 0;
+    }
+
+    // Newest block back into the ring; the file is cut short behind it
+    private void readBlock() {
+        long start = blocks == 1 ? 0 : blockEnds[blocks - 2];
+        long end = blockEnds[blocks - 1];
+        try {
+            ByteBuffer packed = ByteBuffer.allocate((int) (end - start));
+            while (packed.hasRemaining()) {
+                if (file.read(packed, start + packed.position()) < 0) {
+                    throw new IOException("move history file is truncated");
+                }
+            }
+            if (scratch.length <= limit * 5) scratch = new byte[limit * 5 + 1];
+            Inflater inflater = new Inflater();
+            int length;
+            try {
+                inflater.setInput(packed.array());
+                length = inflater.inflate(scratch);
+                if (!inflater.finished()) {
+                    throw new IOException("move history block is corrupt");
+                }
+            } finally {
+                inflater.end();
+            }
+
+            int previous = 0;
+            int at = 0;
+            for (int i = 0; i < limit; i++) {
+                int zigzag = 0;
+                int shift = 0;
+                byte b;
+                do {
+                    b = scratch[at++];
+                    zigzag |= (b & 0x7F) << shift;
+                    shift += 7;
+                } while (b < 0);
+                previous += (zigzag >>> 1) ^ -(zigzag & 1);
+                ring[i] = previous;
+            }
+            if (at != length) {
+                throw new IOException("move history block is corrupt");
+            }
+            file.truncate(start);
+            blocks--;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot read back move history: " + e.getMessage(), e);
+        } catch (DataFormatException e) {
+            throw new UncheckedIOException(new IOException("move history block is corrupt", e));
+        }
+    }
+}
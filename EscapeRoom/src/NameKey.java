@@ -0,0 +1,96 @@
+// Reusable key for the folded-name indexes. It holds a typed name folded the way
+// GameComponent.foldName does, and hashes and compares like the folded String
+// would, so a command argument can be looked up without building that String.
+// HashMap.get calls equals on the key it is given, so equals(String) is all it needs.
+// Names with non-ASCII letters are folded to a String instead, since a few of those
+// fold to a different length. Not thread-safe: one instance per session.
+public final class NameKey implements CharSequence {
+    private char[] chars = new char[32];
+    private int length;
+    private int hash;
+    private String folded; // Set instead of chars for non-ASCII names
+
+    // Folds name[start, end) with surrounding blanks left out
+    public NameKey fold(CharSequence name, int start, int end) {
+        while (start < end && name.charAt(start) <= ' ') start++;
+        while (end > start && name.charAt(end - 1) <= ' ') end--;
+        if (chars.length < end - start) {
+            chars = new char[Math.max(end - start, chars.length * 2)];
+        }
+        folded = null;
+        length = 0;
+        int h = 0;
+        for (int i = start; i < end; i++) {
+            char c = name.charAt(i);
+            if (c >= 0x80) {
+                folded = GameComponent.foldName(name.subSequence(start, end).toString());
+                return this;
+            }
+            if (c >= 'A' && c <= 'Z') c += 'a' - 'A';
+            chars[length++] = c;
+            h = 31 * h + c;
+        }
+        hash = h;
+        return this;
+    }
+
+    // What to pass to an index lookup
+    Object lookupKey() {
+        return folded != null ? folded : this;
+    }
+
+    // Whether name, not folded yet, folds to this key
+    public boolean matches(String name) {
+        if (folded != null) {
+            return GameComponent.foldName(name).equals(folded);
+        }
+        if (name.length() != length) return false;
+        for (int i = 0; i < length; i++) {
+            // Per-char folding agrees with foldName wherever the result is ASCII,
+            // except for the dotted capital I, which foldName turns into two chars
+            char c = name.charAt(i);
+            if (c == '\u0130' || Character.toLowerCase(c) != chars[i]) return false;
+        }
+        return true;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (o instanceof String) {
+            // Index keys are folded already
+            String s = (String) o;
+            if (folded != null) return folded.equals(s);
+            if (s.length() != length) return false;
+            for (int i = 0; i < length; i++) {
+                if (s.charAt(i) != chars[i]) return false;
+            }
+            return true;
+        }
+        return o == this;
+    }
+
+    @Override
+    public int hashCode() {
+        return folded != null ? folded.hashCode() : hash;
+    }
+
+    @Override
+    public int length() {
+        return folded != null ? folded.length() : length;
+    }
+
+    @Override
+    public char charAt(int index) {
+        return folded != null ? folded.charAt(index) : chars[index];
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        return toString().subSequence(start, end);
+    }
+
+    @Override
+    public String toString() {
+        return folded != null ? folded : new String(chars, 0, length);
+    }
+}
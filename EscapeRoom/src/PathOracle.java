@@ -0,0 +1,372 @@
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+
+// Lock-aware route planner, built once per frozen World.
+//
+// Building it works out in which order keys can be collected from the start room
+// ("phases": phase 0 keys need no key, phase 1 keys need only phase 0 keys, ...).
+// For every key, and for the exits, it then stores a next-hop table: for each room,
+// the exit to take to get closer, walking only through locks opened by earlier keys.
+// Next-step and solvability queries then walk these tables from the player's room:
+// the first lock on the way they cannot open makes its key the goal, O(keys) routes
+// at most.
+// Memory is one int per room per key, plus one table for the exits.
+public class PathOracle {
+    private static final int NO_LOCK = -1;
+    private static final int UNREACHABLE = -1;
+    private static final int AT_GOAL = -2;
+    private static final int NEVER = Integer.MAX_VALUE; // Phase of a key that cannot be obtained
+    private static final int EXIT_GOAL = -1; // From goalKey: no key missing, head for an exit
+    private static final int STUCK = -2; // From goalKey: no way on from here
+
+    private final Room[] rooms;
+    private final int[] roomIndex; // Component id -> room index, -1 for non-rooms
+    private final int[] edgeStart;
+    private final int[] edges;
+    private final int[] reverseStart;
+    private final int[] reverseEdges;
+    private final int[] lockKey; // Room -> key index or NO_LOCK
+
+    private final ArrayList<String> keyNames = new ArrayList<>();
+    private final HashMap<String, Integer> keyIndex = new HashMap<>(); // Folded name -> key index
+    private final ArrayList<ArrayList<GameComponent>> keySources = new ArrayList<>(); // Items or puzzles
+    private final ArrayList<ArrayList<Room>> keySourceRooms = new ArrayList<>();
+    private int[] keyPhase;
+    private boolean[] needed; // Keys whose locks are on the way out
+    private int[] keysByPhase; // Obtainable keys, earliest phase first
+
+    private int[][] keyNextHop; // Per key: room -> next room index, AT_GOAL or UNREACHABLE
+    private int[] exitNextHop;
+    private boolean solvable;
+
+    public PathOracle(World world) {
+        world.freeze();
+        List<Room> roomList = world.getRooms();
+        rooms = roomList.toArray(new Room[0]);
+        roomIndex = new int[world.getComponentCount()];
+        Arrays.fill(roomIndex, -1);
+        for (int i = 0; i < rooms.length; i++) {
+            roomIndex[rooms[i].getId()] = i;
+        }
+
+        // Forward and reverse adjacency in CSR form
+        int r = rooms.length;
+        edgeStart = new int[r + 1];
+        reverseStart = new int[r + 1];
+        for (int i = 0; i < r; i++) {
+            edgeStart[i + 1] = edgeStart[i] + rooms[i].getConnectedRooms().size();
+            for (Room next : rooms[i].getConnectedRooms()) {
+                reverseStart[roomIndex[next.getId()] + 1]++;
+            }
+        }
+        for (int i = 0; i < r; i++) {
+            reverseStart[i + 1] += reverseStart[i];
+        }
+        edges = new int[edgeStart[r]];
+        reverseEdges = new int[edgeStart[r]];
+        int[] fill = Arrays.copyOf(reverseStart, r);
+        for (int i = 0; i < r; i++) {
+            int e = edgeStart[i];
+            for (Room next : rooms[i].getConnectedRooms()) {
+                int j = roomIndex[next.getId()];
+                edges[e++] = j;
+                reverseEdges[fill[j]++] = i;
+            }
+        }
+
+        // Locks and where their keys come from
+        lockKey = new int[r];
+        for (int i = 0; i < r; i++) {
+            lockKey[i] = rooms[i].isLocked() ? key(rooms[i].getRequiredKey()) : NO_LOCK;
+        }
+        for (Room room : rooms) {
+            for (GameComponent component : room.getContents()) {
+                Item key = component instanceof Item ? (Item) component : World.rewardOf(component);
+                if (key != null && key.getItemType().equals("KEY")) {
+                    int k = key(key.getName());
+                    keySources.get(k).add(component);
+                    keySourceRooms.get(k).add(room);
+                }
+            }
+        }
+
+        computePhases();
+        keyNextHop = new int[keyNames.size()][];
+        for (int k : keysByPhase) {
+            int phase = keyPhase[k];
+            keyNextHop[k] = nextHopTable(keySourceRooms.get(k), phase);
+        }
+        ArrayList<Room> exits = new ArrayList<>();
+        for (Room room : rooms) {
+            if (room.isExit()) exits.add(room);
+        }
+        exitNextHop = nextHopTable(exits, NEVER);
+        findNeededKeys();
+    }
+
+    private int key(String name) {
+        String folded = GameComponent.foldName(name);
+        Integer k = keyIndex.get(folded);
+        if (k == null) {
+            k = keyNames.size();
+            keyIndex.put(folded, k);
+            keyNames.add(name);
+            keySources.add(new ArrayList<>());
+            keySourceRooms.add(new ArrayList<>());
+        }
+        return k;
+    }
+
+    // Repeatedly flood from the start with the keys found so far
+    private void computePhases() {
+        int keyCount = keyNames.size();
+        keyPhase = new int[keyCount];
+        Arrays.fill(keyPhase, NEVER);
+        int[] order = new int[keyCount];
+        int ordered = 0;
+
+        boolean[] held = new boolean[keyCount];
+        boolean[] reached = new boolean[rooms.length];
+        int[] queue = new int[rooms.length];
+
+        for (int phase = 0; ; phase++) {
+            Arrays.fill(reached, false);
+            int head = 0;
+            int tail = 0;
+            queue[tail++] = 0;
+            reached[0] = true;
+            while (head < tail) {
+                int u = queue[head++];
+                for (int e = edgeStart[u]; e < edgeStart[u + 1]; e++) {
+                    int v = edges[e];
+                    if (!reached[v] && (lockKey[v] == NO_LOCK || held[lockKey[v]])) {
+                        reached[v] = true;
+                        queue[tail++] = v;
+                    }
+                }
+            }
+
+            solvable = false;
+            for (int i = 0; i < tail; i++) {
+                if (rooms[queue[i]].isExit()) solvable = true;
+            }
+
+            int found = ordered;
+            for (int k = 0; k < keyCount; k++) {
+                if (held[k]) continue;
+                for (Room source : keySourceRooms.get(k)) {
+                    if (reached[roomIndex[source.getId()]]) {
+                        keyPhase[k] = phase;
+                        order[ordered++] = k;
+                        break;
+                    }
+                }
+            }
+            if (ordered == found) break;
+            for (int i = found; i < ordered; i++) {
+                held[order[i]] = true;
+            }
+        }
+        keysByPhase = Arrays.copyOf(order, ordered);
+    }
+
+    // Follow the route out from the start room; every lock on it makes its key needed,
+    // and the routes to those keys are followed in turn
+    private void findNeededKeys() {
+        needed = new boolean[keyNames.size()];
+        ArrayDeque<int[]> routes = new ArrayDeque<>();
+        routes.add(exitNextHop);
+        while (!routes.isEmpty()) {
+            int[] table = routes.poll();
+            for (int v = table[0]; v >= 0; v = table[v]) {
+                int k = lockKey[v];
+                if (k != NO_LOCK && !needed[k] && keyNextHop[k] != null) {
+                    needed[k] = true;
+                    routes.add(keyNextHop[k]);
+                }
+            }
+        }
+    }
+
+    // Reverse BFS from the goals; a room may be entered if its key comes before maxPhase
+    private int[] nextHopTable(List<Room> goals, int maxPhase) {
+        int[] next = new int[rooms.length];
+        Arrays.fill(next, UNREACHABLE);
+        int[] queue = new int[rooms.length];
+        int head = 0;
+        int tail = 0;
+        for (Room goal : goals) {
+            int g = roomIndex[goal.getId()];
+            if (next[g] == UNREACHABLE) {
+                next[g] = AT_GOAL;
+                queue[tail++] = g;
+            }
+        }
+        while (head < tail) {
+            int v = queue[head++];
+            if (lockKey[v] != NO_LOCK && !(keyPhase[lockKey[v]] < maxPhase)) {
+                continue; // v cannot be entered, so nobody can come through it
+            }
+            for (int e = reverseStart[v]; e < reverseStart[v + 1]; e++) {
+                int u = reverseEdges[e];
+                if (next[u] == UNREACHABLE) {
+                    next[u] = v;
+                    queue[tail++] = u;
+                }
+            }
+        }
+        return next;
+    }
+
+    // Can the escape be completed from the start room at all?
+    public boolean isSolvable() {
+        return solvable;
+    }
+
+    // Can this player still escape from where they are, given the keys they hold?
+    public boolean isSolvable(Player player) {
+        if (!solvable) return false;
+        int here = indexOf(player.getCurrentRoom());
+        return here >= 0 && goalKey(player, here) != STUCK;
+    }
+
+    // The next room to move to, or null when the player is at the goal or stuck.
+    // The goal is the key for the first lock on the way out the player cannot open
+    // (and so on, for the way to that key), otherwise an exit.
+    public Room nextStep(Player player) {
+        int here = indexOf(player.getCurrentRoom());
+        if (here < 0) return null;
+        int k = goalKey(player, here);
+        if (k == STUCK) return null;
+        int hop = k >= 0 ? keyNextHop[k][here] : exitNextHop[here];
+        return hop >= 0 ? rooms[hop] : null;
+    }
+
+    // One line of advice for the player, or null if there is nothing useful to say
+    public String hintFor(Player player) {
+        int here = indexOf(player.getCurrentRoom());
+        if (here < 0 || player.getCurrentRoom().isExit()) return null;
+        int k = solvable ? goalKey(player, here) : STUCK;
+        if (k == STUCK) {
+            return "This path leads nowhere. Use 'back' to retrace your steps.";
+        }
+
+        int[] table = k >= 0 ? keyNextHop[k] : exitNextHop;
+        if (table[here] == AT_GOAL) {
+            // Standing where the key is: say how to get it
+            ArrayList<GameComponent> sources = keySources.get(k);
+            for (int i = 0; i < sources.size(); i++) {
+                GameComponent source = sources.get(i);
+                if (keySourceRooms.get(k).get(i) != player.getCurrentRoom()) continue;
+                if (source instanceof Puzzle) {
+                    return "Solving the " + source.getName() + " here will get you the " + keyNames.get(k) + ".";
+                }
+                if (!player.hasCollected((Item) source)) {
+                    return "The " + keyNames.get(k) + " is right here. Try 'pickup'.";
+                }
+            }
+            return null;
+        }
+        String goal = k >= 0 ? "the " + keyNames.get(k) : "the exit";
+        return "To reach " + goal + ", head to the " + rooms[table[here]].getName() + ".";
+    }
+
+    // Keys whose locks lie on the way out, in the order they can be obtained
+    public List<String> keysNeededToEscape() {
+        ArrayList<String> names = new ArrayList<>();
+        for (int k : keysByPhase) {
+            if (needed[k]) names.add(keyNames.get(k));
+        }
+        return names;
+    }
+
+    // Rooms holding the key (on the floor or as a puzzle reward)
+    public List<Room> roomsHoldingKey(String keyName) {
+        Integer k = keyIndex.get(GameComponent.foldName(keyName));
+        return k == null ? List.of() : keySourceRooms.get(k);
+    }
+
+    // Locked rooms on the route from one room to another that uses the fewest locked rooms.
+    // The tables above only lead to keys and exits, with locks opened in phase order, so
+    // they cannot answer this for any two rooms: it walks the map (0-1 BFS on an int
+    // deque), O(rooms + exits) per call. A room's first pop is at its final cost, so each
+    // room is expanded once and the deque, a ring of exits + 2 slots, never fills.
+    public List<Room> locksBetween(Room from, Room to) {
+        int source = indexOf(from);
+        int target = indexOf(to);
+        if (source < 0 || target < 0) return List.of();
+
+        int[] cost = new int[rooms.length];
+        int[] parent = new int[rooms.length];
+        Arrays.fill(cost, Integer.MAX_VALUE);
+        boolean[] settled = new boolean[rooms.length];
+        int[] deque = new int[edges.length + 2];
+        int head = 0;
+        int tail = 0;
+        cost[source] = 0;
+        parent[source] = -1;
+        deque[tail++] = source;
+        while (head != tail) {
+            int u = deque[head];
+            head = (head + 1) % deque.length;
+            if (settled[u]) continue;
+            settled[u] = true;
+            if (u == target) break;
+            for (int e = edgeStart[u]; e < edgeStart[u + 1]; e++) {
+                int v = edges[e];
+                int w = lockKey[v] == NO_LOCK ? 0 : 1;
+                if (cost[u] + w < cost[v]) {
+                    cost[v] = cost[u] + w;
+                    parent[v] = u;
+                    if (w == 0) {
+                        head = (head + deque.length - 1) % deque.length;
+                        deque[head] = v;
+                    } else {
+                        deque[tail] = v;
+                        tail = (tail + 1) % deque.length;
+                    }
+                }
+            }
+        }
+        if (cost[target] == Integer.MAX_VALUE) return List.of();
+
+        ArrayList<Room> locked = new ArrayList<>();
+        for (int v = target; v != source; v = parent[v]) {
+            if (lockKey[v] != NO_LOCK) locked.add(rooms[v]);
+        }
+        Collections.reverse(locked);
+        return locked;
+    }
+
+    // The key to fetch next from `here`, EXIT_GOAL, or STUCK. Follows the route to an
+    // exit from here; the first lock on it the player can neither pass nor open makes
+    // its key the goal, and the route to that key is followed the same way. A key's
+    // route only crosses locks of earlier phases, so this ends within one route per phase.
+    private int goalKey(Player player, int here) {
+        int goal = EXIT_GOAL;
+        int[] table = exitNextHop;
+        while (true) {
+            if (table[here] == UNREACHABLE) return STUCK;
+            int blocking = NO_LOCK;
+            for (int v = table[here]; v >= 0; v = table[v]) {
+                int k = lockKey[v];
+                if (k != NO_LOCK && !player.hasUnlocked(rooms[v]) && !player.hasKey(keyNames.get(k))) {
+                    blocking = k;
+                    break;
+                }
+            }
+            if (blocking == NO_LOCK) return goal;
+            goal = blocking;
+            table = keyNextHop[blocking];
+        }
+    }
+
+    private int indexOf(Room room) {
+        int id = room.getId();
+        return id >= 0 && id < roomIndex.length ? roomIndex[id] : -1;
+    }
+}
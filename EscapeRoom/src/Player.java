@@ -1,106 +1,332 @@
-import java.util.ArrayList;
-import java.util.Stack;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
 public class Player {
-    private Stack<Room> moveHistory;
-    private ArrayList<Item> inventory;
+    public static final int INVENTORY_PAGE_SIZE = 20;
+
+    private World world; // Resolves the room ids in moveHistory
+    private MoveHistory moveHistory;
+    private Inventory inventory; // Always ordered by value
     private Room currentRoom;
 
-    public Player(Room startRoom) {
-        this.currentRoom = startRoom;
-        this.moveHistory = new Stack<>();
-        this.inventory = new ArrayList<>();
+    // Per-session state: the world is shared, so progress is tracked here
+    private SessionState state;
+    private GameOutput out;
+    private GameJournal.Session journal; // Null unless progress is being saved
+    private SharedState shared; // Null unless other players share this world
+    private EventBus events; // Null when nobody listens
+    private StateStream.Session stream; // Null unless live state is streamed
+    private int session; // Session number on events
+    private String name;
+    private ConcurrentLinkedQueue<String> notices; // From other players, shown at the next prompt
+    private final NameKey nameKey = new NameKey(); // Reused for item names typed in
+
+    public Player(World world, GameOutput out) {
+        world.freeze();
+        this.world = world;
+        this.currentRoom = world.getStartRoom();
+        this.out = out;
+        this.state = new SessionState();
+        this.moveHistory = new MoveHistory(MoveHistory.DEFAULT_LIMIT);
+        this.inventory = new Inventory();
+        this.notices = new ConcurrentLinkedQueue<>();
     }
 
     public void moveTo(Room room) throws LockedRoomException {
-        // Check if room is locked
-        if (room.isLocked()) {
+        // Check if room is locked; once opened it stays open for this player
+        if (room.isLocked() && !hasUnlocked(room)) {
             String requiredKey = room.getRequiredKey();
             if (!hasKey(requiredKey)) {
                 throw new LockedRoomException("This room is locked! You need: " + requiredKey);
             }
-            System.out.println("You used " + requiredKey + " to unlock the room.");
+            state.markUnlocked(room);
+            if (shared == null || shared.claim(room)) {
+                emit(GameEvent.Type.UNLOCKED, currentRoom, room.getName());
+            }
+            out.print("You used ").print(requiredKey).println(" to unlock the room.");
         }
 
         // Push current room to history before moving
-        moveHistory.push(currentRoom);
+        Room from = currentRoom;
+        moveHistory.push(currentRoom.getId());
         currentRoom = room;
-        System.out.println("You moved to: " + room.getName());
+        room.prefetchExits();
+        out.print("You moved to: ").println(room.getName());
+        moved(from, room);
+        if (journal != null) journal.moved(room);
     }
 
     public void goBack() {
+        goBack(1);
+    }
+
+    // Undo the last `steps` moves at once; only the room it lands in is loaded
+    public void goBack(long steps) {
         if (moveHistory.isEmpty()) {
-            System.out.println("You can't go back any further!");
+            out.println("You can't go back any further!");
+            return;
+        }
+        if (steps < 1) {
+            out.println("Go back at least one room.");
+            return;
+        }
+        if (steps > moveHistory.size()) {
+            out.print("You can only go back ").print((int) Math.min(moveHistory.size(), Integer.MAX_VALUE))
+                    .println(" room(s).");
             return;
         }
 
-        currentRoom = moveHistory.pop();
-        System.out.println("You went back to: " + currentRoom.getName());
+        Room from = currentRoom;
+        currentRoom = (Room) world.getComponent(moveHistory.pop(steps));
+        out.print("You went back to: ").println(currentRoom.getName());
+        moved(from, currentRoom);
+        if (journal != null) journal.wentBack(steps);
     }
 
-    public void pickupItem(String itemName) {
-        GameComponent found = null;
-
-        for (GameComponent component : currentRoom.getContents()) {
-            if (component instanceof Item && component.getName().equalsIgnoreCase(itemName)) {
-                found = component;
-                break;
-            }
-        }
+    public void pickupItem(CharSequence itemName) {
+        Item found = currentRoom.findItem(nameKey.fold(itemName, 0, itemName.length()), this);
 
         if (found != null) {
-            ((Item) found).collect(this);
-            currentRoom.removeContent(found);
+            // With other players around, only the first hand on it gets it
+            if (shared != null && !shared.claim(found)) {
+                out.print("Someone else grabbed the ").print(found.getName()).println(" first!");
+                return;
+            }
+            found.collect(this);
+            state.markCollected(found);
+            emit(GameEvent.Type.PICKED_UP, currentRoom, found.getName());
+            if (journal != null) journal.pickedUp(found);
         } else {
-            System.out.println("Item not found: " + itemName);
+            out.print("Item not found: ").print(itemName, 0, itemName.length()).println();
         }
     }
 
     public boolean hasKey(String keyName) {
-        for (Item item : inventory) {
-            if (item.getName().equalsIgnoreCase(keyName) && item.getItemType().equals("KEY")) {
-                return true;
-            }
-        }
-        return false;
+        return inventory.findByName(keyName, "KEY") != null;
     }
 
     public void addToInventory(Item item) {
         inventory.add(item);
+        if (stream != null) stream.added(item);
+    }
+
+    // Inventory item with this name (case-insensitive), or null
+    public Item findInInventory(String itemName) {
+        return inventory.findByName(itemName);
     }
 
     public void showInventory() {
+        showInventory(0);
+    }
+
+    // Pages start at 0
+    public void showInventory(int page) {
         if (inventory.isEmpty()) {
-            System.out.println("Your inventory is empty.");
+            out.println("Your inventory is empty.");
+            return;
+        }
+
+        int pages = inventory.pageCount(INVENTORY_PAGE_SIZE);
+        if (page < 0 || page >= pages) {
+            out.print("No such page. Your inventory has ").print(pages).println(" page(s).");
             return;
         }
 
-        System.out.println("=== Inventory ===");
-        for (Item item : inventory) {
-            System.out.println("  - " + item.getName() + " (" + item.getItemType() + ")");
+        List<Item> items = inventory.page(page, INVENTORY_PAGE_SIZE);
+        out.println("=== Inventory ===");
+        for (Item item : items) {
+            out.print("  - ").print(item.getName()).print(" (").print(item.getItemType()).println(")");
+        }
+        if (pages > 1) {
+            out.print("Page ").print(page + 1).print(" of ").print(pages).println(" - 'inventory <page>' for more");
         }
     }
 
-    // Sort inventory using insertion sort
+    // The inventory keeps itself ordered by value, so there is nothing left to sort
     public void sortInventoryByValue() {
-        for (int i = 1; i < inventory.size(); i++) {
-            Item key = inventory.get(i);
-            int j = i - 1;
+        out.println("Inventory sorted by value.");
+    }
 
-            while (j >= 0 && inventory.get(j).compareTo(key) > 0) {
-                inventory.set(j + 1, inventory.get(j));
-                j--;
-            }
-            inventory.set(j + 1, key);
+    public boolean hasCollected(Item item) {
+        return state.isCollected(item);
+    }
+
+    // Picked up by this player, or in a shared world by anybody
+    public boolean isTaken(Item item) {
+        return state.isCollected(item) || (shared != null && shared.isClaimed(item));
+    }
+
+    // In a shared world a puzzle solved by anybody is solved
+    public boolean hasSolved(Puzzle puzzle) {
+        return state.isSolved(puzzle) || (shared != null && shared.isClaimed(puzzle));
+    }
+
+    // False if another player solved it first; only the winner gets the reward
+    public boolean markSolved(Puzzle puzzle) {
+        if (shared != null && !shared.claim(puzzle)) {
+            return false;
         }
-        System.out.println("Inventory sorted by value.");
+        state.markSolved(puzzle);
+        if (stream != null) stream.solved(puzzle);
+        emit(GameEvent.Type.SOLVED, currentRoom, puzzle.getName());
+        if (journal != null) journal.solved(puzzle);
+        return true;
+    }
+
+    // In a shared world a door opened by anybody stays open
+    public boolean hasUnlocked(Room room) {
+        return state.isUnlocked(room) || (shared != null && shared.isClaimed(room));
+    }
+
+    private void moved(Room from, Room to) {
+        if (shared != null) shared.moved(this, from, to);
+        if (stream != null) stream.moved(to);
+        emit(GameEvent.Type.LEFT, from, to.getName());
+        emit(GameEvent.Type.ENTERED, to, from.getName());
+    }
+
+    // Start and end of play, for the other players and the event bus
+    void enterGame() {
+        if (shared != null) shared.join(this);
+        if (stream != null) stream.joined(currentRoom, inventory, state);
+        emit(GameEvent.Type.JOINED, currentRoom, null);
+    }
+
+    void leaveGame() {
+        emit(GameEvent.Type.QUIT, currentRoom, null);
+        if (stream != null) stream.left();
+        if (shared != null) shared.leave(this);
+        moveHistory.close();
+    }
+
+    // Events are only built when somebody is there to hear them
+    private void emit(GameEvent.Type type, Room room, String subject) {
+        if (shared == null && (events == null || !events.hasSubscribers())) return;
+        GameEvent event = new GameEvent(type, session, name, room.getId(), subject, System.currentTimeMillis());
+        if (shared != null) shared.announce(event, this);
+        if (events != null) events.publish(event);
+    }
+
+    // Call before play starts
+    void setEvents(EventBus events, int session) {
+        this.events = events;
+        this.session = session;
+    }
+
+    // Call before play starts
+    void setStream(StateStream.Session stream) {
+        this.stream = stream;
+    }
+
+    // Changes of the turn just played go out on the state stream
+    void endTurn() {
+        if (stream != null) stream.endTurn();
+    }
+
+    // Call before play starts; keeps what is already in memory, up to the new limit
+    void setHistoryLimit(int limit) {
+        int[] recent = moveHistory.recent();
+        moveHistory.close();
+        moveHistory = new MoveHistory(limit);
+        for (int room : recent) {
+            moveHistory.push(room);
+        }
+    }
+
+    // Call before play starts
+    void setShared(SharedState shared) {
+        this.shared = shared;
+    }
+
+    SharedState getShared() {
+        return shared;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    // Called from other players' threads
+    void notify(String notice) {
+        notices.add(notice);
+    }
+
+    // Print what other players did since the last turn
+    void showNotices() {
+        for (String notice = notices.poll(); notice != null; notice = notices.poll()) {
+            out.print("* ").println(notice);
+        }
+    }
+
+    public void setJournal(GameJournal.Session journal) {
+        this.journal = journal;
+    }
+
+    // Journal replay: the same changes as above, without checks, output or recording
+
+    void replayMove(Room room) {
+        if (room.isLocked()) {
+            state.markUnlocked(room);
+        }
+        moveHistory.push(currentRoom.getId());
+        currentRoom = room;
+    }
+
+    void replayBack(long steps) {
+        steps = Math.min(steps, moveHistory.size());
+        if (steps > 0) {
+            currentRoom = (Room) world.getComponent(moveHistory.pop(steps));
+        }
+    }
+
+    void replayPickup(Item item) {
+        inventory.add(item);
+        state.markCollected(item);
+    }
+
+    void replaySolve(Puzzle puzzle) {
+        state.markSolved(puzzle);
+        Item reward = World.rewardOf(puzzle);
+        if (reward != null) {
+            inventory.add(reward);
+        }
+    }
+
+    void restore(Room current, int[] history, List<Item> items, SessionState restored) {
+        currentRoom = current;
+        moveHistory.clear();
+        for (int room : history) {
+            moveHistory.push(room);
+        }
+        inventory = new Inventory();
+        for (Item item : items) {
+            inventory.add(item);
+        }
+        state = restored;
+    }
+
+    // Room ids of the history still in memory, oldest first
+    int[] getRecentMoves() {
+        return moveHistory.recent();
+    }
+
+    public SessionState getState() {
+        return state;
+    }
+
+    public GameOutput getOut() {
+        return out;
     }
 
     public Room getCurrentRoom() {
         return currentRoom;
     }
 
-    public ArrayList<Item> getInventory() {
+    public Inventory getInventory() {
         return inventory;
     }
 }
\ No newline at end of file
@@ -1,15 +1,61 @@
-// Abstract Puzzle class with Comparable for sorting by difficulty
+// Abstract Puzzle class with Comparable for sorting by difficulty. New kinds of
+// puzzle plug in through PuzzleType.
 public abstract class Puzzle extends GameComponent implements Comparable<Puzzle> {
     protected int difficulty;
-    protected boolean solved;
+    protected Item reward; // Null if solving it gives nothing
 
     public Puzzle(String name, int difficulty) {
+        this(name, difficulty, null);
+    }
+
+    public Puzzle(String name, int difficulty, Item reward) {
         super(name);
         this.difficulty = difficulty;
-        this.solved = false;
+        this.reward = reward;
+    }
+
+    // Puzzles are shared by all sessions, so the solved flag lives on the Player.
+    // Every kind of puzzle solves the same way: only accepts() and the wording differ.
+    public boolean attemptSolve(String answer, Player p) throws InvalidPuzzleAnswerException {
+        GameOutput out = p.getOut();
+        if (p.hasSolved(this)) {
+            out.println("This puzzle is already solved!");
+            return true;
+        }
+
+        if (answer == null || answer.trim().isEmpty()) {
+            throw new InvalidPuzzleAnswerException(emptyAnswerMessage());
+        }
+
+        if (!accepts(answer)) {
+            out.println(wrongAnswerMessage());
+            return false;
+        }
+        if (!p.markSolved(this)) {
+            out.println("Too late, someone else just solved it!");
+            return false;
+        }
+        out.println(solvedMessage());
+        if (reward != null) {
+            out.print("You received: ").println(reward.getName());
+        }
+        return true;
+    }
+
+    // Whether a non-empty attempt is right; shared by every session, so thread-safe
+    protected abstract boolean accepts(CharSequence answer);
+
+    protected String emptyAnswerMessage() {
+        return "Answer cannot be empty!";
     }
 
-    public abstract boolean attemptSolve(String answer) throws InvalidPuzzleAnswerException;
+    protected String solvedMessage() {
+        return "Correct! The puzzle is solved!";
+    }
+
+    protected String wrongAnswerMessage() {
+        return "Wrong answer. Try again!";
+    }
 
     // Compare by difficulty
     @Override
@@ -17,11 +63,16 @@ public abstract class Puzzle extends GameComponent implements Comparable<Puzzle>
         return Integer.compare(this.difficulty, other.difficulty);
     }
 
-    public boolean isSolved() {
-        return solved;
+    public boolean isSolved(Player p) {
+        return p.hasSolved(this);
     }
 
     public int getDifficulty() {
         return difficulty;
     }
+
+    // Goes to whoever solves it first
+    public Item getReward() {
+        return reward;
+    }
 }
\ No newline at end of file
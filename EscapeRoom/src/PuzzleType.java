@@ -0,0 +1,24 @@
+// A kind of puzzle. Riddle and code are built in; others are found through
+// ServiceLoader: list implementations in META-INF/services/PuzzleType and world
+// files can use them by name, e.g.
+//
+//   puzzle regex lantern "Lantern" 2 "Name something that gives light" "lamp|lantern|torch(light)?"
+//
+// create() is called once per puzzle when a world is built, so anything costly
+// about checking answers (parsing, compiling a pattern) belongs there, not in
+// attemptSolve.
+public interface PuzzleType {
+    // Keyword in world files; lower case, one word
+    String getName();
+
+    // The answer is in whatever notation the type defines; a mistake in it is a
+    // WorldFormatException, reported when the world is built
+    Puzzle create(String name, int difficulty, String text, String answer, Item reward) throws WorldFormatException;
+
+    // An answer that solves the puzzle, for tools such as WorldSolver, or null if
+    // there is no telling
+    default String sampleAnswer(String answer) {
+        int synonyms = answer.indexOf(HashedAnswer.SYNONYM_SEPARATOR);
+        return synonyms < 0 ? answer : answer.substring(0, synonyms);
+    }
+}
@@ -0,0 +1,45 @@
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.ServiceLoader;
+import java.util.Set;
+
+// The PuzzleTypes by name, loaded once: riddle and code are built in, so a build
+// without the services file can still load worlds, and the rest come from the
+// class path through ServiceLoader. When two share a name the first one found wins,
+// built-in ones first.
+public final class PuzzleTypes {
+    private static final Map<String, PuzzleType> TYPES = load();
+
+    private PuzzleTypes() {
+    }
+
+    private static Map<String, PuzzleType> load() {
+        LinkedHashMap<String, PuzzleType> types = new LinkedHashMap<>();
+        for (PuzzleType type : List.of(new RiddlePuzzle.Type(), new CodePuzzle.Type())) {
+            types.put(type.getName(), type);
+        }
+        for (PuzzleType type : ServiceLoader.load(PuzzleType.class, PuzzleType.class.getClassLoader())) {
+            types.putIfAbsent(type.getName(), type);
+        }
+        return Collections.unmodifiableMap(types);
+    }
+
+    public static PuzzleType get(String name) throws WorldFormatException {
+        PuzzleType type = TYPES.get(name);
+        if (type == null) {
+            throw new WorldFormatException("unknown puzzle type '" + name + "'");
+        }
+        return type;
+    }
+
+    // Null if there is none by that name
+    public static PuzzleType find(String name) {
+        return TYPES.get(name);
+    }
+
+    public static Set<String> names() {
+        return TYPES.keySet();
+    }
+}
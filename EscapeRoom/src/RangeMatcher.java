@@ -0,0 +1,66 @@
+// "range" puzzles: the answer is "low..high" and any number in between, both ends
+// included, is right; either end may be left out ("..10", "3.5.."). Attempts
+// are read as decimal numbers.
+public class RangeMatcher implements AnswerMatcher {
+    private final double low;
+    private final double high;
+
+    public RangeMatcher(String range) throws WorldFormatException {
+        int dots = range.indexOf("..");
+        if (dots < 0) {
+            throw new WorldFormatException("range " + range + " is not written low..high");
+        }
+        this.low = bound(range.substring(0, dots), Double.NEGATIVE_INFINITY);
+        this.high = bound(range.substring(dots + 2), Double.POSITIVE_INFINITY);
+        if (low > high) {
+            throw new WorldFormatException("range " + range + " is empty");
+        }
+    }
+
+    private static double bound(String text, double open) throws WorldFormatException {
+        text = text.trim();
+        if (text.isEmpty()) return open;
+        try {
+            double value = Double.parseDouble(text);
+            if (Double.isNaN(value)) throw new NumberFormatException();
+            return value;
+        } catch (NumberFormatException e) {
+            throw new WorldFormatException("'" + text + "' is not a number");
+        }
+    }
+
+    @Override
+    public boolean matches(CharSequence attempt) {
+        try {
+            double value = Double.parseDouble(HashedAnswer.normalize(attempt, false));
+            return value >= low && value <= high;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    public static class Type extends MatcherType {
+        @Override
+        public String getName() {
+            return "range";
+        }
+
+        @Override
+        public AnswerMatcher compile(String answer) throws WorldFormatException {
+            return new RangeMatcher(answer);
+        }
+
+        @Override
+        public String sampleAnswer(String answer) {
+            try {
+                RangeMatcher range = new RangeMatcher(answer);
+                double value = !Double.isInfinite(range.low) ? range.low
+                        : !Double.isInfinite(range.high) ? range.high : 0;
+                return value == Math.rint(value) && Math.abs(value) < 1e15
+                        ? Long.toString((long) value) : Double.toString(value);
+            } catch (WorldFormatException e) {
+                return null;
+            }
+        }
+    }
+}
@@ -0,0 +1,40 @@
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+// "regex" puzzles: the answer is a Java regular expression that must match the
+// whole attempt, ignoring case and surrounding blanks. The pattern is compiled
+// once; world authors are trusted not to write patterns that backtrack forever.
+public class RegexMatcher implements AnswerMatcher {
+    private final Pattern pattern;
+
+    public RegexMatcher(String regex) throws WorldFormatException {
+        try {
+            this.pattern = Pattern.compile(regex, Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE);
+        } catch (PatternSyntaxException e) {
+            throw new WorldFormatException("bad pattern " + regex + ": " + e.getDescription());
+        }
+    }
+
+    @Override
+    public boolean matches(CharSequence attempt) {
+        return pattern.matcher(HashedAnswer.normalize(attempt, false)).matches();
+    }
+
+    public static class Type extends MatcherType {
+        @Override
+        public String getName() {
+            return "regex";
+        }
+
+        @Override
+        public AnswerMatcher compile(String answer) throws WorldFormatException {
+            return new RegexMatcher(answer);
+        }
+
+        // Patterns have no example answer to give
+        @Override
+        public String sampleAnswer(String answer) {
+            return null;
+        }
+    }
+}
@@ -1,51 +1,45 @@
 public class RiddlePuzzle extends Puzzle {
     private String riddle;
-    private String correctAnswer;
-    private Item reward;
+    private HashedAnswer correctAnswer; // Salted hashes of the answer and its synonyms
 
+    // The answer may list synonyms separated by '|', e.g. "echo|an echo"
     public RiddlePuzzle(String name, int difficulty, String riddle, String answer, Item reward) {
-        super(name, difficulty);
+        this(name, difficulty, riddle, HashedAnswer.riddle(answer), reward);
+    }
+
+    RiddlePuzzle(String name, int difficulty, String riddle, HashedAnswer answer, Item reward) {
+        super(name, difficulty, reward);
         this.riddle = riddle;
-        this.correctAnswer = answer.toLowerCase();
-        this.reward = reward;
+        this.correctAnswer = answer;
     }
 
     @Override
-    public void inspect() {
-        System.out.println("[Riddle Puzzle] " + name);
-        System.out.println("Riddle: " + riddle);
-        if (solved) {
-            System.out.println("Status: SOLVED");
+    public void inspect(Player viewer) {
+        GameOutput out = viewer.getOut();
+        out.print("[Riddle Puzzle] ").println(name);
+        out.print("Riddle: ").println(riddle);
+        if (viewer.hasSolved(this)) {
+            out.println("Status: SOLVED");
         } else {
-            System.out.println("Difficulty: " + difficulty);
+            out.print("Difficulty: ").println(difficulty);
         }
     }
 
     @Override
-    public boolean attemptSolve(String answer) throws InvalidPuzzleAnswerException {
-        if (solved) {
-            System.out.println("This puzzle is already solved!");
-            return true;
-        }
+    protected boolean accepts(CharSequence answer) {
+        return correctAnswer.matches(answer);
+    }
 
-        if (answer == null || answer.trim().isEmpty()) {
-            throw new InvalidPuzzleAnswerException("Answer cannot be empty!");
+    // "riddle" in world files; the answer may list synonyms separated by '|'
+    public static class Type implements PuzzleType {
+        @Override
+        public String getName() {
+            return "riddle";
         }
 
-        if (answer.toLowerCase().equals(correctAnswer)) {
-            solved = true;
-            System.out.println("Correct! The puzzle is solved!");
-            if (reward != null) {
-                System.out.println("You received: " + reward.getName());
-            }
-            return true;
-        } else {
-            System.out.println("Wrong answer. Try again!");
-            return false;
+        @Override
+        public Puzzle create(String name, int difficulty, String text, String answer, Item reward) {
+            return new RiddlePuzzle(name, difficulty, text, answer, reward);
         }
     }
-
-    public Item getReward() {
-        return reward;
-    }
-}
\ No newline at end of file
+}
@@ -1,119 +1,233 @@
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 
 // Room with recursive structure
 public class Room extends GameComponent {
-    private ArrayList<GameComponent> contents;
+    // Collections are created on first use: most rooms in big worlds hold nothing
+    private LinkedHashSet<GameComponent> contents; // Keeps display order, O(1) removal
     private ArrayList<Room> connectedRooms;
+    private HashMap<String, ArrayList<GameComponent>> contentIndex; // Folded name -> components
+    private HashMap<String, Room> exitIndex; // Folded name -> first exit with that name
     private boolean isExit;
     private String requiredKey; // Key needed to enter
+    private RoomStore store; // Paged rooms: exits are room indexes resolved through the store
+    private int[] exitRooms;
 
     public Room(String name, boolean isExit) {
         super(name);
         this.isExit = isExit;
-        this.contents = new ArrayList<>();
-        this.connectedRooms = new ArrayList<>();
+        this.connectedRooms = new ArrayList<>(2);
         this.requiredKey = null;
     }
 
     @Override
-    public void inspect() {
-        System.out.println("Hi, " + name);
+    public void inspect(Player viewer) {
+        GameOutput out = viewer.getOut();
+        out.print("Hi, ").println(name);
         if (isExit) {
-            System.out.println("This is the EXIT!");
+            out.println("This is the EXIT!");
         }
 
-        if (contents.isEmpty() && connectedRooms.isEmpty()) {
-            System.out.println("The room is empty.");
-        } else {
-            if (!contents.isEmpty()) {
-                System.out.println("You see:");
-                for (GameComponent component : contents) {
-                    System.out.println("  - " + component.getName());
-                }
+        // Items this player already picked up stay in the shared room but are hidden
+        boolean seenAny = false;
+        for (GameComponent component : getContents()) {
+            if (component instanceof Item && viewer.isTaken((Item) component)) {
+                continue;
+            }
+            if (!seenAny) {
+                out.println("You see:");
+                seenAny = true;
             }
+            out.print("  - ").println(component.getName());
+        }
 
-            if (!connectedRooms.isEmpty()) {
-                System.out.println("Exits to:");
-                for (Room room : connectedRooms) {
-                    String lockStatus = room.isLocked() ? " [LOCKED]" : "";
-                    System.out.println("  - " + room.getName() + lockStatus);
-                }
+        List<Room> exits = getConnectedRooms();
+        if (!exits.isEmpty()) {
+            out.println("Exits to:");
+            for (Room room : exits) {
+                out.print("  - ").print(room.getName());
+                out.println(room.isLocked() && !viewer.hasUnlocked(room) ? " [LOCKED]" : "");
             }
+        } else if (!seenAny) {
+            out.println("The room is empty.");
         }
     }
 
-    // Recursive exploration with depth tracking
-    public void exploreRecursive(int depth) {
-        // Base case
-        if (depth < 0) return;
-
-        String indent = "  ".repeat(depth);
-        System.out.println(indent + "- " + name + (isExit ? " [EXIT]" : ""));
-
-        // Recursive case: explore connected rooms
-        for (Room room : connectedRooms) {
-            room.exploreRecursive(depth + 1);
+    // Map listing, one line per reachable room (iterative, safe on cyclic maps)
+    public void exploreRecursive(int depth, GameOutput out) {
+        if (depth < 0) {
+            throw new IllegalArgumentException("Negative indent: " + depth);
         }
+
+        MapTraversal.dfs(this, MapTraversal.NO_LIMIT, (room, d) -> {
+            out.repeat(' ', 2 * (depth + d)).print("- ").print(room.getName());
+            out.println(room.isExit() ? " [EXIT]" : "");
+            return true;
+        });
     }
 
-    // Recursive search for item
+    // Search for an item in this room and every room reachable from it
     public boolean containsItemRecursive(String itemName) {
-        // Base case: check current room
-        for (GameComponent component : contents) {
-            if (component instanceof Item && component.getName().equalsIgnoreCase(itemName)) {
-                return true;
+        boolean[] found = {false};
+        MapTraversal.bfs(this, MapTraversal.NO_LIMIT, (room, d) -> {
+            if (room.findItem(itemName) != null) {
+                found[0] = true;
+                return false; // Early exit
             }
-        }
+            return true;
+        });
+        return found[0];
+    }
 
-        // Recursive case: search connected rooms
-        for (Room room : connectedRooms) {
-            if (room.containsItemRecursive(itemName)) {
-                return true;
+    // Number of moves to the farthest reachable room (shortest paths, so cycles don't count)
+    public int maxDepthRecursive() {
+        int[] maxDepth = {0};
+        MapTraversal.bfs(this, MapTraversal.NO_LIMIT, (room, d) -> {
+            if (d > maxDepth[0]) {
+                maxDepth[0] = d;
             }
+            return true;
+        });
+        return maxDepth[0];
+    }
+
+    public void addContent(GameComponent component) {
+        checkMutable();
+        if (contents == null) {
+            contents = new LinkedHashSet<>();
+            contentIndex = new HashMap<>();
+        }
+        if (contents.add(component)) {
+            contentIndex.computeIfAbsent(foldName(component.getName()), k -> new ArrayList<>(1)).add(component);
         }
+    }
 
-        return false;
+    public void removeContent(GameComponent component) {
+        checkMutable();
+        if (contents == null || !contents.remove(component)) {
+            return;
+        }
+        String key = foldName(component.getName());
+        ArrayList<GameComponent> sameName = contentIndex.get(key);
+        sameName.remove(component);
+        if (sameName.isEmpty()) {
+            contentIndex.remove(key);
+        }
     }
 
-    // Recursive depth calculation
-    public int maxDepthRecursive() {
-        // Base case: no connected rooms
-        if (connectedRooms.isEmpty()) {
-            return 0;
+    public void connectRoom(Room room) {
+        checkMutable();
+        if (exitIndex == null) {
+            exitIndex = new HashMap<>(4);
+        }
+        String key = foldName(room.getName());
+        Room existing = exitIndex.get(key);
+        if (existing == room) {
+            return;
         }
+        if (existing == null) {
+            exitIndex.put(key, room);
+        } else if (connectedRooms.contains(room)) {
+            // Only reached when two different exits share a name
+            return;
+        }
+        connectedRooms.add(room);
+    }
 
-        // Recursive case: find max depth among connected rooms
-        int maxDepth = 0;
-        for (Room room : connectedRooms) {
-            int depth = room.maxDepthRecursive();
-            if (depth > maxDepth) {
-                maxDepth = depth;
+    // Index key for a name; a NameKey is folded already
+    private static Object keyOf(CharSequence name) {
+        return name instanceof NameKey ? ((NameKey) name).lookupKey() : foldName(name.toString());
+    }
+
+    private ArrayList<GameComponent> sameName(CharSequence name) {
+        return contentIndex == null ? null : contentIndex.get(keyOf(name));
+    }
+
+    // Any content with this name (case-insensitive), or null
+    public GameComponent findContent(CharSequence name) {
+        ArrayList<GameComponent> sameName = sameName(name);
+        return sameName == null ? null : sameName.get(0);
+    }
+
+    public Item findItem(CharSequence name) {
+        ArrayList<GameComponent> sameName = sameName(name);
+        if (sameName != null) {
+            for (GameComponent component : sameName) {
+                if (component instanceof Item) {
+                    return (Item) component;
+                }
             }
         }
+        return null;
+    }
 
-        return maxDepth + 1;
+    // Like findItem, but skips items this player, or in a shared world anybody, has picked up
+    public Item findItem(CharSequence name, Player viewer) {
+        ArrayList<GameComponent> sameName = sameName(name);
+        if (sameName != null) {
+            for (GameComponent component : sameName) {
+                if (component instanceof Item && !viewer.isTaken((Item) component)) {
+                    return (Item) component;
+                }
+            }
+        }
+        return null;
     }
 
-    public void addContent(GameComponent component) {
-        contents.add(component);
+    public Puzzle findPuzzle(CharSequence name) {
+        ArrayList<GameComponent> sameName = sameName(name);
+        if (sameName != null) {
+            for (GameComponent component : sameName) {
+                if (component instanceof Puzzle) {
+                    return (Puzzle) component;
+                }
+            }
+        }
+        return null;
     }
 
-    public void removeContent(GameComponent component) {
-        contents.remove(component);
+    public Room findExit(CharSequence name) {
+        if (store != null) {
+            NameKey key = name instanceof NameKey ? (NameKey) name : new NameKey().fold(name, 0, name.length());
+            for (int index : exitRooms) {
+                if (key.matches(store.roomName(index))) {
+                    return store.room(index);
+                }
+            }
+            return null;
+        }
+        return exitIndex == null ? null : exitIndex.get(keyOf(name));
     }
 
-    public void connectRoom(Room room) {
-        if (!connectedRooms.contains(room)) {
-            connectedRooms.add(room);
+    // Read-only view; use addContent/removeContent so the name index stays in sync
+    public Collection<GameComponent> getContents() {
+        if (contents == null) {
+            return Collections.emptyList();
         }
+        return Collections.unmodifiableCollection(contents);
     }
 
-    public ArrayList<GameComponent> getContents() {
-        return contents;
+    // Paged rooms load their neighbours as the list is read
+    public List<Room> getConnectedRooms() {
+        return store != null ? store.roomList(exitRooms) : connectedRooms;
     }
 
-    public ArrayList<Room> getConnectedRooms() {
-        return connectedRooms;
+    // Called by RoomStore before the room is frozen
+    void attachStore(RoomStore store, int[] exitRooms) {
+        checkMutable();
+        this.store = store;
+        this.exitRooms = exitRooms;
+    }
+
+    // Start reading the neighbours of a paged room before the player picks one
+    public void prefetchExits() {
+        if (store != null) {
+            store.prefetch(exitRooms);
+        }
     }
 
     public boolean isExit() {
@@ -121,6 +235,7 @@ public class Room extends GameComponent {
     }
 
     public void setRequiredKey(String keyName) {
+        checkMutable();
         this.requiredKey = keyName;
     }
 
@@ -0,0 +1,264 @@
+import java.util.AbstractList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Rooms of a paged world, built from its WorldData (the memory-mapped file, or a
+// CompactWorld) when first asked for and kept in a bounded cache. The cache is split
+// into segments by room index, each one a CLOCK ring under its own lock: a hit sets
+// the slot's reference bit, a miss sweeps the hand past referenced slots, clearing
+// their bits, and reuses the first slot it finds clear. Sessions on different rooms
+// rarely share a lock. A miss builds the room outside the lock and installs it only if
+// no other thread got there first, so a slow read never holds up the segment's hits.
+//
+// Rooms keep their exits as room indexes and resolve them through the store, so an
+// evicted room is simply read again later. Items are rebuilt with their room, puzzles
+// are built once (see content), and both carry the same ids every time (see
+// World.freezeInOrder); progress lives in
+// each session's SessionState, so nothing is lost when a room goes.
+public class RoomStore {
+    private static final int SEGMENTS = 16;
+
+    private WorldData in;
+    private Segment[] segments;
+    private ExecutorService prefetcher;
+    private AtomicReferenceArray<Puzzle> puzzles; // By puzzle index, built on first load and kept
+
+    private static class Segment {
+        final ReentrantLock lock = new ReentrantLock();
+        final HashMap<Integer, Integer> slotOf; // Room index -> slot
+        final int[] keys;
+        final Room[] rooms;
+        final boolean[] referenced;
+        int hand;
+        int size;
+        long hits;
+        long misses;
+
+        Segment(int capacity) {
+            this.slotOf = new HashMap<>(capacity * 2);
+            this.keys = new int[capacity];
+            this.rooms = new Room[capacity];
+            this.referenced = new boolean[capacity];
+        }
+    }
+
+    RoomStore(WorldData in, int cachedRooms) {
+        if (cachedRooms < 1) {
+            throw new IllegalArgumentException("The room cache needs at least one room");
+        }
+        this.in = in;
+        this.segments = new Segment[SEGMENTS];
+        int perSegment = Math.max(1, (cachedRooms + SEGMENTS - 1) / SEGMENTS);
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment(perSegment);
+        }
+        this.prefetcher = Executors.newVirtualThreadPerTaskExecutor();
+        this.puzzles = new AtomicReferenceArray<>(in.puzzleCount());
+    }
+
+    public int roomCount() {
+        return in.roomCount();
+    }
+
+    // Rooms, then items, then puzzles
+    public int componentCount() {
+        return in.roomCount() + in.itemCount() + in.puzzleCount();
+    }
+
+    public Room room(int index) {
+        if (index < 0 || index >= in.roomCount()) {
+            throw new IndexOutOfBoundsException("No room #" + index);
+        }
+        Segment segment = segments[index & (SEGMENTS - 1)];
+        segment.lock.lock();
+        try {
+            Integer slot = segment.slotOf.get(index);
+            if (slot != null) {
+                segment.referenced[slot] = true;
+                segment.hits++;
+                return segment.rooms[slot];
+            }
+            segment.misses++;
+        } finally {
+            segment.lock.unlock();
+        }
+
+        Room room = load(index);
+        segment.lock.lock();
+        try {
+            // Another thread may have loaded it meanwhile; everyone gets the same Room
+            Integer slot = segment.slotOf.get(index);
+            if (slot != null) {
+                segment.referenced[slot] = true;
+                return segment.rooms[slot];
+            }
+
+            int free;
+            if (segment.size < segment.keys.length) {
+                free = segment.size++;
+            } else {
+                while (segment.referenced[segment.hand]) {
+                    segment.referenced[segment.hand] = false;
+                    segment.hand = (segment.hand + 1) % segment.keys.length;
+                }
+                free = segment.hand;
+                segment.hand = (segment.hand + 1) % segment.keys.length;
+                segment.slotOf.remove(segment.keys[free]);
+            }
+            segment.keys[free] = index;
+            segment.rooms[free] = room;
+            segment.referenced[free] = true;
+            segment.slotOf.put(index, free);
+            return room;
+        } finally {
+            segment.lock.unlock();
+        }
+    }
+
+    private boolean isCached(int index) {
+        Segment segment = segments[index & (SEGMENTS - 1)];
+        segment.lock.lock();
+        try {
+            return segment.slotOf.containsKey(index);
+        } finally {
+            segment.lock.unlock();
+        }
+    }
+
+    // Any component by id; only rooms are cached, items and puzzles come back as new objects
+    public GameComponent component(int id) {
+        if (id < in.roomCount()) {
+            return room(id);
+        }
+        try {
+            return content(id - in.roomCount());
+        } catch (WorldFormatException e) {
+            throw new IllegalStateException("Corrupt world data: " + e.getMessage(), e);
+        }
+    }
+
+    // Name without loading the room, for matching exits
+    public String roomName(int index) {
+        try {
+            return in.roomName(index);
+        } catch (WorldFormatException e) {
+            throw new IllegalStateException("Corrupt world data: " + e.getMessage(), e);
+        }
+    }
+
+    // Load these rooms in the background, so the next move is a cache hit
+    public void prefetch(int[] rooms) {
+        try {
+            for (int index : rooms) {
+                if (!isCached(index)) {
+                    prefetcher.execute(() -> room(index));
+                }
+            }
+        } catch (RejectedExecutionException e) {
+            // Closed: rooms are still loaded when asked for
+        }
+    }
+
+    // Stops background loading; rooms can still be read afterwards
+    public void close() {
+        prefetcher.shutdownNow();
+    }
+
+    // Every room, loaded as it is read
+    public List<Room> rooms() {
+        return new RoomList(null);
+    }
+
+    // The given rooms, loaded as they are read
+    List<Room> roomList(int[] indexes) {
+        return new RoomList(indexes);
+    }
+
+    private class RoomList extends AbstractList<Room> implements RandomAccess {
+        private final int[] indexes; // Null for all rooms
+
+        RoomList(int[] indexes) {
+            this.indexes = indexes;
+        }
+
+        @Override
+        public Room get(int i) {
+            return room(indexes == null ? i : indexes[i]);
+        }
+
+        @Override
+        public int size() {
+            return indexes == null ? in.roomCount() : indexes.length;
+        }
+    }
+
+    public long getHits() {
+        long hits = 0;
+        for (Segment segment : segments) {
+            segment.lock.lock();
+            hits += segment.hits;
+            segment.lock.unlock();
+        }
+        return hits;
+    }
+
+    public long getMisses() {
+        long misses = 0;
+        for (Segment segment : segments) {
+            segment.lock.lock();
+            misses += segment.misses;
+            segment.lock.unlock();
+        }
+        return misses;
+    }
+
+    private Room load(int index) {
+        try {
+            Room room = new Room(in.roomName(index), in.isExitRoom(index));
+            for (int c : in.contentsOf(index)) {
+                room.addContent(content(c));
+            }
+            int key = in.lockKeyOf(index);
+            if (key != WorldDefinition.NONE) {
+                room.setRequiredKey(in.itemName(key));
+            }
+            room.attachStore(this, in.exitsOf(index));
+            room.freeze(index);
+            return room;
+        } catch (WorldFormatException e) {
+            throw new IllegalStateException("Corrupt world data: " + e.getMessage(), e);
+        }
+    }
+
+    // Component index as stored in the file: items first, then puzzles. A puzzle
+    // hashes its answers or compiles a matcher when built, so each one is built once
+    // and shared by every load of its room; a race builds it twice and keeps one.
+    private GameComponent content(int c) throws WorldFormatException {
+        if (c < in.itemCount()) {
+            return item(c);
+        }
+        int p = c - in.itemCount();
+        Puzzle puzzle = puzzles.get(p);
+        if (puzzle == null) {
+            int reward = in.rewardIndex(p);
+            puzzle = in.readPuzzle(p, reward == WorldDefinition.NONE ? null : item(reward));
+            puzzle.freeze(in.roomCount() + c);
+            if (!puzzles.compareAndSet(p, null, puzzle)) {
+                puzzle = puzzles.get(p);
+            }
+        }
+        return puzzle;
+    }
+
+    private Item item(int i) throws WorldFormatException {
+        Item item = in.readItem(i);
+        item.freeze(in.roomCount() + i);
+        return item;
+    }
+}
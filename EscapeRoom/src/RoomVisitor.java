@@ -0,0 +1,5 @@
+// Callback used by MapTraversal for every room it reaches
+public interface RoomVisitor {
+    // Return false to stop the traversal early
+    boolean visit(Room room, int depth);
+}
@@ -0,0 +1,78 @@
+import java.util.ArrayList;
+
+// "sequence" puzzles: several steps given in one answer, in order, separated by
+// commas or semicolons ("left, left, right"). The answer lists the steps with ';'
+// between them; a step is plain text, compared like a riddle answer, or any other
+// matcher type as "type:answer", e.g. "red; range:1..3; fuzzy:lantern". Plain
+// steps are kept hashed, like riddle answers.
+public class SequenceMatcher implements AnswerMatcher {
+    private final AnswerMatcher[] steps;
+
+    public SequenceMatcher(String answer) throws WorldFormatException {
+        ArrayList<AnswerMatcher> compiled = new ArrayList<>();
+        for (String step : answer.split(";")) {
+            compiled.add(compileStep(step.trim()));
+        }
+        this.steps = compiled.toArray(new AnswerMatcher[0]);
+    }
+
+    private static AnswerMatcher compileStep(String step) throws WorldFormatException {
+        if (step.isEmpty()) {
+            throw new WorldFormatException("sequence has an empty step");
+        }
+        int colon = step.indexOf(':');
+        PuzzleType type = colon > 0 ? PuzzleTypes.find(step.substring(0, colon)) : null;
+        if (type != null) {
+            if (!(type instanceof MatcherType)) {
+                throw new WorldFormatException(type.getName() + " puzzles cannot be steps of a sequence");
+            }
+            return ((MatcherType) type).compile(step.substring(colon + 1).trim());
+        }
+        return HashedAnswer.riddle(step)::matches;
+    }
+
+    @Override
+    public boolean matches(CharSequence attempt) {
+        int step = 0;
+        int start = 0;
+        for (int i = 0; i <= attempt.length(); i++) {
+            if (i == attempt.length() || attempt.charAt(i) == ',' || attempt.charAt(i) == ';') {
+                if (step == steps.length || !steps[step++].matches(attempt.subSequence(start, i))) {
+                    return false;
+                }
+                start = i + 1;
+            }
+        }
+        return step == steps.length;
+    }
+
+    public static class Type extends MatcherType {
+        @Override
+        public String getName() {
+            return "sequence";
+        }
+
+        @Override
+        public AnswerMatcher compile(String answer) throws WorldFormatException {
+            return new SequenceMatcher(answer);
+        }
+
+        @Override
+        public String sampleAnswer(String answer) {
+            StringBuilder sb = new StringBuilder();
+            for (String step : answer.split(";")) {
+                step = step.trim();
+                String sample = step;
+                int colon = step.indexOf(':');
+                PuzzleType type = colon > 0 ? PuzzleTypes.find(step.substring(0, colon)) : null;
+                if (type != null) {
+                    sample = type.sampleAnswer(step.substring(colon + 1).trim());
+                }
+                if (sample == null) return null;
+                if (sb.length() > 0) sb.append(", ");
+                sb.append(sample);
+            }
+            return sb.toString();
+        }
+    }
+}
@@ -0,0 +1,56 @@
+import java.util.BitSet;
+
+// Per-session overlay on top of a frozen World: one bit per component id
+// for every piece of progress, so a new session costs a few small bitsets.
+public class SessionState {
+    private BitSet collectedItems;
+    private BitSet solvedPuzzles;
+    private BitSet unlockedDoors;
+
+    public SessionState() {
+        this(new BitSet(), new BitSet(), new BitSet());
+    }
+
+    SessionState(BitSet collectedItems, BitSet solvedPuzzles, BitSet unlockedDoors) {
+        this.collectedItems = collectedItems;
+        this.solvedPuzzles = solvedPuzzles;
+        this.unlockedDoors = unlockedDoors;
+    }
+
+    public boolean isCollected(GameComponent item) {
+        return collectedItems.get(item.getId());
+    }
+
+    public void markCollected(GameComponent item) {
+        collectedItems.set(item.getId());
+    }
+
+    public boolean isSolved(GameComponent puzzle) {
+        return solvedPuzzles.get(puzzle.getId());
+    }
+
+    public void markSolved(GameComponent puzzle) {
+        solvedPuzzles.set(puzzle.getId());
+    }
+
+    public boolean isUnlocked(GameComponent door) {
+        return unlockedDoors.get(door.getId());
+    }
+
+    public void markUnlocked(GameComponent door) {
+        unlockedDoors.set(door.getId());
+    }
+
+    // Raw bits, for saving
+    BitSet getCollectedItems() {
+        return collectedItems;
+    }
+
+    BitSet getSolvedPuzzles() {
+        return solvedPuzzles;
+    }
+
+    BitSet getUnlockedDoors() {
+        return unlockedDoors;
+    }
+}
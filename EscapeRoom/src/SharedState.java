@@ -0,0 +1,103 @@
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.BitSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Progress shared by every player in a multiplayer world, on top of each player's
+// SessionState: an item picked up is gone for everybody, a puzzle solved or a door
+// unlocked is so for everybody. One bit per component id; claiming one is a single
+// atomic OR on its word, so when two players reach for the same item or puzzle
+// exactly one of them sees the bit go from 0 to 1, and no lock is ever taken.
+//
+// Also keeps who is in which room, so players hear about the GameEvents around them.
+public class SharedState {
+    private static final VarHandle WORDS = MethodHandles.arrayElementVarHandle(long[].class);
+
+    private final long[] claimed;
+    private final ConcurrentHashMap<Integer, Set<Player>> occupants; // Room id -> players there
+    private final AtomicInteger joined;
+
+    public SharedState(World world) {
+        world.freeze();
+        this.claimed = new long[(world.getComponentCount() + 63) / 64];
+        this.occupants = new ConcurrentHashMap<>();
+        this.joined = new AtomicInteger();
+    }
+
+    // True for the one caller that claims the component first
+    public boolean claim(GameComponent component) {
+        int id = component.getId();
+        long bit = 1L << id;
+        long before = (long) WORDS.getAndBitwiseOr(claimed, id >>> 6, bit);
+        return (before & bit) == 0;
+    }
+
+    // A returning player's progress counts for everybody; whatever somebody else
+    // took meanwhile stays theirs as well
+    void adopt(SessionState state) {
+        adopt(state.getCollectedItems());
+        adopt(state.getSolvedPuzzles());
+        adopt(state.getUnlockedDoors());
+    }
+
+    private void adopt(BitSet bits) {
+        long[] words = bits.toLongArray();
+        for (int i = 0; i < words.length && i < claimed.length; i++) {
+            if (words[i] != 0) WORDS.getAndBitwiseOr(claimed, i, words[i]);
+        }
+    }
+
+    public boolean isClaimed(GameComponent component) {
+        int id = component.getId();
+        return ((long) WORDS.getAcquire(claimed, id >>> 6) & (1L << id)) != 0;
+    }
+
+    // Names players without one "Player 1", "Player 2"...
+    void join(Player player) {
+        if (player.getName() == null) {
+            player.setName("Player " + joined.incrementAndGet());
+        }
+        occupantsOf(player.getCurrentRoom()).add(player);
+    }
+
+    void leave(Player player) {
+        occupantsOf(player.getCurrentRoom()).remove(player);
+    }
+
+    void moved(Player player, Room from, Room to) {
+        occupantsOf(from).remove(player);
+        occupantsOf(to).add(player);
+    }
+
+    private Set<Player> occupantsOf(Room room) {
+        return occupants.computeIfAbsent(room.getId(), id -> ConcurrentHashMap.newKeySet());
+    }
+
+    // Tell everyone else in the event's room what happened
+    void announce(GameEvent event, Player from) {
+        Set<Player> here = occupants.get(event.room());
+        if (here == null) return;
+        String notice = switch (event.type()) {
+            case JOINED -> " arrives.";
+            case QUIT -> " leaves the game.";
+            case ENTERED -> " comes in.";
+            case LEFT -> " heads to the " + event.subject() + ".";
+            case PICKED_UP -> " picked up the " + event.subject() + ".";
+            case SOLVED -> " solved the " + event.subject() + ".";
+            case UNLOCKED -> " unlocked the way to the " + event.subject() + ".";
+        };
+        for (Player player : here) {
+            if (player != from) {
+                player.notify(from.getName() + notice);
+            }
+        }
+    }
+
+    // Players in the room right now
+    public int occupancy(Room room) {
+        Set<Player> here = occupants.get(room.getId());
+        return here == null ? 0 : here.size();
+    }
+}
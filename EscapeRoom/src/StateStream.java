@@ -0,0 +1,661 @@
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Live state of every session for dashboards and analytics, as a stream of binary
+// frames written to a file or to whoever connects to a local socket.
+//
+// Sessions note what changed during a turn (room, items gained or lost, puzzles
+// solved) and hand it over at the end of the turn; nothing is sent for a turn that
+// changed nothing. One writer thread takes what all sessions handed over, merges it
+// per session and writes one frame every frame interval, so a thousand busy
+// sessions cost one write, not a thousand. The writer also keeps the latest state
+// of every session and writes all of it as a keyframe every keyframe interval: a
+// reader that comes in late, or reads a file from the middle, starts from the next
+// keyframe and follows the deltas after it. New socket clients are sent nothing but
+// the header until then; a client that cannot keep up is dropped and can reconnect.
+//
+// Stream layout:
+//   header  int magic "ESST", byte version
+//   frame   int length of the rest, byte kind (DELTA or KEYFRAME), varint frame number,
+//           varint milliseconds since the stream started, varint record count, records
+//   record  varint session, byte flags, then for each flag set, in this order:
+//           ROOM    varint room id
+//           ADDED   varint n, n item ids
+//           REMOVED varint n, n item ids
+//           SOLVED  varint n, n puzzle ids
+//           id lists are ascending, each id written as the gap from the one before
+// JOINED marks a new session, whose record carries its whole state; LEFT one that
+// ended. A keyframe holds one ROOM, ADDED, SOLVED record per live session, its whole
+// inventory and every puzzle it solved, and replaces whatever the reader had. Ids are
+// component ids of the frozen World, as in the GameJournal.
+public class StateStream implements Closeable {
+    private static final int MAGIC = 0x45535354; // "ESST"
+    private static final byte VERSION = 1;
+    private static final byte DELTA = 1;
+    private static final byte KEYFRAME = 2;
+
+    private static final int ROOM = 1;
+    private static final int ADDED = 2;
+    private static final int REMOVED = 4;
+    private static final int SOLVED = 8;
+    private static final int JOINED = 16;
+    private static final int LEFT = 32;
+
+    private static final int PENDING_LIMIT = 1 << 16; // Turns waiting for the writer before sessions wait
+    private static final int CLIENT_LIMIT = 4 << 20; // Unsent bytes before a socket client is dropped
+
+    // One session's turn, or the merged turns of one frame
+    private static final class Delta {
+        final int session;
+        int flags;
+        int room;
+        int[] added = new int[4];
+        int addedCount;
+        int[] removed = new int[4];
+        int removedCount;
+        int[] solved = new int[4];
+        int solvedCount;
+
+        Delta(int session) {
+            this.session = session;
+        }
+
+        boolean isEmpty() {
+            return flags == 0;
+        }
+    }
+
+    // What the writer knows of one live session
+    private static final class Mirror {
+        int room;
+        final BitSet items = new BitSet();
+        final BitSet solved = new BitSet();
+    }
+
+    private static final class Client {
+        final SocketChannel channel;
+        ByteBuffer unsent = ByteBuffer.allocate(1024);
+        boolean synced; // Has had a keyframe
+
+        Client(SocketChannel channel) {
+            this.channel = channel;
+        }
+    }
+
+    private final FileChannel file; // Null when serving a socket
+    private final ServerSocketChannel server; // Null when writing a file
+    private final ArrayList<Client> clients = new ArrayList<>(); // Writer thread only
+    private final long startNanos = System.nanoTime();
+    private volatile long frameNanos = TimeUnit.MILLISECONDS.toNanos(100);
+    private volatile long keyframeNanos = TimeUnit.SECONDS.toNanos(5);
+
+    // Turns waiting for the writer; guarded by lock
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition hasRoom = lock.newCondition();
+    private final Condition wake = lock.newCondition();
+    private ArrayList<Delta> pending = new ArrayList<>();
+    private ArrayList<Delta> taken = new ArrayList<>();
+    private boolean closing;
+
+    private final HashMap<Integer, Mirror> mirrors = new HashMap<>(); // Writer thread only
+    private ByteBuffer frame = ByteBuffer.allocate(64 << 10);
+    private long frames;
+    private volatile long written; // Frames of either kind
+    private volatile long keyframes;
+    private volatile long droppedClients;
+    private final Thread writer;
+
+    private StateStream(FileChannel file, ServerSocketChannel server) {
+        this.file = file;
+        this.server = server;
+        this.writer = Thread.ofPlatform().daemon().name("state-stream").start(this::writeLoop);
+    }
+
+    // Frames go to the file, which starts over
+    public static StateStream toFile(Path path) throws IOException {
+        FileChannel file = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        writeFully(file, header());
+        return new StateStream(file, null);
+    }
+
+    // Frames go to every client connected to the address: a loopback port, or a
+    // UnixDomainSocketAddress, whose file is replaced if it exists
+    public static StateStream listen(SocketAddress address) throws IOException {
+        ServerSocketChannel server;
+        if (address instanceof UnixDomainSocketAddress unix) {
+            Files.deleteIfExists(unix.getPath());
+            server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+        } else {
+            server = ServerSocketChannel.open();
+        }
+        server.bind(address);
+        server.configureBlocking(false);
+        return new StateStream(null, server);
+    }
+
+    // A port number means that port on the loopback interface, anything else a
+    // Unix domain socket path
+    public static SocketAddress localAddress(String where) {
+        if (!where.isEmpty() && where.chars().allMatch(Character::isDigit)) {
+            return new InetSocketAddress(InetAddress.getLoopbackAddress(), Integer.parseInt(where));
+        }
+        return UnixDomainSocketAddress.of(where);
+    }
+
+    public void setFrameInterval(long millis) {
+        if (millis < 1) {
+            throw new IllegalArgumentException("The frame interval must be positive");
+        }
+        this.frameNanos = TimeUnit.MILLISECONDS.toNanos(millis);
+    }
+
+    public void setKeyframeInterval(long millis) {
+        if (millis < 1) {
+            throw new IllegalArgumentException("The keyframe interval must be positive");
+        }
+        this.keyframeNanos = TimeUnit.MILLISECONDS.toNanos(millis);
+    }
+
+    public Session open(int session) {
+        return new Session(session);
+    }
+
+    // One player's changes, noted by its session thread and handed over per turn
+    public class Session {
+        private final int id;
+        private Delta turn;
+
+        private Session(int id) {
+            this.id = id;
+            this.turn = new Delta(id);
+        }
+
+        // Everything the player has at the start, sent at once
+        public void joined(Room room, Inventory inventory, SessionState state) {
+            turn = new Delta(id);
+            turn.flags = JOINED | ROOM;
+            turn.room = room.getId();
+            for (Item item : inventory) {
+                added(item);
+            }
+            BitSet solved = state.getSolvedPuzzles();
+            for (int p = solved.nextSetBit(0); p >= 0; p = solved.nextSetBit(p + 1)) {
+                turn.solved = push(turn.solved, turn.solvedCount++, p);
+            }
+            if (turn.solvedCount > 0) turn.flags |= SOLVED;
+            endTurn();
+        }
+
+        public void moved(Room room) {
+            turn.flags |= ROOM;
+            turn.room = room.getId();
+        }
+
+        public void added(Item item) {
+            turn.flags |= ADDED;
+            turn.added = push(turn.added, turn.addedCount++, item.getId());
+        }
+
+        public void removed(Item item) {
+            turn.flags |= REMOVED;
+            turn.removed = push(turn.removed, turn.removedCount++, item.getId());
+        }
+
+        public void solved(Puzzle puzzle) {
+            turn.flags |= SOLVED;
+            turn.solved = push(turn.solved, turn.solvedCount++, puzzle.getId());
+        }
+
+        public void left() {
+            turn.flags |= LEFT;
+            endTurn();
+        }
+
+        // Hands over what changed since the last call, if anything did
+        public void endTurn() {
+            if (turn.isEmpty()) return;
+            Delta done = turn;
+            turn = new Delta(id);
+            submit(done);
+        }
+    }
+
+    private static int[] push(int[] ids, int at, int id) {
+        if (at == ids.length) ids = Arrays.copyOf(ids, ids.length * 2);
+        ids[at] = id;
+        return ids;
+    }
+
+    private void submit(Delta delta) {
+        lock.lock();
+        try {
+            // Only a stalled writer gets here; hold sessions back rather than grow without bound
+            while (pending.size() >= PENDING_LIMIT && !closing) {
+                hasRoom.awaitUninterruptibly();
+            }
+            if (closing) return;
+            pending.add(delta);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getFrames() {
+        return written;
+    }
+
+    public long getKeyframes() {
+        return keyframes;
+    }
+
+    // Socket clients cut off for falling too far behind
+    public long getDroppedClients() {
+        return droppedClients;
+    }
+
+    // Writes what was handed over so far, then stops
+    @Override
+    public void close() throws IOException {
+        lock.lock();
+        try {
+            closing = true;
+            wake.signalAll();
+            hasRoom.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        for (Client client : clients) {
+            client.channel.close();
+        }
+        if (file != null) file.close();
+        if (server != null) server.close();
+    }
+
+    private void writeLoop() {
+        long nextFrame = System.nanoTime();
+        long nextKeyframe = nextFrame;
+        boolean last = false;
+        while (!last) {
+            lock.lock();
+            try {
+                long wait;
+                while (!closing && (wait = nextFrame - System.nanoTime()) > 0) {
+                    wake.awaitNanos(wait);
+                }
+                last = closing;
+                ArrayList<Delta> batch = pending;
+                pending = taken;
+                taken = batch;
+                hasRoom.signalAll();
+            } catch (InterruptedException e) {
+                return;
+            } finally {
+                lock.unlock();
+            }
+
+            long now = System.nanoTime();
+            nextFrame = now + frameNanos;
+            try {
+                accept();
+                LinkedHashMap<Integer, Delta> merged = merge(taken);
+                taken.clear();
+                if (!merged.isEmpty()) {
+                    encodeDelta(merged.values());
+                    send(false);
+                }
+                if (now - nextKeyframe >= 0) {
+                    encodeKeyframe();
+                    send(true);
+                    nextKeyframe = now + keyframeNanos;
+                }
+                flushClients();
+            } catch (IOException e) {
+                System.err.println("State stream stopped: " + e.getMessage());
+                lock.lock();
+                try {
+                    closing = true;
+                    hasRoom.signalAll();
+                } finally {
+                    lock.unlock();
+                }
+                return;
+            }
+        }
+    }
+
+    // One Delta per session for the frame, net of the mirror, which it brings up to date
+    private LinkedHashMap<Integer, Delta> merge(ArrayList<Delta> turns) {
+        LinkedHashMap<Integer, Delta> merged = new LinkedHashMap<>();
+        for (Delta turn : turns) {
+            Mirror mirror = mirrors.get(turn.session);
+            if ((turn.flags & JOINED) != 0) {
+                mirror = new Mirror();
+                mirrors.put(turn.session, mirror);
+                merged.put(turn.session, new Delta(turn.session));
+            } else if (mirror == null) {
+                continue; // Left already
+            }
+            Delta frameDelta = merged.computeIfAbsent(turn.session, Delta::new);
+            frameDelta.flags |= turn.flags & (JOINED | LEFT);
+            if ((turn.flags & ROOM) != 0 && (mirror.room != turn.room || (turn.flags & JOINED) != 0)) {
+                mirror.room = turn.room;
+                frameDelta.flags |= ROOM;
+                frameDelta.room = turn.room;
+            }
+            for (int i = 0; i < turn.addedCount; i++) {
+                int item = turn.added[i];
+                if (mirror.items.get(item)) continue;
+                mirror.items.set(item);
+                if (!drop(frameDelta.removed, frameDelta.removedCount, item)) {
+                    frameDelta.added = push(frameDelta.added, frameDelta.addedCount++, item);
+                } else {
+                    frameDelta.removedCount--;
+                }
+            }
+            for (int i = 0; i < turn.removedCount; i++) {
+                int item = turn.removed[i];
+                if (!mirror.items.get(item)) continue;
+                mirror.items.clear(item);
+                if (!drop(frameDelta.added, frameDelta.addedCount, item)) {
+                    frameDelta.removed = push(frameDelta.removed, frameDelta.removedCount++, item);
+                } else {
+                    frameDelta.addedCount--;
+                }
+            }
+            for (int i = 0; i < turn.solvedCount; i++) {
+                int puzzle = turn.solved[i];
+                if (mirror.solved.get(puzzle)) continue;
+                mirror.solved.set(puzzle);
+                frameDelta.solved = push(frameDelta.solved, frameDelta.solvedCount++, puzzle);
+            }
+            if ((turn.flags & LEFT) != 0) mirrors.remove(turn.session);
+        }
+        for (Iterator<Delta> it = merged.values().iterator(); it.hasNext(); ) {
+            Delta delta = it.next();
+            if (delta.addedCount > 0) delta.flags |= ADDED; else delta.flags &= ~ADDED;
+            if (delta.removedCount > 0) delta.flags |= REMOVED; else delta.flags &= ~REMOVED;
+            if (delta.solvedCount > 0) delta.flags |= SOLVED;
+            if (delta.isEmpty()) it.remove();
+        }
+        return merged;
+    }
+
+    // Takes the id out of the first `count` by moving the last one into its place
+    private static boolean drop(int[] ids, int count, int id) {
+        for (int i = 0; i < count; i++) {
+            if (ids[i] == id) {
+                ids[i] = ids[count - 1];
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void encodeDelta(Iterable<Delta> deltas) {
+        int count = 0;
+        for (Delta ignored : deltas) count++;
+        startFrame(DELTA, count);
+        for (Delta delta : deltas) {
+            putVarint(delta.session);
+            ensure(1);
+            frame.put((byte) delta.flags);
+            if ((delta.flags & ROOM) != 0) putVarint(delta.room);
+            if ((delta.flags & ADDED) != 0) putIds(delta.added, delta.addedCount);
+            if ((delta.flags & REMOVED) != 0) putIds(delta.removed, delta.removedCount);
+            if ((delta.flags & SOLVED) != 0) putIds(delta.solved, delta.solvedCount);
+        }
+        endFrame();
+    }
+
+    private void encodeKeyframe() {
+        startFrame(KEYFRAME, mirrors.size());
+        for (Map.Entry<Integer, Mirror> entry : mirrors.entrySet()) {
+            Mirror mirror = entry.getValue();
+            putVarint(entry.getKey());
+            ensure(1);
+            frame.put((byte) (ROOM | ADDED | SOLVED));
+            putVarint(mirror.room);
+            putBits(mirror.items);
+            putBits(mirror.solved);
+        }
+        endFrame();
+        keyframes++;
+    }
+
+    private void startFrame(byte kind, int records) {
+        frame.clear();
+        frame.position(4);
+        frame.put(kind);
+        putVarint(frames++);
+        putVarint(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos));
+        putVarint(records);
+    }
+
+    private void endFrame() {
+        frame.putInt(0, frame.position() - 4);
+        frame.flip();
+        written++;
+    }
+
+    private void putIds(int[] ids, int count) {
+        Arrays.sort(ids, 0, count);
+        putVarint(count);
+        int previous = 0;
+        for (int i = 0; i < count; i++) {
+            putVarint(ids[i] - previous);
+            previous = ids[i];
+        }
+    }
+
+    private void putBits(BitSet bits) {
+        putVarint(bits.cardinality());
+        int previous = 0;
+        for (int id = bits.nextSetBit(0); id >= 0; id = bits.nextSetBit(id + 1)) {
+            putVarint(id - previous);
+            previous = id;
+        }
+    }
+
+    private void putVarint(long value) {
+        ensure(10);
+        while ((value & ~0x7FL) != 0) {
+            frame.put((byte) (value & 0x7F | 0x80));
+            value >>>= 7;
+        }
+        frame.put((byte) value);
+    }
+
+    private void ensure(int bytes) {
+        if (frame.remaining() < bytes) {
+            ByteBuffer bigger = ByteBuffer.allocate(Math.max(frame.capacity() * 2, frame.position() + bytes));
+            frame.flip();
+            bigger.put(frame);
+            frame = bigger;
+        }
+    }
+
+    private static ByteBuffer header() {
+        return ByteBuffer.allocate(5).putInt(MAGIC).put(VERSION).flip();
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private void accept() throws IOException {
+        if (server == null) return;
+        for (SocketChannel channel = server.accept(); channel != null; channel = server.accept()) {
+            channel.configureBlocking(false);
+            Client client = new Client(channel);
+            client.unsent.put(header());
+            clients.add(client);
+        }
+    }
+
+    // The encoded frame to the file, or to each client that can use it
+    private void send(boolean keyframe) throws IOException {
+        if (file != null) {
+            writeFully(file, frame);
+            return;
+        }
+        for (Iterator<Client> it = clients.iterator(); it.hasNext(); ) {
+            Client client = it.next();
+            if (!client.synced && !keyframe) continue;
+            client.synced = true;
+            if (client.unsent.position() + frame.remaining() > CLIENT_LIMIT) {
+                droppedClients++;
+                client.channel.close();
+                it.remove();
+                continue;
+            }
+            if (client.unsent.remaining() < frame.remaining()) {
+                ByteBuffer bigger = ByteBuffer.allocate(Math.max(client.unsent.capacity() * 2,
+                        client.unsent.position() + frame.remaining()));
+                client.unsent.flip();
+                bigger.put(client.unsent);
+                client.unsent = bigger;
+            }
+            client.unsent.put(frame.duplicate());
+        }
+    }
+
+    // Whatever each socket takes without blocking; the rest waits for the next frame
+    private void flushClients() {
+        for (Iterator<Client> it = clients.iterator(); it.hasNext(); ) {
+            Client client = it.next();
+            if (client.unsent.position() == 0) continue;
+            try {
+                client.unsent.flip();
+                client.channel.write(client.unsent);
+                client.unsent.compact();
+            } catch (IOException e) {
+                // Gone; nothing to clean up but the channel
+                try {
+                    client.channel.close();
+                } catch (IOException ignored) {
+                    // Already closed
+                }
+                it.remove();
+            }
+        }
+    }
+
+    // Prints a stream, frame by frame, from the first keyframe on
+    public static void dump(ReadableByteChannel in, PrintStream out) throws IOException {
+        ByteBuffer header = readFully(in, ByteBuffer.allocate(5));
+        if (header == null || header.getInt() != MAGIC || header.get() != VERSION) {
+            throw new IOException("not a state stream");
+        }
+        boolean synced = false;
+        ByteBuffer length = ByteBuffer.allocate(4);
+        while (readFully(in, length.clear()) != null) {
+            ByteBuffer body = readFully(in, ByteBuffer.allocate(length.getInt()));
+            if (body == null) throw new EOFException("stream ends inside a frame");
+            byte kind = body.get();
+            synced |= kind == KEYFRAME;
+            if (!synced) continue;
+            long number = getVarint(body);
+            long millis = getVarint(body);
+            long records = getVarint(body);
+            out.printf("%s #%d at %d ms, %d session%s%n", kind == KEYFRAME ? "keyframe" : "delta",
+                    number, millis, records, records == 1 ? "" : "s");
+            for (long r = 0; r < records; r++) {
+                StringBuilder line = new StringBuilder("  session ").append(getVarint(body));
+                int flags = body.get();
+                if ((flags & JOINED) != 0) line.append(" joined");
+                if ((flags & ROOM) != 0) line.append(" room=").append(getVarint(body));
+                if ((flags & ADDED) != 0) line.append(" +items=").append(getIds(body));
+                if ((flags & REMOVED) != 0) line.append(" -items=").append(getIds(body));
+                if ((flags & SOLVED) != 0) line.append(" solved=").append(getIds(body));
+                if ((flags & LEFT) != 0) line.append(" left");
+                out.println(line);
+            }
+        }
+    }
+
+    // The buffer filled and flipped, or null at a clean end of stream
+    private static ByteBuffer readFully(ReadableByteChannel in, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (in.read(buffer) < 0) {
+                if (buffer.position() == 0) return null;
+                throw new EOFException("stream ends inside a frame");
+            }
+        }
+        return buffer.flip();
+    }
+
+    private static long getVarint(ByteBuffer in) {
+        long value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = in.get();
+            value |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while (b < 0);
+        return value;
+    }
+
+    private static String getIds(ByteBuffer in) {
+        long count = getVarint(in);
+        StringBuilder ids = new StringBuilder("[");
+        long id = 0;
+        for (long i = 0; i < count; i++) {
+            id += getVarint(in);
+            ids.append(i == 0 ? "" : ",").append(id);
+        }
+        return ids.append(']').toString();
+    }
+
+    // Usage: StateStream <stream file>
+    //        StateStream --connect <port or socket path>
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            System.out.println("Usage: StateStream <stream file>");
+            System.out.println("       StateStream --connect <port or socket path>");
+            return;
+        }
+        if (args[0].equals("--connect") && args.length > 1) {
+            try (SocketChannel channel = SocketChannel.open(localAddress(args[1]))) {
+                dump(channel, System.out);
+            }
+        } else {
+            try (FileChannel channel = FileChannel.open(Path.of(args[0]))) {
+                dump(channel, System.out);
+            }
+        }
+    }
+}
@@ -0,0 +1,231 @@
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+// Timers for every session of a World, on one hierarchical timing wheel: four wheels
+// of 256 slots, the first one tick per slot, each next one 256 times coarser, so the
+// wheels span 2^32 ticks (about 16 months at 10 ms). A timer sits in the slot of the
+// coarsest wheel its deadline needs and drops to finer wheels as its time comes
+// closer; every slot is a doubly linked list, so adding and removing are O(1) and
+// millions of pending timers cost one small object each.
+//
+// Only the wheel's own thread touches the slots. schedule() and cancel() just queue
+// the change for it, so callers never wait on each other. Due tasks run on that
+// thread and must be short: sessions hand them on to themselves (see
+// GameEngine.schedule) and pick them up on their next turn, so an idle session is
+// never woken. With nothing scheduled the thread sleeps until the next schedule().
+public class TimerWheel {
+    private static final int SLOT_BITS = 8;
+    private static final int SLOTS = 1 << SLOT_BITS;
+    private static final int MASK = SLOTS - 1;
+    private static final int LEVELS = 4;
+    private static final long SPAN = 1L << (SLOT_BITS * LEVELS); // Ticks the wheels can tell apart
+
+    private static final int PENDING = 0;
+    private static final int CANCELLED = 1;
+    private static final int EXPIRED = 2;
+    private static final VarHandle STATE;
+
+    static {
+        try {
+            STATE = MethodHandles.lookup().findVarHandle(Timeout.class, "state", int.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private final long tickNanos;
+    private final long startNanos;
+    private final Timeout[][] wheels; // Sentinel of each slot's ring list
+    private long tick; // Next tick to run; wheel thread only
+    private long linked; // Timers in the slots; wheel thread only
+
+    private final ConcurrentLinkedQueue<Timeout> added;
+    private final ConcurrentLinkedQueue<Timeout> cancelled;
+    private final AtomicLong pending;
+    private final AtomicLong expired;
+    private Thread worker; // Started by the first schedule()
+    private volatile boolean sleeping;
+
+    // A scheduled task; cancel it to stop it from running
+    public static final class Timeout {
+        private final TimerWheel wheel;
+        private final Runnable task;
+        private final long deadline; // Tick
+        private volatile int state;
+        private Timeout prev;
+        private Timeout next;
+
+        private Timeout(TimerWheel wheel, Runnable task, long deadline) {
+            this.wheel = wheel;
+            this.task = task;
+            this.deadline = deadline;
+        }
+
+        // False if it already ran or was cancelled before
+        public boolean cancel() {
+            if (!STATE.compareAndSet(this, PENDING, CANCELLED)) return false;
+            wheel.pending.decrementAndGet();
+            wheel.cancelled.add(this);
+            return true;
+        }
+
+        public boolean isCancelled() {
+            return state == CANCELLED;
+        }
+
+        public boolean isExpired() {
+            return state == EXPIRED;
+        }
+    }
+
+    public TimerWheel() {
+        this(10, TimeUnit.MILLISECONDS);
+    }
+
+    public TimerWheel(long tick, TimeUnit unit) {
+        if (tick <= 0) {
+            throw new IllegalArgumentException("The tick must be positive");
+        }
+        this.tickNanos = unit.toNanos(tick);
+        this.startNanos = System.nanoTime();
+        this.wheels = new Timeout[LEVELS][SLOTS];
+        for (Timeout[] wheel : wheels) {
+            for (int i = 0; i < SLOTS; i++) {
+                Timeout sentinel = new Timeout(this, null, 0);
+                sentinel.prev = sentinel;
+                sentinel.next = sentinel;
+                wheel[i] = sentinel;
+            }
+        }
+        this.added = new ConcurrentLinkedQueue<>();
+        this.cancelled = new ConcurrentLinkedQueue<>();
+        this.pending = new AtomicLong();
+        this.expired = new AtomicLong();
+    }
+
+    // Runs the task on the wheel's thread once the delay has passed, rounded up to
+    // whole ticks. Tick t runs at startNanos + t * tickNanos, so the deadline is
+    // counted from now, not from the start of the current tick.
+    public Timeout schedule(long delay, TimeUnit unit, Runnable task) {
+        long nanos = Math.max(0, unit.toNanos(delay));
+        long due = System.nanoTime() - startNanos + nanos;
+        long deadline = (due + tickNanos - 1) / tickNanos;
+        Timeout timeout = new Timeout(this, task, deadline);
+        pending.incrementAndGet();
+        added.add(timeout);
+        start();
+        if (sleeping) LockSupport.unpark(worker);
+        return timeout;
+    }
+
+    private synchronized void start() {
+        if (worker == null) {
+            worker = Thread.ofPlatform().daemon().name("timer-wheel").start(this::run);
+        }
+    }
+
+    private long currentTick() {
+        return (System.nanoTime() - startNanos) / tickNanos;
+    }
+
+    // Scheduled and neither run nor cancelled yet
+    public long getPending() {
+        return pending.get();
+    }
+
+    public long getExpired() {
+        return expired.get();
+    }
+
+    private void run() {
+        while (true) {
+            drain();
+            long now = currentTick();
+            if (linked == 0) {
+                tick = Math.max(tick, now + 1); // Nothing to run on the way
+            }
+            while (tick <= now) {
+                advance();
+                drain();
+            }
+            if (linked == 0 && added.isEmpty()) {
+                // Say we are about to sleep, then look once more, so schedule()
+                // either sees the flag or we see its timer
+                sleeping = true;
+                if (added.isEmpty()) LockSupport.park(this);
+                sleeping = false;
+            } else {
+                LockSupport.parkNanos(this, startNanos + tick * tickNanos - System.nanoTime());
+            }
+        }
+    }
+
+    private void drain() {
+        for (Timeout t = cancelled.poll(); t != null; t = cancelled.poll()) {
+            if (t.next != null) unlink(t);
+        }
+        for (Timeout t = added.poll(); t != null; t = added.poll()) {
+            if (t.state == PENDING) link(t);
+        }
+    }
+
+    // Runs tick `tick`: when the finest wheel comes round, the next slot of each
+    // coarser wheel that came round as well is spread over the finer ones first
+    private void advance() {
+        for (int level = 1; level < LEVELS; level++) {
+            if ((tick & ((1L << (SLOT_BITS * level)) - 1)) != 0) break;
+            cascade(level, (int) (tick >>> (SLOT_BITS * level)) & MASK);
+        }
+        Timeout sentinel = wheels[0][(int) tick & MASK];
+        for (Timeout t = sentinel.next; t != sentinel; t = sentinel.next) {
+            unlink(t);
+            if (STATE.compareAndSet(t, PENDING, EXPIRED)) {
+                pending.decrementAndGet();
+                expired.incrementAndGet();
+                try {
+                    t.task.run();
+                } catch (RuntimeException e) {
+                    // One broken task must not stop the others
+                }
+            }
+        }
+        tick++;
+    }
+
+    private void cascade(int level, int slot) {
+        Timeout sentinel = wheels[level][slot];
+        for (Timeout t = sentinel.next; t != sentinel; t = sentinel.next) {
+            unlink(t);
+            link(t);
+        }
+    }
+
+    // Into the slot for its deadline, measured from the tick about to run
+    private void link(Timeout t) {
+        long deadline = Math.max(t.deadline, tick);
+        long delta = Math.min(deadline - tick, SPAN - 1);
+        int level = 0;
+        while (level < LEVELS - 1 && delta >= 1L << (SLOT_BITS * (level + 1))) {
+            level++;
+        }
+        long at = level == LEVELS - 1 ? tick + delta : deadline;
+        Timeout sentinel = wheels[level][(int) (at >>> (SLOT_BITS * level)) & MASK];
+        t.prev = sentinel.prev;
+        t.next = sentinel;
+        sentinel.prev.next = t;
+        sentinel.prev = t;
+        linked++;
+    }
+
+    private void unlink(Timeout t) {
+        t.prev.next = t.next;
+        t.next.prev = t.prev;
+        t.prev = null;
+        t.next = null;
+        linked--;
+    }
+}
@@ -0,0 +1,40 @@
+import java.util.concurrent.atomic.AtomicLong;
+
+// Token bucket kept as one timestamp (the "virtual scheduling" form of GCRA): the
+// time at which the bucket would be full again. Taking a token is one CAS; once the
+// bucket is empty, refused attempts only read, so a flood of them stays cheap even
+// when many threads share the bucket.
+final class TokenBucket {
+    private final long interval; // Nanoseconds per token
+    private final long tolerance; // How far ahead of now the schedule may run: burst - 1 tokens
+    private final AtomicLong fullAt;
+
+    TokenBucket(int burst, double perSecond) {
+        this.interval = (long) (1e9 / perSecond);
+        this.tolerance = interval * (burst - 1);
+        this.fullAt = new AtomicLong(Long.MIN_VALUE);
+    }
+
+    boolean tryTake(long now) {
+        while (true) {
+            long scheduled = fullAt.get();
+            long base = Math.max(scheduled, now);
+            if (base - now > tolerance) {
+                return false;
+            }
+            if (fullAt.compareAndSet(scheduled, base + interval)) {
+                return true;
+            }
+        }
+    }
+
+    // Every token back
+    boolean isFull(long now) {
+        return fullAt.get() <= now;
+    }
+
+    // Time until tryTake can succeed again, 0 if it can now
+    long nanosUntilToken(long now) {
+        return Math.max(0, fullAt.get() - tolerance - now);
+    }
+}
@@ -0,0 +1,303 @@
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+// World template: rooms, items, puzzles and hints.
+// Built once, then frozen and shared read-only by every session. Progress is kept
+// per session in a SessionState overlay indexed by the dense component ids.
+public class World {
+    private ArrayList<Room> rooms;
+    private ArrayList<String> hints;
+    private ArrayList<GameComponent> components; // Indexed by id once frozen
+    private boolean frozen;
+    private PathOracle pathOracle; // Built on first use
+    private RoomStore store; // Set for paged worlds, whose rooms live in the file
+    private GameMetrics metrics; // Created on first use
+    private AnswerGuard answerGuard; // Created on first use
+    private EventBus events; // Created on first use
+    private TimerWheel scheduler; // Created on first use
+
+    public World() {
+        this.rooms = new ArrayList<>();
+        this.hints = new ArrayList<>();
+        this.components = new ArrayList<>();
+    }
+
+    // Paged world: frozen from the start, rooms and their contents come from the store
+    World(RoomStore store, List<String> hints) {
+        this.rooms = null;
+        this.hints = new ArrayList<>(hints);
+        this.components = null;
+        this.store = store;
+        this.frozen = true;
+    }
+
+    // The first room added is where players start
+    public void addRoom(Room room) {
+        checkMutable();
+        rooms.add(room);
+    }
+
+    public void addHint(String hint) {
+        checkMutable();
+        hints.add(hint);
+    }
+
+    // Give every room, content and puzzle reward a dense id and make it read-only.
+    // Rooms only reachable through exits are picked up as well.
+    public synchronized void freeze() {
+        if (frozen) return;
+
+        for (Room room : rooms) {
+            register(room);
+        }
+        for (int i = 0; i < rooms.size(); i++) {
+            Room room = rooms.get(i);
+            for (GameComponent component : room.getContents()) {
+                register(component);
+                register(rewardOf(component));
+            }
+            for (Room next : room.getConnectedRooms()) {
+                if (!next.isFrozen()) {
+                    register(next);
+                    rooms.add(next);
+                }
+            }
+        }
+        frozen = true;
+    }
+
+    // Like freeze(), but the listed rooms, then these components, take the first ids in
+    // order: rooms 0..R-1, then item i as R + i and puzzle p as R + items + p, the
+    // numbering a paged world uses too, so saved progress fits either way of loading
+    synchronized void freezeInOrder(GameComponent[] components) {
+        if (frozen) return;
+
+        for (Room room : rooms) {
+            register(room);
+        }
+        for (GameComponent component : components) {
+            register(component);
+        }
+        freeze();
+    }
+
+    private void register(GameComponent component) {
+        if (component == null || component.isFrozen()) return;
+        component.freeze(components.size());
+        components.add(component);
+    }
+
+    // The item a puzzle hands out when solved, null for anything else
+    static Item rewardOf(GameComponent component) {
+        return component instanceof Puzzle ? ((Puzzle) component).getReward() : null;
+    }
+
+    private void checkMutable() {
+        if (frozen) {
+            throw new IllegalStateException("World is frozen and cannot be changed");
+        }
+    }
+
+    // Shared route planner for hints and map queries; freezes the world if needed.
+    // Null for paged worlds: the planner needs every room in memory at once.
+    public synchronized PathOracle getPathOracle() {
+        if (store != null) return null;
+        if (pathOracle == null) {
+            pathOracle = new PathOracle(this);
+        }
+        return pathOracle;
+    }
+
+    // Counters shared by every session playing this world
+    public synchronized GameMetrics getMetrics() {
+        if (metrics == null) {
+            metrics = new GameMetrics(this);
+        }
+        return metrics;
+    }
+
+    // What players do in this world, for whoever subscribes
+    public synchronized EventBus getEvents() {
+        if (events == null) {
+            events = new EventBus();
+        }
+        return events;
+    }
+
+    // Timers of every session playing this world
+    public synchronized TimerWheel getScheduler() {
+        if (scheduler == null) {
+            scheduler = new TimerWheel();
+        }
+        return scheduler;
+    }
+
+    // Rate limits on puzzle answers; configure before sessions start
+    public synchronized AnswerGuard getAnswerGuard() {
+        if (answerGuard == null) {
+            answerGuard = new AnswerGuard();
+        }
+        return answerGuard;
+    }
+
+    public boolean isFrozen() {
+        return frozen;
+    }
+
+    public boolean isPaged() {
+        return store != null;
+    }
+
+    // Room cache of a paged world, null otherwise
+    public RoomStore getStore() {
+        return store;
+    }
+
+    // Stops the room store's background loading, for paged worlds; the world can
+    // still be played afterwards
+    public void close() {
+        if (store != null) store.close();
+    }
+
+    public int getComponentCount() {
+        return store != null ? store.componentCount() : components.size();
+    }
+
+    // In a paged world items and puzzles are read afresh, so compare them by id
+    public GameComponent getComponent(int id) {
+        return store != null ? store.component(id) : components.get(id);
+    }
+
+    public Room getStartRoom() {
+        return store != null ? store.room(0) : rooms.get(0);
+    }
+
+    // For paged worlds a view that loads rooms as they are read
+    public List<Room> getRooms() {
+        return store != null ? store.rooms() : Collections.unmodifiableList(rooms);
+    }
+
+    public List<String> getHints() {
+        return Collections.unmodifiableList(hints);
+    }
+
+    // Load a world file, text or compiled; the format is detected from the file header.
+    // All rooms are built at once, which for big worlds takes seconds even when
+    // compiled; openPaged starts them in milliseconds
+    public static World load(Path path) throws IOException, WorldFormatException {
+        if (WorldBinaryFormat.isBinary(path)) {
+            return WorldBinaryFormat.load(path);
+        }
+        return WorldDefinition.load(path).build();
+    }
+
+    // Compiled world whose rooms are read from the file on demand, at most about
+    // cachedRooms of them in memory at once
+    public static World openPaged(Path path, int cachedRooms) throws IOException, WorldFormatException {
+        if (!WorldBinaryFormat.isBinary(path)) {
+            throw new WorldFormatException(path + " is not a compiled world; run WorldCompiler on it first");
+        }
+        return WorldBinaryFormat.openPaged(path, cachedRooms);
+    }
+
+    // Compiled world copied into a CompactWorld, whose rooms are built from memory on
+    // demand, at most about cachedRooms of them at once; the file is not kept open
+    public static World openCompact(Path path, int cachedRooms) throws IOException, WorldFormatException {
+        CompactWorld data = CompactWorld.load(path);
+        if (data.roomCount() == 0) {
+            throw new WorldFormatException("world has no rooms");
+        }
+        return new World(new RoomStore(data, cachedRooms), data.hints());
+    }
+
+    // The built-in six room escape
+    public static World createDefault() {
+        // Create rooms
+        Room entrance = new Room("Entrance Hall", false);
+        Room library = new Room("Library", false);
+        Room corridor = new Room("Secret Corridor", false);
+        Room basement = new Room("Dark Basement", false);
+        Room treasury = new Room("Treasury", false);
+        Room exitRoom = new Room("Exit Door", true);
+
+        // Create items
+        Item rustyKey = new Item("Rusty Key", 10, "KEY");
+        Item goldKey = new Item("Gold Key", 50, "KEY");
+        Item flashlight = new Item("Flashlight", 20, "TOOL");
+        Item clue1 = new Item("Mysterious Note", 5, "CLUE");
+        Item torchItem = new Item("Torch", 25, "TOOL");
+
+        // Create puzzles with rewards; only the answers' digests are kept here, the
+        // answers themselves are in worlds/default.world
+        RiddlePuzzle riddle1 = new RiddlePuzzle(
+                "Ancient Riddle",
+                3,
+                "I speak without a mouth and hear without ears. I have no body, but I come alive with wind. What am I?",
+                HashedAnswer.precomputed(true, "251d97f72f7ec10e37eb56fc32d807da",
+                        "b10b7581735f6753cb152ae466664443354dabc5d1f0e804fbbc8b860da2d86d",
+                        "9dd681ad977f3e3b8c5c2c6af4a7c2a6269a4bdaebe261a5a516518c7c5444ad"),
+                rustyKey
+        );
+
+        // Puzzle to unlock path to basement (answer reveals connection)
+        RiddlePuzzle corridorPuzzle = new RiddlePuzzle(
+                "Guardian Riddle",
+                4,
+                "What has keys but no locks, space but no room, and you can enter but can't go inside?",
+                HashedAnswer.precomputed(true, "d081edb161b4f8f922487bf1fd24d9d3",
+                        "a59a8383928bd757f3e4932ec956d1cf562185fb46d56bff6d52a3e6289c2c36",
+                        "ba701e03d70f6c44091fcd3bb20ae8679438299dd0ff23054bb7ba98e4353da6"),
+                torchItem
+        );
+
+        CodePuzzle codeLock = new CodePuzzle(
+                "Safe Lock",
+                5,
+                HashedAnswer.precomputed(false, "20f04dcf6cf340dd74d3e2fc5534ad00",
+                        "eabab325da7802945af3fdffb6b2b1d629fd53b5f42a79636676c1b34f876122"),
+                "The code is the first four counting numbers",
+                goldKey
+        );
+
+        // Add contents to rooms
+        entrance.addContent(flashlight);
+        entrance.addContent(riddle1);
+        library.addContent(clue1);
+        library.addContent(codeLock);
+        corridor.addContent(corridorPuzzle);
+        basement.addContent(new Item("Old Coin", 15, "TOOL"));
+
+        // Connect rooms - corridor is required to reach basement
+        entrance.connectRoom(library);
+        entrance.connectRoom(corridor);
+        library.connectRoom(treasury);
+        corridor.connectRoom(basement); // Only corridor connects to basement
+        basement.connectRoom(exitRoom);
+
+        // Set locks
+        basement.setRequiredKey("Rusty Key");
+        treasury.setRequiredKey("Gold Key");
+
+        // Add to map
+        World world = new World();
+        world.addRoom(entrance);
+        world.addRoom(library);
+        world.addRoom(corridor);
+        world.addRoom(basement);
+        world.addRoom(treasury);
+        world.addRoom(exitRoom);
+
+        // Add hints
+        world.addHint("Try exploring all rooms first.");
+        world.addHint("Some puzzles give you keys as rewards.");
+        world.addHint("The Secret Corridor might lead somewhere important.");
+        world.addHint("Use 'back' to retrace your steps.");
+        world.addHint("Check your inventory with 'inventory' command.");
+
+        world.freeze();
+        return world;
+    }
+}
@@ -0,0 +1,549 @@
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+// Compiled world format, read through a memory-mapped file. Files over 2 GiB are
+// mapped in pieces, so all positions in the file are longs.
+//
+// All ints are big-endian. After the header come these sections, in order:
+//   string table  int[strings + 1] byte offsets, then the UTF-8 bytes (padded to 4)
+//   items         key, name, value, type                      (4 ints each)
+//   puzzles       type, key, name, difficulty, text, answer, reward (7 ints each)
+//   rooms         key, name, flags, firstEdge, firstContent    (5 ints each)
+//   edges         target room                                  (CSR, grouped by room)
+//   contents      component                                    (CSR, grouped by room)
+//   locks         room, key item                               (2 ints each)
+//   hints         string
+// Every string is stored once; records refer to it by index.
+public class WorldBinaryFormat {
+    public static final int MAGIC = 0x45534357; // "ESCW"
+    public static final int VERSION = 2; // 1 had puzzle kind 0 (riddle) or 1 (code) instead of a type name
+
+    private static final int HEADER_INTS = 10;
+    private static final int ITEM_INTS = 4;
+    private static final int PUZZLE_INTS = 7;
+    private static final int ROOM_INTS = 5;
+    private static final int LOCK_INTS = 2;
+    private static final int FLAG_EXIT = 1;
+
+    private WorldBinaryFormat() {
+    }
+
+    // True if the file starts with the binary magic number
+    public static boolean isBinary(Path path) throws IOException {
+        try (InputStream in = Files.newInputStream(path)) {
+            byte[] head = in.readNBytes(4);
+            return head.length == 4 && ByteBuffer.wrap(head).getInt() == MAGIC;
+        }
+    }
+
+    public static void write(WorldDefinition def, Path path) throws IOException, WorldFormatException {
+        def.validate();
+
+        // Intern every string
+        ArrayList<String> strings = new ArrayList<>();
+        HashMap<String, Integer> stringIds = new HashMap<>();
+        for (WorldDefinition.RoomDef room : def.rooms) {
+            intern(room.key, strings, stringIds);
+            intern(room.name, strings, stringIds);
+        }
+        for (WorldDefinition.ItemDef item : def.items) {
+            intern(item.key, strings, stringIds);
+            intern(item.name, strings, stringIds);
+            intern(item.type, strings, stringIds);
+        }
+        for (WorldDefinition.PuzzleDef puzzle : def.puzzles) {
+            intern(puzzle.type, strings, stringIds);
+            intern(puzzle.key, strings, stringIds);
+            intern(puzzle.name, strings, stringIds);
+            intern(puzzle.text, strings, stringIds);
+            intern(puzzle.answer, strings, stringIds);
+        }
+        for (String hint : def.hints) {
+            intern(hint, strings, stringIds);
+        }
+
+        int roomCount = def.rooms.size();
+        int[] edgeStart = new int[roomCount + 1];
+        int[] edgeTargets = groupByRoom(def.edges, roomCount, edgeStart);
+        int[] contentStart = new int[roomCount + 1];
+        int[] contentTargets = groupByRoom(def.contents, roomCount, contentStart);
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(strings.size());
+            out.writeInt(roomCount);
+            out.writeInt(def.items.size());
+            out.writeInt(def.puzzles.size());
+            out.writeInt(edgeTargets.length);
+            out.writeInt(contentTargets.length);
+            out.writeInt(def.locks.size());
+            out.writeInt(def.hints.size());
+
+            byte[][] encoded = new byte[strings.size()][];
+            int offset = 0;
+            for (int i = 0; i < encoded.length; i++) {
+                encoded[i] = strings.get(i).getBytes(StandardCharsets.UTF_8);
+                out.writeInt(offset);
+                offset += encoded[i].length;
+            }
+            out.writeInt(offset);
+            for (byte[] bytes : encoded) {
+                out.write(bytes);
+            }
+            for (int pad = offset; pad % 4 != 0; pad++) {
+                out.writeByte(0);
+            }
+
+            for (WorldDefinition.ItemDef item : def.items) {
+                out.writeInt(stringIds.get(item.key));
+                out.writeInt(stringIds.get(item.name));
+                out.writeInt(item.value);
+                out.writeInt(stringIds.get(item.type));
+            }
+            for (WorldDefinition.PuzzleDef puzzle : def.puzzles) {
+                out.writeInt(stringIds.get(puzzle.type));
+                out.writeInt(stringIds.get(puzzle.key));
+                out.writeInt(stringIds.get(puzzle.name));
+                out.writeInt(puzzle.difficulty);
+                out.writeInt(stringIds.get(puzzle.text));
+                out.writeInt(stringIds.get(puzzle.answer));
+                out.writeInt(puzzle.reward);
+            }
+            for (int i = 0; i < roomCount; i++) {
+                WorldDefinition.RoomDef room = def.rooms.get(i);
+                out.writeInt(stringIds.get(room.key));
+                out.writeInt(stringIds.get(room.name));
+                out.writeInt(room.exit ? FLAG_EXIT : 0);
+                out.writeInt(edgeStart[i]);
+                out.writeInt(contentStart[i]);
+            }
+            for (int target : edgeTargets) {
+                out.writeInt(target);
+            }
+            for (int target : contentTargets) {
+                out.writeInt(target);
+            }
+            for (int[] lock : def.locks) {
+                out.writeInt(lock[0]);
+                out.writeInt(lock[1]);
+            }
+            for (String hint : def.hints) {
+                out.writeInt(stringIds.get(hint));
+            }
+        }
+    }
+
+    private static void intern(String s, ArrayList<String> strings, HashMap<String, Integer> stringIds) {
+        if (!stringIds.containsKey(s)) {
+            stringIds.put(s, strings.size());
+            strings.add(s);
+        }
+    }
+
+    // Stable counting sort of {room, target} pairs into CSR order
+    static int[] groupByRoom(ArrayList<int[]> pairs, int roomCount, int[] start) {
+        for (int[] pair : pairs) {
+            start[pair[0] + 1]++;
+        }
+        for (int i = 0; i < roomCount; i++) {
+            start[i + 1] += start[i];
+        }
+        int[] next = start.clone();
+        int[] targets = new int[pairs.size()];
+        for (int[] pair : pairs) {
+            targets[next[pair[0]]++] = pair[1];
+        }
+        return targets;
+    }
+
+    // Section offsets of a mapped world file, checked against the file size. Also reads
+    // single records for the eager loader and, as WorldData, for RoomStore.
+    static class Layout implements WorldData {
+        final MappedFile buf;
+        final int version;
+        final int stringCount, roomCount, itemCount, puzzleCount, edgeCount, contentCount, lockCount, hintCount;
+        final long stringOffsets, stringBytes, items, puzzles, rooms, edges, contents, locks, hints;
+        final String[] stringCache;
+        byte[] scratch = new byte[64];
+        private volatile HashMap<Integer, Integer> lockIndex; // Room -> key item
+
+        Layout(MappedFile buf) throws WorldFormatException {
+            this(buf, true);
+        }
+
+        // Without the string cache, string() is safe to call from many threads and
+        // holds on to nothing; RoomStore reads that way
+        Layout(MappedFile buf, boolean cacheStrings) throws WorldFormatException {
+            this.buf = buf;
+            if (buf.size() < HEADER_INTS * 4 || buf.getInt(0) != MAGIC) {
+                throw new WorldFormatException("not a compiled world file");
+            }
+            version = buf.getInt(4);
+            if (version != VERSION && version != 1) {
+                throw new WorldFormatException("unsupported world file version " + buf.getInt(4));
+            }
+            stringCount = count(buf, 8);
+            roomCount = count(buf, 12);
+            itemCount = count(buf, 16);
+            puzzleCount = count(buf, 20);
+            edgeCount = count(buf, 24);
+            contentCount = count(buf, 28);
+            lockCount = count(buf, 32);
+            hintCount = count(buf, 36);
+
+            long pos = HEADER_INTS * 4L;
+            stringOffsets = pos;
+            pos += (stringCount + 1) * 4L;
+            stringBytes = pos;
+            if (pos > buf.size()) throw new WorldFormatException("truncated string table");
+            int blobLength = buf.getInt(stringOffsets + stringCount * 4L);
+            if (blobLength < 0) throw new WorldFormatException("corrupt string table");
+            pos += (blobLength + 3L) & ~3L;
+            items = pos;
+            pos += itemCount * ITEM_INTS * 4L;
+            puzzles = pos;
+            pos += puzzleCount * PUZZLE_INTS * 4L;
+            rooms = pos;
+            pos += roomCount * ROOM_INTS * 4L;
+            edges = pos;
+            pos += edgeCount * 4L;
+            contents = pos;
+            pos += contentCount * 4L;
+            locks = pos;
+            pos += lockCount * LOCK_INTS * 4L;
+            hints = pos;
+            pos += hintCount * 4L;
+            if (pos != buf.size()) {
+                throw new WorldFormatException("world file size does not match its header");
+            }
+            stringCache = cacheStrings ? new String[stringCount] : null;
+        }
+
+        private static int count(MappedFile buf, long at) throws WorldFormatException {
+            int n = buf.getInt(at);
+            if (n < 0) throw new WorldFormatException("negative record count in header");
+            return n;
+        }
+
+        // A field of record #record in a section of count records; the index may come
+        // from another record, so one out of range is a format error
+        int intAt(long section, int count, int record, int width, int field) throws WorldFormatException {
+            if (record < 0 || record >= count) {
+                throw new WorldFormatException("reference to record #" + record + " of " + count);
+            }
+            return buf.getInt(section + ((long) record * width + field) * 4);
+        }
+
+        // Strings are decoded on first use and shared afterwards
+        String string(int index) throws WorldFormatException {
+            if (index < 0 || index >= stringCount) {
+                throw new WorldFormatException("dangling string reference #" + index);
+            }
+            String s = stringCache == null ? null : stringCache[index];
+            if (s == null) {
+                int from = buf.getInt(stringOffsets + index * 4L);
+                int to = buf.getInt(stringOffsets + index * 4L + 4);
+                int length = to - from;
+                if (from < 0 || length < 0 || stringBytes + to > items) {
+                    throw new WorldFormatException("corrupt string table entry #" + index);
+                }
+                byte[] bytes = stringCache == null ? new byte[length] : scratch;
+                if (bytes.length < length) bytes = scratch = new byte[Math.max(length, scratch.length * 2)];
+                buf.get(stringBytes + from, bytes, 0, length);
+                s = new String(bytes, 0, length, StandardCharsets.UTF_8);
+                if (stringCache != null) stringCache[index] = s;
+            }
+            return s;
+        }
+
+        @Override
+        public int roomCount() {
+            return roomCount;
+        }
+
+        @Override
+        public int itemCount() {
+            return itemCount;
+        }
+
+        @Override
+        public int puzzleCount() {
+            return puzzleCount;
+        }
+
+        @Override
+        public String roomName(int room) throws WorldFormatException {
+            return string(intAt(rooms, roomCount, room, ROOM_INTS, 1));
+        }
+
+        @Override
+        public boolean isExitRoom(int room) throws WorldFormatException {
+            return (intAt(rooms, roomCount, room, ROOM_INTS, 2) & FLAG_EXIT) != 0;
+        }
+
+        @Override
+        public int[] exitsOf(int room) throws WorldFormatException {
+            int from = intAt(rooms, roomCount, room, ROOM_INTS, 3);
+            int to = rangeEnd(this, room, 3, edgeCount);
+            int[] exits = new int[to - from];
+            for (int e = from; e < to; e++) {
+                int target = buf.getInt(edges + e * 4L);
+                if (target < 0 || target >= roomCount) {
+                    throw new WorldFormatException("room #" + room + " exits to unknown room #" + target);
+                }
+                exits[e - from] = target;
+            }
+            return exits;
+        }
+
+        @Override
+        public int[] contentsOf(int room) throws WorldFormatException {
+            int from = intAt(rooms, roomCount, room, ROOM_INTS, 4);
+            int to = rangeEnd(this, room, 4, contentCount);
+            int[] found = new int[to - from];
+            for (int c = from; c < to; c++) {
+                int target = buf.getInt(contents + c * 4L);
+                if (target < 0 || target >= itemCount + puzzleCount) {
+                    throw new WorldFormatException("room #" + room + " holds unknown component #" + target);
+                }
+                found[c - from] = target;
+            }
+            return found;
+        }
+
+        // Locks are indexed on first use; a racing second build is harmless
+        @Override
+        public int lockKeyOf(int room) throws WorldFormatException {
+            HashMap<Integer, Integer> index = lockIndex;
+            if (index == null) {
+                index = new HashMap<>();
+                for (int i = 0; i < lockCount; i++) {
+                    int locked = intAt(locks, lockCount, i, LOCK_INTS, 0);
+                    int key = intAt(locks, lockCount, i, LOCK_INTS, 1);
+                    if (locked < 0 || locked >= roomCount || key < 0 || key >= itemCount) {
+                        throw new WorldFormatException("dangling lock #" + i);
+                    }
+                    index.put(locked, key);
+                }
+                lockIndex = index;
+            }
+            return index.getOrDefault(room, WorldDefinition.NONE);
+        }
+
+        @Override
+        public WorldDefinition.ItemDef itemDef(int item) throws WorldFormatException {
+            return new WorldDefinition.ItemDef(string(intAt(items, itemCount, item, ITEM_INTS, 0)),
+                    string(intAt(items, itemCount, item, ITEM_INTS, 1)),
+                    intAt(items, itemCount, item, ITEM_INTS, 2),
+                    string(intAt(items, itemCount, item, ITEM_INTS, 3)));
+        }
+
+        @Override
+        public String itemName(int item) throws WorldFormatException {
+            return string(intAt(items, itemCount, item, ITEM_INTS, 1));
+        }
+
+        @Override
+        public WorldDefinition.PuzzleDef puzzleDef(int puzzle) throws WorldFormatException {
+            int type = intAt(puzzles, puzzleCount, puzzle, PUZZLE_INTS, 0);
+            return new WorldDefinition.PuzzleDef(
+                    version == 1 ? (type == 0 ? WorldDefinition.RIDDLE : WorldDefinition.CODE) : string(type),
+                    string(intAt(puzzles, puzzleCount, puzzle, PUZZLE_INTS, 1)),
+                    string(intAt(puzzles, puzzleCount, puzzle, PUZZLE_INTS, 2)),
+                    intAt(puzzles, puzzleCount, puzzle, PUZZLE_INTS, 3),
+                    string(intAt(puzzles, puzzleCount, puzzle, PUZZLE_INTS, 4)),
+                    string(intAt(puzzles, puzzleCount, puzzle, PUZZLE_INTS, 5)),
+                    rewardIndex(puzzle));
+        }
+
+        @Override
+        public int rewardIndex(int puzzle) throws WorldFormatException {
+            int reward = intAt(puzzles, puzzleCount, puzzle, PUZZLE_INTS, 6);
+            if (reward != WorldDefinition.NONE && (reward < 0 || reward >= itemCount)) {
+                throw new WorldFormatException("puzzle #" + puzzle + " rewards unknown item #" + reward);
+            }
+            return reward;
+        }
+
+        @Override
+        public ArrayList<String> hints() throws WorldFormatException {
+            ArrayList<String> found = new ArrayList<>();
+            for (int i = 0; i < hintCount; i++) {
+                found.add(string(buf.getInt(hints + i * 4L)));
+            }
+            return found;
+        }
+    }
+
+    // A read-only file mapped in 1 GiB pieces, as one mapping cannot pass 2 GiB.
+    // Every section starts on a multiple of 4, so an int never spans two pieces;
+    // string bytes can, and are copied piece by piece.
+    static final class MappedFile {
+        private static final int CHUNK_SHIFT = 30;
+        private static final long CHUNK_MASK = (1L << CHUNK_SHIFT) - 1;
+
+        private final ByteBuffer[] chunks;
+        private final long size;
+
+        MappedFile(FileChannel channel) throws IOException {
+            size = channel.size();
+            chunks = new ByteBuffer[(int) ((size + CHUNK_MASK) >>> CHUNK_SHIFT)];
+            for (int i = 0; i < chunks.length; i++) {
+                long from = (long) i << CHUNK_SHIFT;
+                chunks[i] = channel.map(FileChannel.MapMode.READ_ONLY, from, Math.min(size - from, CHUNK_MASK + 1));
+            }
+        }
+
+        long size() {
+            return size;
+        }
+
+        int getInt(long pos) {
+            return chunks[(int) (pos >>> CHUNK_SHIFT)].getInt((int) (pos & CHUNK_MASK));
+        }
+
+        void get(long pos, byte[] dst, int offset, int length) {
+            while (length > 0) {
+                ByteBuffer chunk = chunks[(int) (pos >>> CHUNK_SHIFT)];
+                int at = (int) (pos & CHUNK_MASK);
+                int n = Math.min(length, chunk.limit() - at);
+                chunk.get(at, dst, offset, n);
+                pos += n;
+                offset += n;
+                length -= n;
+            }
+        }
+    }
+
+    private static MappedFile map(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return new MappedFile(channel);
+        }
+    }
+
+    // Full definition, for the compiler and tools
+    public static WorldDefinition readDefinition(Path path) throws IOException, WorldFormatException {
+        Layout in = new Layout(map(path));
+        WorldDefinition def = new WorldDefinition();
+
+        for (int i = 0; i < in.itemCount; i++) {
+            def.items.add(in.itemDef(i));
+        }
+        for (int i = 0; i < in.puzzleCount; i++) {
+            def.puzzles.add(in.puzzleDef(i));
+        }
+        for (int i = 0; i < in.roomCount; i++) {
+            def.rooms.add(new WorldDefinition.RoomDef(in.string(in.intAt(in.rooms, in.roomCount, i, ROOM_INTS, 0)),
+                    in.string(in.intAt(in.rooms, in.roomCount, i, ROOM_INTS, 1)),
+                    (in.intAt(in.rooms, in.roomCount, i, ROOM_INTS, 2) & FLAG_EXIT) != 0));
+        }
+        for (int i = 0; i < in.roomCount; i++) {
+            int edgeEnd = rangeEnd(in, i, 3, in.edgeCount);
+            for (int e = in.intAt(in.rooms, in.roomCount, i, ROOM_INTS, 3); e < edgeEnd; e++) {
+                def.edges.add(new int[]{i, in.buf.getInt(in.edges + e * 4L)});
+            }
+            int contentEnd = rangeEnd(in, i, 4, in.contentCount);
+            for (int c = in.intAt(in.rooms, in.roomCount, i, ROOM_INTS, 4); c < contentEnd; c++) {
+                def.contents.add(new int[]{i, in.buf.getInt(in.contents + c * 4L)});
+            }
+        }
+        for (int i = 0; i < in.lockCount; i++) {
+            def.locks.add(new int[]{in.intAt(in.locks, in.lockCount, i, LOCK_INTS, 0), in.intAt(in.locks, in.lockCount, i, LOCK_INTS, 1)});
+        }
+        for (int i = 0; i < in.hintCount; i++) {
+            def.hints.add(in.string(in.buf.getInt(in.hints + i * 4L)));
+        }
+
+        def.validate();
+        return def;
+    }
+
+    // Builds the game objects straight from the mapped file, no intermediate records.
+    // Every room is built up front, which takes seconds on a million rooms; openPaged
+    // is the one that opens in milliseconds at any size
+    public static World load(Path path) throws IOException, WorldFormatException {
+        Layout in = new Layout(map(path));
+        int componentCount = in.itemCount + in.puzzleCount;
+
+        GameComponent[] components = new GameComponent[componentCount];
+        for (int i = 0; i < in.itemCount; i++) {
+            components[i] = in.readItem(i);
+        }
+        for (int i = 0; i < in.puzzleCount; i++) {
+            int rewardIndex = in.rewardIndex(i);
+            Item reward = rewardIndex == WorldDefinition.NONE ? null : (Item) components[rewardIndex];
+            components[in.itemCount + i] = in.readPuzzle(i, reward);
+        }
+
+        Room[] rooms = new Room[in.roomCount];
+        for (int i = 0; i < in.roomCount; i++) {
+            rooms[i] = new Room(in.roomName(i), in.isExitRoom(i));
+        }
+        for (int i = 0; i < in.roomCount; i++) {
+            for (int target : in.exitsOf(i)) {
+                rooms[i].connectRoom(rooms[target]);
+            }
+            for (int target : in.contentsOf(i)) {
+                rooms[i].addContent(components[target]);
+            }
+        }
+        for (int i = 0; i < in.roomCount; i++) {
+            int key = in.lockKeyOf(i);
+            if (key != WorldDefinition.NONE) {
+                rooms[i].setRequiredKey(components[key].getName());
+            }
+        }
+
+        if (rooms.length == 0) {
+            throw new WorldFormatException("world has no rooms");
+        }
+        World world = new World();
+        for (Room room : rooms) {
+            world.addRoom(room);
+        }
+        for (String hint : in.hints()) {
+            world.addHint(hint);
+        }
+        world.freezeInOrder(components);
+        return world;
+    }
+
+    // Memory-mapped world whose rooms are built on demand, see RoomStore; only the
+    // header is read here, so opening takes about a millisecond whatever the size
+    public static World openPaged(Path path, int cachedRooms) throws IOException, WorldFormatException {
+        Layout in = new Layout(map(path), false);
+        if (in.roomCount == 0) {
+            throw new WorldFormatException("world has no rooms");
+        }
+        return new World(new RoomStore(in, cachedRooms), in.hints());
+    }
+
+    // The file's records by index, without the string cache; CompactWorld reads it once
+    static WorldData openData(Path path) throws IOException, WorldFormatException {
+        if (!isBinary(path)) {
+            throw new WorldFormatException(path + " is not a compiled world; run WorldCompiler on it first");
+        }
+        return new Layout(map(path), false);
+    }
+
+    // End of a room's CSR slice (its start is the record field); field 3 is edges, field 4 is contents
+    private static int rangeEnd(Layout in, int room, int field, int total) throws WorldFormatException {
+        int from = in.intAt(in.rooms, in.roomCount, room, ROOM_INTS, field);
+        int to = room + 1 < in.roomCount ? in.intAt(in.rooms, in.roomCount, room + 1, ROOM_INTS, field) : total;
+        if (from < 0 || from > to || to > total) {
+            throw new WorldFormatException("corrupt adjacency for room #" + room);
+        }
+        return to;
+    }
+}
@@ -0,0 +1,84 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+// Converts worlds between the text and compiled formats, validating on the way.
+// check also runs WorldValidator over the file and fails on any design problem, so
+// it can gate a world before it goes out.
+//
+//   WorldCompiler compile   <in.world> <out.escw>
+//   WorldCompiler decompile <in.escw>  <out.world>
+//   WorldCompiler check     <file> [threads]
+public class WorldCompiler {
+
+    public static WorldDefinition read(Path path) throws IOException, WorldFormatException {
+        if (WorldBinaryFormat.isBinary(path)) {
+            return WorldBinaryFormat.readDefinition(path);
+        }
+        try (BufferedReader reader = Files.newBufferedReader(path)) {
+            return WorldTextFormat.read(reader);
+        }
+    }
+
+    private static void check(Path path, int threads) throws IOException, WorldFormatException {
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        long start = System.nanoTime();
+        List<WorldValidator.Problem> problems;
+        try {
+            problems = WorldValidator.check(path, pool);
+        } finally {
+            pool.shutdown();
+        }
+        double ms = (System.nanoTime() - start) / 1e6;
+        for (WorldValidator.Problem problem : problems) {
+            System.out.println(problem);
+        }
+        if (!problems.isEmpty()) {
+            System.out.printf("%d problem%s found (%.1f ms)%n", problems.size(), problems.size() == 1 ? "" : "s", ms);
+            System.exit(1);
+        }
+        System.out.printf("OK: no problems found (%.1f ms)%n", ms);
+    }
+
+    public static void main(String[] args) {
+        if (args.length < 2) {
+            System.out.println("Usage: WorldCompiler compile <in.world> <out.escw>");
+            System.out.println("       WorldCompiler decompile <in.escw> <out.world>");
+            System.out.println("       WorldCompiler check <file> [threads]");
+            return;
+        }
+
+        try {
+            if (args[0].equals("check")) {
+                check(Path.of(args[1]), args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors());
+                return;
+            }
+            if (args.length < 3) {
+                System.out.println("Usage: WorldCompiler " + args[0] + " <in> <out>");
+                System.exit(1);
+            }
+            WorldDefinition def = read(Path.of(args[1]));
+            switch (args[0]) {
+                case "compile":
+                    WorldBinaryFormat.write(def, Path.of(args[2]));
+                    break;
+                case "decompile":
+                    try (Writer out = Files.newBufferedWriter(Path.of(args[2]))) {
+                        WorldTextFormat.write(def, out);
+                    }
+                    break;
+                default:
+                    System.out.println("Unknown mode: " + args[0]);
+                    return;
+            }
+            System.out.println("OK: " + def.getRoomCount() + " rooms");
+        } catch (IOException | WorldFormatException | NumberFormatException e) {
+            System.out.println("Error: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+}
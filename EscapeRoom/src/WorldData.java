@@ -0,0 +1,51 @@
+import java.util.List;
+
+// A built world read by index, the form RoomStore makes rooms from: a mapped
+// compiled file (WorldBinaryFormat.Layout) or a CompactWorld held in memory.
+// Rooms are numbered 0..roomCount-1; contents share one index space where items
+// come first and puzzles follow, as in WorldDefinition.
+interface WorldData {
+    int roomCount();
+
+    int itemCount();
+
+    int puzzleCount();
+
+    String roomName(int room) throws WorldFormatException;
+
+    boolean isExitRoom(int room) throws WorldFormatException;
+
+    // Target rooms of the room's exits
+    int[] exitsOf(int room) throws WorldFormatException;
+
+    // Item and puzzle indexes of the room's contents
+    int[] contentsOf(int room) throws WorldFormatException;
+
+    // Item that opens the room, or WorldDefinition.NONE
+    int lockKeyOf(int room) throws WorldFormatException;
+
+    WorldDefinition.ItemDef itemDef(int item) throws WorldFormatException;
+
+    WorldDefinition.PuzzleDef puzzleDef(int puzzle) throws WorldFormatException;
+
+    List<String> hints() throws WorldFormatException;
+
+    default String itemName(int item) throws WorldFormatException {
+        return itemDef(item).name;
+    }
+
+    // Reward item index of a puzzle, or WorldDefinition.NONE
+    default int rewardIndex(int puzzle) throws WorldFormatException {
+        return puzzleDef(puzzle).reward;
+    }
+
+    default Item readItem(int item) throws WorldFormatException {
+        WorldDefinition.ItemDef def = itemDef(item);
+        return new Item(def.name, def.value, def.type);
+    }
+
+    default Puzzle readPuzzle(int puzzle, Item reward) throws WorldFormatException {
+        WorldDefinition.PuzzleDef def = puzzleDef(puzzle);
+        return PuzzleTypes.get(def.type).create(def.name, def.difficulty, def.text, def.answer, reward);
+    }
+}
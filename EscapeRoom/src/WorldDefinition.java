@@ -0,0 +1,279 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Plain data form of a world, shared by the text and binary world formats.
+// References between records are indexes; contents use one index space where
+// items come first and puzzles follow (item i -> i, puzzle p -> itemCount + p).
+public class WorldDefinition {
+    public static final String RIDDLE = "riddle"; // Puzzle types of the built-in formats, see PuzzleType
+    public static final String CODE = "code";
+    public static final int NONE = -1;
+
+    static class RoomDef {
+        final String key;
+        final String name;
+        final boolean exit;
+
+        RoomDef(String key, String name, boolean exit) {
+            this.key = key;
+            this.name = name;
+            this.exit = exit;
+        }
+    }
+
+    static class ItemDef {
+        final String key;
+        final String name;
+        final int value;
+        final String type;
+
+        ItemDef(String key, String name, int value, String type) {
+            this.key = key;
+            this.name = name;
+            this.value = value;
+            this.type = type;
+        }
+    }
+
+    static class PuzzleDef {
+        final String type; // A PuzzleType name
+        final String key;
+        final String name;
+        final int difficulty;
+        final String text;   // Riddle text, or the hint of a code puzzle
+        final String answer; // Riddle answer, the code, or whatever the type expects
+        final int reward;    // Item index or NONE
+
+        PuzzleDef(String type, String key, String name, int difficulty, String text, String answer, int reward) {
+            this.type = type;
+            this.key = key;
+            this.name = name;
+            this.difficulty = difficulty;
+            this.text = text;
+            this.answer = answer;
+            this.reward = reward;
+        }
+    }
+
+    ArrayList<RoomDef> rooms = new ArrayList<>();
+    ArrayList<ItemDef> items = new ArrayList<>();
+    ArrayList<PuzzleDef> puzzles = new ArrayList<>();
+    ArrayList<int[]> edges = new ArrayList<>();    // {fromRoom, toRoom}
+    ArrayList<int[]> contents = new ArrayList<>(); // {room, component}
+    ArrayList<int[]> locks = new ArrayList<>();    // {room, keyItem}
+    ArrayList<String> hints = new ArrayList<>();
+
+    // Reports every dangling room, item or key reference in one exception
+    public void validate() throws WorldFormatException {
+        ArrayList<String> problems = new ArrayList<>();
+        int componentCount = items.size() + puzzles.size();
+
+        if (rooms.isEmpty()) {
+            problems.add("world has no rooms");
+        }
+        checkUniqueKeys(problems);
+        for (PuzzleDef puzzle : puzzles) {
+            if (puzzle.reward != NONE && !inRange(puzzle.reward, items.size())) {
+                problems.add("puzzle " + puzzle.key + " rewards unknown item #" + puzzle.reward);
+            }
+            if (PuzzleTypes.find(puzzle.type) == null) {
+                problems.add("puzzle " + puzzle.key + " has unknown type " + puzzle.type);
+            }
+        }
+        for (int[] edge : edges) {
+            if (!inRange(edge[0], rooms.size()) || !inRange(edge[1], rooms.size())) {
+                problems.add("exit between unknown rooms #" + edge[0] + " -> #" + edge[1]);
+            }
+        }
+        for (int[] content : contents) {
+            if (!inRange(content[0], rooms.size()) || !inRange(content[1], componentCount)) {
+                problems.add("content #" + content[1] + " placed in unknown room #" + content[0]);
+            }
+        }
+        for (int[] lock : locks) {
+            if (!inRange(lock[0], rooms.size())) {
+                problems.add("lock on unknown room #" + lock[0]);
+            } else if (!inRange(lock[1], items.size())) {
+                problems.add("room " + rooms.get(lock[0]).key + " is locked by unknown item #" + lock[1]);
+            } else if (!items.get(lock[1]).type.equals("KEY")) {
+                problems.add("room " + rooms.get(lock[0]).key + " is locked by " + items.get(lock[1]).key + ", which is not a KEY");
+            }
+        }
+
+        if (!problems.isEmpty()) {
+            throw new WorldFormatException("Invalid world:\n  " + String.join("\n  ", problems));
+        }
+    }
+
+    private void checkUniqueKeys(ArrayList<String> problems) {
+        HashMap<String, String> seen = new HashMap<>();
+        for (RoomDef room : rooms) {
+            if (seen.put(room.key, "room") != null) problems.add("duplicate key " + room.key);
+        }
+        for (ItemDef item : items) {
+            if (seen.put(item.key, "item") != null) problems.add("duplicate key " + item.key);
+        }
+        for (PuzzleDef puzzle : puzzles) {
+            if (seen.put(puzzle.key, "puzzle") != null) problems.add("duplicate key " + puzzle.key);
+        }
+    }
+
+    private static boolean inRange(int index, int size) {
+        return index >= 0 && index < size;
+    }
+
+    // Build the game objects; the first room is the start room. The result is frozen.
+    public World build() throws WorldFormatException {
+        validate();
+
+        Room[] builtRooms = new Room[rooms.size()];
+        for (int i = 0; i < builtRooms.length; i++) {
+            RoomDef def = rooms.get(i);
+            builtRooms[i] = new Room(def.name, def.exit);
+        }
+
+        GameComponent[] components = new GameComponent[items.size() + puzzles.size()];
+        for (int i = 0; i < items.size(); i++) {
+            ItemDef def = items.get(i);
+            components[i] = new Item(def.name, def.value, def.type);
+        }
+        for (int i = 0; i < puzzles.size(); i++) {
+            PuzzleDef def = puzzles.get(i);
+            Item reward = def.reward == NONE ? null : (Item) components[def.reward];
+            components[items.size() + i] = PuzzleTypes.get(def.type).create(def.name, def.difficulty, def.text, def.answer, reward);
+        }
+
+        for (int[] content : contents) {
+            builtRooms[content[0]].addContent(components[content[1]]);
+        }
+        for (int[] edge : edges) {
+            builtRooms[edge[0]].connectRoom(builtRooms[edge[1]]);
+        }
+        for (int[] lock : locks) {
+            builtRooms[lock[0]].setRequiredKey(items.get(lock[1]).name);
+        }
+
+        World world = new World();
+        for (Room room : builtRooms) {
+            world.addRoom(room);
+        }
+        for (String hint : hints) {
+            world.addHint(hint);
+        }
+        world.freezeInOrder(components);
+        return world;
+    }
+
+    // Puzzle name -> an answer that solves it (PuzzleType.sampleAnswer), for tools that
+    // play the world; built worlds only keep hashes and compiled matchers
+    public Map<String, String> answerKey() {
+        HashMap<String, String> answers = new HashMap<>();
+        for (PuzzleDef puzzle : puzzles) {
+            PuzzleType type = PuzzleTypes.find(puzzle.type);
+            String answer = type != null ? type.sampleAnswer(puzzle.answer) : null;
+            if (answer != null) answers.putIfAbsent(puzzle.name, answer);
+        }
+        return answers;
+    }
+
+    // Read a world file, text or compiled
+    public static WorldDefinition load(Path path) throws IOException, WorldFormatException {
+        if (WorldBinaryFormat.isBinary(path)) {
+            return WorldBinaryFormat.readDefinition(path);
+        }
+        try (BufferedReader reader = Files.newBufferedReader(path)) {
+            return WorldTextFormat.read(reader);
+        }
+    }
+
+    // Index view of the definition, the form WorldValidator reads; the definition
+    // must not change while it is in use
+    WorldData data() {
+        return new Data();
+    }
+
+    private class Data implements WorldData {
+        private final int[] edgeStart = new int[rooms.size() + 1];
+        private final int[] edgeTargets = WorldBinaryFormat.groupByRoom(edges, rooms.size(), edgeStart);
+        private final int[] contentStart = new int[rooms.size() + 1];
+        private final int[] contentTargets = WorldBinaryFormat.groupByRoom(contents, rooms.size(), contentStart);
+        private final HashMap<Integer, Integer> lockOf = new HashMap<>();
+
+        Data() {
+            for (int[] lock : locks) {
+                lockOf.put(lock[0], lock[1]);
+            }
+        }
+
+        @Override
+        public int roomCount() {
+            return rooms.size();
+        }
+
+        @Override
+        public int itemCount() {
+            return items.size();
+        }
+
+        @Override
+        public int puzzleCount() {
+            return puzzles.size();
+        }
+
+        @Override
+        public String roomName(int room) {
+            return rooms.get(room).name;
+        }
+
+        @Override
+        public boolean isExitRoom(int room) {
+            return rooms.get(room).exit;
+        }
+
+        @Override
+        public int[] exitsOf(int room) {
+            return Arrays.copyOfRange(edgeTargets, edgeStart[room], edgeStart[room + 1]);
+        }
+
+        @Override
+        public int[] contentsOf(int room) {
+            return Arrays.copyOfRange(contentTargets, contentStart[room], contentStart[room + 1]);
+        }
+
+        @Override
+        public int lockKeyOf(int room) {
+            return lockOf.getOrDefault(room, NONE);
+        }
+
+        @Override
+        public ItemDef itemDef(int item) {
+            return items.get(item);
+        }
+
+        @Override
+        public PuzzleDef puzzleDef(int puzzle) {
+            return puzzles.get(puzzle);
+        }
+
+        @Override
+        public List<String> hints() {
+            return hints;
+        }
+    }
+
+    // Component index of a puzzle, for the contents table
+    public int puzzleComponent(int puzzleIndex) {
+        return items.size() + puzzleIndex;
+    }
+
+    public int getRoomCount() {
+        return rooms.size();
+    }
+}
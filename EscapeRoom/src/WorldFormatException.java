@@ -0,0 +1,5 @@
+class WorldFormatException extends Exception {
+    public WorldFormatException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,303 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.SplittableRandom;
+
+// Seeded generator for large worlds, written straight out in the text world format.
+//
+// Rooms form a tree laid out like a heap: room i's parent is (i - 1) / branching, and
+// every tree edge gets an exit both ways, so every room can be reached from the start.
+// The last room is the exit. A chain of locks sits on the rooms along the way from the
+// start to the exit (the "spine"): lock j is opened by key j, and key j is put in a
+// random room, on the floor or as a puzzle reward, whose way from the start crosses
+// only locks before j. Extra one-way exits add cycles but never lead past a lock the
+// player could not have opened yet. So every generated world can be escaped.
+//
+// Rooms are written one at a time with their contents and exits; references to rooms
+// not written yet are fine in the text format. Only the lock chain is kept, O(locks)
+// memory whatever the number of rooms; spine tests are short walks up the heap.
+public class WorldGenerator {
+    private static final String[] ADJECTIVES = {"Dusty", "Silent", "Flooded", "Narrow", "Grand", "Hidden",
+            "Crumbling", "Frozen", "Gilded", "Shadowy", "Echoing", "Forgotten"};
+    private static final String[] PLACES = {"Hall", "Vault", "Cellar", "Gallery", "Chamber", "Passage",
+            "Study", "Crypt", "Atrium", "Workshop", "Chapel", "Archive"};
+    private static final String[] TREASURES = {"Coin", "Goblet", "Lantern", "Map", "Compass", "Candle",
+            "Locket", "Scroll", "Dagger", "Mirror"};
+    private static final String[][] RIDDLES = {
+            {"What has keys but can't open locks?", "piano"},
+            {"What has hands but can't clap?", "clock"},
+            {"What gets wetter the more it dries?", "towel"},
+            {"What has a neck but no head?", "bottle"},
+            {"What can you catch but not throw?", "cold"},
+            {"What has many teeth but can't bite?", "comb"}};
+
+    private long rooms = 1000;
+    private int branching = 3;
+    private double cycles = 0.1; // Chance that a room gets an extra one-way exit
+    private int locks = 5;
+    private double items = 0.5; // Expected items per room
+    private double puzzles = 0.1; // Expected puzzles per room
+    private long seed = 1;
+
+    // Worked out before writing
+    private long exitDepth;
+    private long[] lockDepth; // Depth on the spine of lock j, increasing
+    private HashMap<Long, ArrayList<Integer>> keysByRoom; // Room -> chain keys placed there
+
+    public void setRooms(long rooms) {
+        if (rooms < 2) throw new IllegalArgumentException("A world needs at least 2 rooms");
+        this.rooms = rooms;
+    }
+
+    public void setBranching(int branching) {
+        if (branching < 1) throw new IllegalArgumentException("Branching must be at least 1");
+        this.branching = branching;
+    }
+
+    public void setCycles(double cycles) {
+        this.cycles = cycles;
+    }
+
+    // Capped at the number of rooms on the way to the exit
+    public void setLocks(int locks) {
+        this.locks = locks;
+    }
+
+    public void setItems(double items) {
+        this.items = items;
+    }
+
+    public void setPuzzles(double puzzles) {
+        this.puzzles = puzzles;
+    }
+
+    public void setSeed(long seed) {
+        this.seed = seed;
+    }
+
+    private long parent(long room) {
+        return (room - 1) / branching;
+    }
+
+    public void write(Writer out) throws IOException {
+        planLocks();
+        out.write("# Generated by WorldGenerator: " + rooms + " rooms, branching " + branching + ", cycles " + cycles
+                + ", " + lockDepth.length + " locks, seed " + seed + "\n");
+
+        SplittableRandom random = new SplittableRandom(seed);
+        StringBuilder line = new StringBuilder(256);
+        for (long r = 0; r < rooms; r++) {
+            line.setLength(0);
+            line.append("room r").append(r).append(" \"").append(roomName(r)).append('"');
+            if (r == rooms - 1) line.append(" exit");
+            line.append('\n');
+
+            // Tree exits both ways, plus maybe a shortcut that skips no locks
+            if (r > 0) {
+                long p = parent(r);
+                line.append("exit r").append(p).append(" r").append(r).append('\n');
+                line.append("exit r").append(r).append(" r").append(p).append('\n');
+            }
+            if (r > 0 && random.nextDouble() < cycles) {
+                long target = random.nextLong(rooms);
+                if (target != r && lockLevel(target) <= lockLevel(r)) {
+                    line.append("exit r").append(r).append(" r").append(target).append('\n');
+                }
+            }
+
+            int lock = lockAt(r);
+            if (lock >= 0) {
+                line.append("lock r").append(r).append(" key").append(lock).append('\n');
+            }
+
+            int count = poisson(random, items);
+            for (int i = 0; i < count; i++) {
+                line.append("item i").append(r).append('_').append(i).append(" \"")
+                        .append(ADJECTIVES[random.nextInt(ADJECTIVES.length)]).append(' ')
+                        .append(TREASURES[random.nextInt(TREASURES.length)]).append("\" ")
+                        .append(random.nextInt(1, 100)).append(" TOOL\n");
+                line.append("put r").append(r).append(" i").append(r).append('_').append(i).append('\n');
+            }
+            count = poisson(random, puzzles);
+            for (int i = 0; i < count; i++) {
+                appendPuzzle(line, random, "p" + r + "_" + i, null);
+                line.append("put r").append(r).append(" p").append(r).append('_').append(i).append('\n');
+            }
+
+            ArrayList<Integer> keys = keysByRoom.get(r);
+            if (keys != null) {
+                for (int key : keys) {
+                    line.append("item key").append(key).append(" \"Key ").append(key).append("\" ")
+                            .append(10 + key).append(" KEY\n");
+                    // Alternate between keys on the floor and keys behind a puzzle
+                    if (key % 2 == 0) {
+                        line.append("put r").append(r).append(" key").append(key).append('\n');
+                    } else {
+                        appendPuzzle(line, random, "lockpuzzle" + key, "key" + key);
+                        line.append("put r").append(r).append(" lockpuzzle").append(key).append('\n');
+                    }
+                }
+            }
+            out.append(line);
+        }
+
+        out.write("hint \"Every locked door has its key somewhere before it.\"\n");
+        out.write("hint \"Puzzles sometimes hold keys.\"\n");
+        out.write("hint \"Use 'back' to retrace your steps.\"\n");
+        out.flush();
+    }
+
+    private void appendPuzzle(StringBuilder line, SplittableRandom random, String key, String reward) {
+        if (random.nextBoolean()) {
+            String[] riddle = RIDDLES[random.nextInt(RIDDLES.length)];
+            line.append("riddle ").append(key).append(" \"Riddle ").append(key).append("\" ")
+                    .append(random.nextInt(1, 6)).append(" \"").append(riddle[0]).append("\" \"")
+                    .append(riddle[1]).append('"');
+        } else {
+            int code = random.nextInt(10000);
+            line.append("code ").append(key).append(" \"Lock ").append(key).append("\" ")
+                    .append(random.nextInt(1, 6)).append(" \"").append(String.format("%04d", code))
+                    .append("\" \"The digits are ").append(String.format("%04d", code)).append('"');
+        }
+        if (reward != null) {
+            line.append(' ').append(reward);
+        }
+        line.append('\n');
+    }
+
+    // Lock positions and key rooms; O(locks) memory
+    private void planLocks() {
+        exitDepth = depthOf(rooms - 1);
+
+        // Locks spread evenly over the spine, never on the start room
+        int count = (int) Math.max(0, Math.min(locks, exitDepth));
+        lockDepth = new long[count];
+        for (int j = 0; j < count; j++) {
+            lockDepth[j] = 1 + j * exitDepth / count;
+        }
+
+        SplittableRandom random = new SplittableRandom(seed ^ 0x9E3779B97F4A7C15L);
+        keysByRoom = new HashMap<>();
+        for (int j = 0; j < count; j++) {
+            long room = ancestor(rooms - 1, lockDepth[j] - 1); // Fallback: just before the lock
+            for (int attempt = 0; attempt < 32; attempt++) {
+                long candidate = random.nextLong(rooms - 1);
+                if (lockLevel(candidate) <= j) {
+                    room = candidate;
+                    break;
+                }
+            }
+            keysByRoom.computeIfAbsent(room, k -> new ArrayList<>()).add(j);
+        }
+    }
+
+    // Levels below the start; a straight line when branching is 1
+    private long depthOf(long room) {
+        if (branching == 1) return room;
+        long depth = 0;
+        for (long r = room; r > 0; r = parent(r)) {
+            depth++;
+        }
+        return depth;
+    }
+
+    // The room's ancestor at the given depth
+    private long ancestor(long room, long depth) {
+        if (branching == 1) return depth;
+        long r = room;
+        for (long d = depthOf(room); d > depth; d--) {
+            r = parent(r);
+        }
+        return r;
+    }
+
+    // Depth at which the way to this room leaves the spine
+    private long joinDepth(long room) {
+        if (branching == 1) return room;
+        long a = room;
+        long b = rooms - 1;
+        long da = depthOf(a);
+        long db = exitDepth;
+        for (; da > db; da--) a = parent(a);
+        for (; db > da; db--) b = parent(b);
+        while (a != b) {
+            a = parent(a);
+            b = parent(b);
+            da--;
+        }
+        return da;
+    }
+
+    // Number of locks on the way from the start to this room
+    private int lockLevel(long room) {
+        long join = joinDepth(room);
+        int level = 0;
+        while (level < lockDepth.length && lockDepth[level] <= join) {
+            level++;
+        }
+        return level;
+    }
+
+    private int lockAt(long room) {
+        long depth = depthOf(room);
+        int j = Arrays.binarySearch(lockDepth, depth);
+        return j >= 0 && ancestor(rooms - 1, depth) == room ? j : -1;
+    }
+
+    private String roomName(long room) {
+        return ADJECTIVES[(int) (room % ADJECTIVES.length)] + " " + PLACES[(int) (room / ADJECTIVES.length % PLACES.length)]
+                + " " + room;
+    }
+
+    private static int poisson(SplittableRandom random, double mean) {
+        if (mean <= 0) return 0;
+        double limit = Math.exp(-mean);
+        double product = random.nextDouble();
+        int n = 0;
+        while (product > limit) {
+            product *= random.nextDouble();
+            n++;
+        }
+        return n;
+    }
+
+    // Usage: WorldGenerator <out.world or -> [--rooms n] [--branching b] [--cycles c]
+    //        [--locks n] [--items n] [--puzzles n] [--seed s]
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.out.println("Usage: WorldGenerator <out.world or -> [--rooms n] [--branching b] [--cycles c]"
+                    + " [--locks n] [--items n] [--puzzles n] [--seed s]");
+            return;
+        }
+        WorldGenerator generator = new WorldGenerator();
+        for (int i = 1; i < args.length; i++) {
+            switch (args[i]) {
+                case "--rooms" -> generator.setRooms(Long.parseLong(args[++i]));
+                case "--branching" -> generator.setBranching(Integer.parseInt(args[++i]));
+                case "--cycles" -> generator.setCycles(Double.parseDouble(args[++i]));
+                case "--locks" -> generator.setLocks(Integer.parseInt(args[++i]));
+                case "--items" -> generator.setItems(Double.parseDouble(args[++i]));
+                case "--puzzles" -> generator.setPuzzles(Double.parseDouble(args[++i]));
+                case "--seed" -> generator.setSeed(Long.parseLong(args[++i]));
+                default -> throw new IllegalArgumentException("Unknown option: " + args[i]);
+            }
+        }
+
+        long start = System.nanoTime();
+        if (args[0].equals("-")) {
+            generator.write(new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8), 1 << 16));
+        } else {
+            try (Writer out = Files.newBufferedWriter(Path.of(args[0]), StandardCharsets.UTF_8)) {
+                generator.write(out);
+            }
+            System.out.printf("Wrote %s in %.1f s%n", args[0], (System.nanoTime() - start) / 1e9);
+        }
+    }
+}
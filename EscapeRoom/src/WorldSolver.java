@@ -0,0 +1,527 @@
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+// Finds the shortest command sequence that escapes a world, among those that use
+// 'back' only to leave dead ends (see below); with 'back' from other rooms a
+// shorter one may exist.
+//
+// A state is the current room plus the set of keys held; puzzles only matter for the
+// keys they reward. Rooms from which no exit can be reached are dead ends: the only way
+// out of one is 'back' along the path taken. Rather than put the whole move history
+// into the state, the solver keeps only the anchor, the last room on the path that
+// still leads out, and models 'back n' as one step straight to it. Dead ends are only
+// entered when a key can be had somewhere past them. Backing out of rooms that do lead
+// out is not modelled, so a world that needs it is reported as having no route. A key
+// is dropped from the state as soon as no room it opens can be reached any more (from
+// the anchor, in a dead end), so states that differ only in spent keys merge. States are packed
+// into long words (room and anchor, then one bit per key) and the search is a breadth-first one,
+// layer by layer, so the first exit reached is reached with the fewest of those commands. Each
+// layer is split across a ForkJoinPool, whose idle workers steal the remaining chunks;
+// one ConcurrentHashMap serves as the shared visited set and holds, per state, the
+// step that reached it, from which the command sequence is read back. The state
+// limit is checked after every state expanded, so one wide layer cannot overrun it.
+//
+// Worlds that PathOracle finds unsolvable are rejected without a search.
+public class WorldSolver {
+    private static final int CHUNK = 256; // States expanded per task
+    private static final Path DEFAULT_WORLD = Path.of("worlds", "default.world"); // Same as World.createDefault()
+
+    // Packed state with its hash, so map lookups never re-hash the words
+    private static final class Packed {
+        final long[] words; // [0] anchor + 1 above room index, then key bits
+        final int hash;
+
+        Packed(long[] words) {
+            this.words = words;
+            this.hash = Arrays.hashCode(words);
+        }
+
+        int room() {
+            return (int) words[0];
+        }
+
+        // Room that 'back' returns to, or -1 outside dead ends
+        int anchor() {
+            return (int) (words[0] >>> 32) - 1;
+        }
+
+        boolean holds(int key) {
+            return (words[1 + (key >>> 6)] & (1L << key)) != 0;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Packed && Arrays.equals(words, ((Packed) o).words);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    // How a state was first reached
+    private record Step(Packed from, int action) {
+    }
+
+    // A key the player can get: by picking it up or solving a puzzle in `room`
+    private record Source(int room, int key, String command) {
+    }
+
+    public record Solution(boolean solvable, List<String> commands, long statesExplored, boolean gaveUp) {
+    }
+
+    private final Room[] rooms;
+    private final int[] edgeStart;
+    private final int[] edges;
+    private final int[] lockKey; // Room -> key, -1 when unlocked
+    private final boolean[] leadsOut; // Some exit is reachable from the room, locks aside
+    private final boolean[] worthEntering; // Leads out, or a key source lies past it
+    private final int[] component; // Room -> strongly connected component
+    private long[] liveKeys; // Per component, words - 1 longs: keys for locks still reachable
+    private final int[][] roomSources; // Room -> indexes into sources
+    private final ArrayList<Source> sources = new ArrayList<>();
+    private final String[] moveCommands;
+    private final int keyCount;
+    private final int words;
+    private final boolean solvable;
+
+    private final ForkJoinPool pool;
+    private long maxStates = 20_000_000;
+
+    // Puzzles only keep hashed answers, so the "solve" commands of a solution take
+    // theirs from an answer key (puzzle name -> answer); see WorldDefinition.answerKey
+    public WorldSolver(World world, ForkJoinPool pool) {
+        this(world, pool, Map.of());
+    }
+
+    public WorldSolver(World world, ForkJoinPool pool, Map<String, String> answers) {
+        world.freeze();
+        this.pool = pool;
+        // Paged worlds have no oracle; the search itself finds out
+        PathOracle oracle = world.getPathOracle();
+        this.solvable = oracle == null || oracle.isSolvable();
+        List<Room> roomList = world.getRooms();
+        rooms = roomList.toArray(new Room[0]);
+        HashMap<Integer, Integer> roomIndex = new HashMap<>(); // By id: paged rooms may be reloaded
+        for (int i = 0; i < rooms.length; i++) {
+            roomIndex.put(rooms[i].getId(), i);
+        }
+
+        leadsOut = leadsOut(roomIndex);
+
+        HashMap<String, Integer> keys = new HashMap<>();
+        lockKey = new int[rooms.length];
+        for (int i = 0; i < rooms.length; i++) {
+            lockKey[i] = -1;
+            if (rooms[i].isLocked()) {
+                lockKey[i] = keys.computeIfAbsent(GameComponent.foldName(rooms[i].getRequiredKey()), k -> keys.size());
+            }
+        }
+        keyCount = keys.size();
+        words = 1 + (keyCount + 63) / 64;
+
+        edgeStart = new int[rooms.length + 1];
+        moveCommands = new String[rooms.length];
+        ArrayList<Integer> edgeList = new ArrayList<>();
+        roomSources = new int[rooms.length][];
+        for (int i = 0; i < rooms.length; i++) {
+            moveCommands[i] = "move " + rooms[i].getName();
+            for (Room next : rooms[i].getConnectedRooms()) {
+                edgeList.add(roomIndex.get(next.getId()));
+            }
+            edgeStart[i + 1] = edgeList.size();
+
+            ArrayList<Integer> here = new ArrayList<>();
+            for (GameComponent component : rooms[i].getContents()) {
+                Item key = component instanceof Item ? (Item) component : World.rewardOf(component);
+                if (key == null || !key.getItemType().equals("KEY")) continue;
+                Integer k = keys.get(GameComponent.foldName(key.getName()));
+                if (k == null) continue;
+                String command = component instanceof Puzzle
+                        ? "solve " + component.getName() + " " + answers.getOrDefault(component.getName(), "<answer>")
+                        : "pickup " + component.getName();
+                here.add(sources.size());
+                sources.add(new Source(i, k, command));
+            }
+            roomSources[i] = here.stream().mapToInt(Integer::intValue).toArray();
+        }
+        edges = edgeList.stream().mapToInt(Integer::intValue).toArray();
+        worthEntering = worthEntering();
+        component = new int[rooms.length];
+        computeLiveKeys();
+    }
+
+    // Dead ends lead only to other dead ends, so one reverse flood from the dead ends
+    // that hold a key finds every dead end with a key past it
+    private boolean[] worthEntering() {
+        int[] incomingStart = new int[rooms.length + 1];
+        for (int target : edges) {
+            incomingStart[target + 1]++;
+        }
+        for (int i = 0; i < rooms.length; i++) {
+            incomingStart[i + 1] += incomingStart[i];
+        }
+        int[] incoming = new int[edges.length];
+        int[] fill = Arrays.copyOf(incomingStart, rooms.length);
+        for (int i = 0; i < rooms.length; i++) {
+            for (int e = edgeStart[i]; e < edgeStart[i + 1]; e++) {
+                incoming[fill[edges[e]]++] = i;
+            }
+        }
+
+        boolean[] worth = leadsOut.clone();
+        int[] queue = new int[rooms.length];
+        int tail = 0;
+        for (int i = 0; i < rooms.length; i++) {
+            if (!worth[i] && roomSources[i].length > 0) {
+                worth[i] = true;
+                queue[tail++] = i;
+            }
+        }
+        for (int head = 0; head < tail; head++) {
+            int room = queue[head];
+            for (int e = incomingStart[room]; e < incomingStart[room + 1]; e++) {
+                int from = incoming[e];
+                if (!worth[from]) {
+                    worth[from] = true;
+                    queue[tail++] = from;
+                }
+            }
+        }
+        return worth;
+    }
+
+    // Tarjan's algorithm, iterative; it finishes components sinks first, so every
+    // component's successors already have their live keys when it is finished
+    private void computeLiveKeys() {
+        int n = rooms.length;
+        int keyWords = words - 1;
+        int[] index = new int[n];
+        int[] low = new int[n];
+        int[] edgePos = new int[n];
+        boolean[] onStack = new boolean[n];
+        int[] stack = new int[n];
+        int[] calls = new int[n];
+        Arrays.fill(index, -1);
+        long[] live = new long[Math.max(1, n * keyWords)];
+        int counter = 0;
+        int components = 0;
+        int top = 0;
+
+        for (int root = 0; root < n; root++) {
+            if (index[root] >= 0) continue;
+            int depth = 0;
+            calls[depth++] = root;
+            index[root] = low[root] = counter++;
+            edgePos[root] = edgeStart[root];
+            stack[top++] = root;
+            onStack[root] = true;
+
+            while (depth > 0) {
+                int v = calls[depth - 1];
+                if (edgePos[v] < edgeStart[v + 1]) {
+                    int w = edges[edgePos[v]++];
+                    if (index[w] < 0) {
+                        index[w] = low[w] = counter++;
+                        edgePos[w] = edgeStart[w];
+                        stack[top++] = w;
+                        onStack[w] = true;
+                        calls[depth++] = w;
+                    } else if (onStack[w]) {
+                        low[v] = Math.min(low[v], index[w]);
+                    }
+                    continue;
+                }
+
+                depth--;
+                if (depth > 0) {
+                    int parent = calls[depth - 1];
+                    low[parent] = Math.min(low[parent], low[v]);
+                }
+                if (low[v] != index[v]) continue;
+
+                // v is the root of a component: pop it, then gather its keys
+                int c = components++;
+                int first = top;
+                do {
+                    int w = stack[--top];
+                    onStack[w] = false;
+                    component[w] = c;
+                } while (stack[top] != v);
+                int base = c * keyWords;
+                for (int i = top; i < first; i++) {
+                    int room = stack[i];
+                    if (lockKey[room] >= 0) {
+                        live[base + (lockKey[room] >>> 6)] |= 1L << lockKey[room];
+                    }
+                    for (int e = edgeStart[room]; e < edgeStart[room + 1]; e++) {
+                        int next = component[edges[e]];
+                        if (next == c) continue;
+                        for (int k = 0; k < keyWords; k++) {
+                            live[base + k] |= live[next * keyWords + k];
+                        }
+                    }
+                }
+            }
+        }
+        liveKeys = live;
+    }
+
+    // Clears keys that cannot open anything from this room on
+    private void dropSpentKeys(long[] w, int room) {
+        int base = component[room] * (words - 1);
+        for (int k = 1; k < words; k++) {
+            w[k] &= liveKeys[base + k - 1];
+        }
+    }
+
+    private boolean isLive(int key, int room) {
+        return (liveKeys[component[room] * (words - 1) + (key >>> 6)] & (1L << key)) != 0;
+    }
+
+    // Reverse flood from the exits, ignoring locks
+    private boolean[] leadsOut(HashMap<Integer, Integer> roomIndex) {
+        ArrayList<ArrayList<Integer>> incoming = new ArrayList<>();
+        for (int i = 0; i < rooms.length; i++) {
+            incoming.add(new ArrayList<>());
+        }
+        for (int i = 0; i < rooms.length; i++) {
+            for (Room next : rooms[i].getConnectedRooms()) {
+                incoming.get(roomIndex.get(next.getId())).add(i);
+            }
+        }
+        boolean[] reached = new boolean[rooms.length];
+        ArrayDeque<Integer> queue = new ArrayDeque<>();
+        for (int i = 0; i < rooms.length; i++) {
+            if (rooms[i].isExit()) {
+                reached[i] = true;
+                queue.add(i);
+            }
+        }
+        while (!queue.isEmpty()) {
+            for (int from : incoming.get(queue.poll())) {
+                if (!reached[from]) {
+                    reached[from] = true;
+                    queue.add(from);
+                }
+            }
+        }
+        return reached;
+    }
+
+    // Give up once this many states have been seen
+    public void setMaxStates(long maxStates) {
+        this.maxStates = maxStates;
+    }
+
+    public Solution solve() {
+        if (!solvable) {
+            return new Solution(false, List.of(), 0, false);
+        }
+
+        ConcurrentHashMap<Packed, Step> visited = new ConcurrentHashMap<>();
+        long[] startWords = new long[words];
+        Packed start = new Packed(startWords);
+        visited.put(start, new Step(null, -1));
+        if (rooms[0].isExit()) {
+            return new Solution(true, List.of(), 1, false);
+        }
+
+        AtomicReference<Packed> goal = new AtomicReference<>();
+        AtomicBoolean full = new AtomicBoolean();
+        ArrayList<Packed> frontier = new ArrayList<>(List.of(start));
+        while (!frontier.isEmpty() && goal.get() == null) {
+            frontier = pool.invoke(new Expand(frontier, 0, frontier.size(), visited, goal, full));
+            if (full.get() && goal.get() == null) {
+                return new Solution(true, List.of(), visited.mappingCount(), true);
+            }
+        }
+
+        Packed end = goal.get();
+        if (end == null) {
+            // With an oracle this only happens for a route the solver cannot use
+            return new Solution(false, List.of(), visited.size(), false);
+        }
+        ArrayList<Integer> actions = new ArrayList<>();
+        for (Step step = visited.get(end); step.from() != null; step = visited.get(step.from())) {
+            actions.add(step.action());
+        }
+        Collections.reverse(actions);
+
+        // 'back' undoes every move made since the anchor
+        ArrayList<String> commands = new ArrayList<>();
+        int sinceAnchor = 0;
+        for (int action : actions) {
+            if (action < rooms.length) {
+                commands.add(moveCommands[action]);
+                if (!leadsOut[action]) sinceAnchor++;
+            } else if (action < rooms.length + sources.size()) {
+                commands.add(sources.get(action - rooms.length).command());
+            } else {
+                commands.add(sinceAnchor == 1 ? "back" : "back " + sinceAnchor);
+                sinceAnchor = 0;
+            }
+        }
+        return new Solution(true, commands, visited.size(), false);
+    }
+
+    private static long place(int room, int anchor) {
+        return (long) (anchor + 1) << 32 | room;
+    }
+
+    // Expands frontier[from, to) and returns the new states it reached first
+    private class Expand extends RecursiveTask<ArrayList<Packed>> {
+        private final List<Packed> frontier;
+        private final int from;
+        private final int to;
+        private final ConcurrentHashMap<Packed, Step> visited;
+        private final AtomicReference<Packed> goal;
+        private final AtomicBoolean full; // Set once maxStates is passed
+
+        Expand(List<Packed> frontier, int from, int to, ConcurrentHashMap<Packed, Step> visited,
+               AtomicReference<Packed> goal, AtomicBoolean full) {
+            this.frontier = frontier;
+            this.from = from;
+            this.to = to;
+            this.visited = visited;
+            this.goal = goal;
+            this.full = full;
+        }
+
+        @Override
+        protected ArrayList<Packed> compute() {
+            if (to - from > CHUNK) {
+                int mid = (from + to) >>> 1;
+                Expand right = new Expand(frontier, mid, to, visited, goal, full);
+                right.fork();
+                ArrayList<Packed> left = new Expand(frontier, from, mid, visited, goal, full).compute();
+                left.addAll(right.join());
+                return left;
+            }
+
+            ArrayList<Packed> next = new ArrayList<>();
+            for (int i = from; i < to && goal.get() == null && !full.get(); i++) {
+                if (visited.mappingCount() > maxStates) {
+                    full.set(true);
+                    break;
+                }
+                Packed state = frontier.get(i);
+                int room = state.room();
+                int anchor = state.anchor();
+                for (int e = edgeStart[room]; e < edgeStart[room + 1]; e++) {
+                    int target = edges[e];
+                    if (!worthEntering[target]) continue;
+                    if (lockKey[target] >= 0 && !state.holds(lockKey[target])) continue;
+                    // Only a room that leads out can lead to one, so anchors are never left behind
+                    int targetAnchor = leadsOut[target] ? -1 : anchor >= 0 ? anchor : room;
+                    long[] w = state.words.clone();
+                    w[0] = place(target, targetAnchor);
+                    dropSpentKeys(w, targetAnchor >= 0 ? targetAnchor : target);
+                    Packed reached = offer(state, w, target, next);
+                    if (reached != null && rooms[target].isExit()) {
+                        goal.compareAndSet(null, reached);
+                    }
+                }
+                for (int s : roomSources[room]) {
+                    int key = sources.get(s).key();
+                    if (state.holds(key) || !isLive(key, anchor >= 0 ? anchor : room)) continue;
+                    long[] w = state.words.clone();
+                    w[1 + (key >>> 6)] |= 1L << key;
+                    offer(state, w, rooms.length + s, next);
+                }
+                if (anchor >= 0) {
+                    long[] w = state.words.clone();
+                    w[0] = place(anchor, -1);
+                    offer(state, w, rooms.length + sources.size(), next);
+                }
+            }
+            return next;
+        }
+
+        private Packed offer(Packed from, long[] words, int action, ArrayList<Packed> next) {
+            Packed state = new Packed(words);
+            if (visited.putIfAbsent(state, new Step(from, action)) != null) return null;
+            next.add(state);
+            return state;
+        }
+    }
+
+    // Usage: WorldSolver [world file, worlds/default.world if there] [--threads n] [--max-states n] [--script out.txt]
+    public static void main(String[] args) throws IOException, WorldFormatException {
+        Path worldFile = null;
+        Path script = null;
+        int threads = Runtime.getRuntime().availableProcessors();
+        long maxStates = -1;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--threads" -> threads = Integer.parseInt(args[++i]);
+                case "--max-states" -> maxStates = Long.parseLong(args[++i]);
+                case "--script" -> script = Path.of(args[++i]);
+                default -> worldFile = Path.of(args[i]);
+            }
+        }
+
+        // The built-in world keeps only hashed answers, so its answer key comes from
+        // worlds/default.world when that is at hand
+        if (worldFile == null && Files.exists(DEFAULT_WORLD)) {
+            worldFile = DEFAULT_WORLD;
+        }
+        World world;
+        Map<String, String> answers;
+        if (worldFile != null) {
+            WorldDefinition def = WorldDefinition.load(worldFile);
+            world = def.build();
+            answers = def.answerKey();
+        } else {
+            world = World.createDefault();
+            answers = Map.of();
+        }
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        WorldSolver solver = new WorldSolver(world, pool, answers);
+        if (maxStates > 0) solver.setMaxStates(maxStates);
+        long start = System.nanoTime();
+        Solution solution = solver.solve();
+        double ms = (System.nanoTime() - start) / 1e6;
+        pool.shutdown();
+
+        if (!solution.solvable()) {
+            // A searched world may still need 'back' out of a room that leads out
+            String verdict = solution.statesExplored() == 0 ? "No way out" : "No route along exits and back out of dead ends";
+            System.out.printf("%s (%d states, %.1f ms)%n", verdict, solution.statesExplored(), ms);
+            System.exit(1);
+        }
+        if (solution.gaveUp()) {
+            System.out.printf("Solvable, but no shortest route within %d states (%.1f ms)%n", solution.statesExplored(), ms);
+            System.exit(2);
+        }
+        System.out.printf("Escape in %d commands (%d states, %d threads, %.1f ms)%n",
+                solution.commands().size(), solution.statesExplored(), threads, ms);
+        for (String command : solution.commands()) {
+            System.out.println("  " + command);
+        }
+        if (script != null) {
+            try (Writer out = Files.newBufferedWriter(script)) {
+                out.write("# Shortest escape, found by WorldSolver\n# expect: escaped\n");
+                for (String command : solution.commands()) {
+                    out.write(command);
+                    out.write('\n');
+                }
+            }
+        }
+    }
+}
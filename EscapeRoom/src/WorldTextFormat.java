@@ -0,0 +1,318 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+
+// Human-editable world format, one declaration per line:
+//
+//   # comment
+//   room    <key> "<name>" [exit]
+//   item    <key> "<name>" <value> <type>
+//   riddle  <key> "<name>" <difficulty> "<riddle>" "<answer>" [<reward item>]
+//   code    <key> "<name>" <difficulty> "<code>" "<hint>" [<reward item>]
+//   puzzle  <type> <key> "<name>" <difficulty> "<text>" "<answer>" [<reward item>]
+//   put     <room> <item or puzzle>
+//   exit    <from room> <to room>
+//   lock    <room> <key item>
+//   hint    "<text>"
+//
+// Keys are plain words; references may point forward. The first room is the start.
+// A riddle answer may list synonyms separated by '|', e.g. "echo|an echo".
+// "puzzle" lines take any PuzzleType by name (regex, range, sequence, fuzzy, or
+// one from a plugin); the answer is written the way that type expects.
+public class WorldTextFormat {
+
+    private WorldTextFormat() {
+    }
+
+    // A reference that can only be resolved once the whole file is read
+    private static class PendingRef {
+        final int line;
+        final String command;
+        final String[] keys;
+        final int target; // Puzzle index for rewards
+
+        PendingRef(int line, String command, String[] keys, int target) {
+            this.line = line;
+            this.command = command;
+            this.keys = keys;
+            this.target = target;
+        }
+    }
+
+    public static WorldDefinition read(BufferedReader reader) throws IOException, WorldFormatException {
+        WorldDefinition def = new WorldDefinition();
+        HashMap<String, Integer> roomKeys = new HashMap<>();
+        HashMap<String, Integer> itemKeys = new HashMap<>();
+        HashMap<String, Integer> puzzleKeys = new HashMap<>();
+        HashSet<String> allKeys = new HashSet<>(); // Keys are unique across rooms, items and puzzles
+        ArrayList<PendingRef> pending = new ArrayList<>();
+        ArrayList<String> problems = new ArrayList<>();
+
+        String line;
+        int lineNo = 0;
+        while ((line = reader.readLine()) != null) {
+            lineNo++;
+            ArrayList<String> tokens;
+            try {
+                tokens = tokenize(line);
+            } catch (WorldFormatException e) {
+                problems.add("line " + lineNo + ": " + e.getMessage());
+                continue;
+            }
+            if (tokens.isEmpty()) continue;
+
+            String command = tokens.get(0);
+            try {
+                switch (command) {
+                    case "room":
+                        expect(tokens, 3, 4);
+                        declare(roomKeys, allKeys, tokens.get(1), def.rooms.size());
+                        boolean exit = tokens.size() == 4 && requireWord(tokens.get(3), "exit");
+                        def.rooms.add(new WorldDefinition.RoomDef(tokens.get(1), tokens.get(2), exit));
+                        break;
+
+                    case "item":
+                        expect(tokens, 5, 5);
+                        declare(itemKeys, allKeys, tokens.get(1), def.items.size());
+                        def.items.add(new WorldDefinition.ItemDef(tokens.get(1), tokens.get(2),
+                                parseInt(tokens.get(3)), tokens.get(4)));
+                        break;
+
+                    case "riddle":
+                    case "code":
+                        expect(tokens, 6, 7);
+                        int puzzleIndex = def.puzzles.size();
+                        declare(puzzleKeys, allKeys, tokens.get(1), puzzleIndex);
+                        boolean riddle = command.equals("riddle");
+                        // Riddle lines put the text before the answer, code lines the code before the hint
+                        String text = riddle ? tokens.get(4) : tokens.get(5);
+                        String answer = riddle ? tokens.get(5) : tokens.get(4);
+                        def.puzzles.add(new WorldDefinition.PuzzleDef(command, tokens.get(1), tokens.get(2),
+                                parseInt(tokens.get(3)), text, answer, WorldDefinition.NONE));
+                        if (tokens.size() == 7) {
+                            pending.add(new PendingRef(lineNo, "reward", new String[]{tokens.get(6)}, puzzleIndex));
+                        }
+                        break;
+
+                    case "puzzle":
+                        expect(tokens, 7, 8);
+                        if (PuzzleTypes.find(tokens.get(1)) == null) {
+                            throw new WorldFormatException("unknown puzzle type '" + tokens.get(1) + "'");
+                        }
+                        int index = def.puzzles.size();
+                        declare(puzzleKeys, allKeys, tokens.get(2), index);
+                        def.puzzles.add(new WorldDefinition.PuzzleDef(tokens.get(1), tokens.get(2), tokens.get(3),
+                                parseInt(tokens.get(4)), tokens.get(5), tokens.get(6), WorldDefinition.NONE));
+                        if (tokens.size() == 8) {
+                            pending.add(new PendingRef(lineNo, "reward", new String[]{tokens.get(7)}, index));
+                        }
+                        break;
+
+                    case "put":
+                    case "exit":
+                    case "lock":
+                        expect(tokens, 3, 3);
+                        pending.add(new PendingRef(lineNo, command, new String[]{tokens.get(1), tokens.get(2)}, 0));
+                        break;
+
+                    case "hint":
+                        expect(tokens, 2, 2);
+                        def.hints.add(tokens.get(1));
+                        break;
+
+                    default:
+                        throw new WorldFormatException("unknown declaration '" + command + "'");
+                }
+            } catch (WorldFormatException e) {
+                problems.add("line " + lineNo + ": " + e.getMessage());
+            }
+        }
+
+        // Second pass: every key is known now
+        for (PendingRef ref : pending) {
+            String problem = resolve(def, ref, roomKeys, itemKeys, puzzleKeys);
+            if (problem != null) {
+                problems.add("line " + ref.line + ": " + problem);
+            }
+        }
+
+        if (!problems.isEmpty()) {
+            throw new WorldFormatException("Invalid world:\n  " + String.join("\n  ", problems));
+        }
+        def.validate();
+        return def;
+    }
+
+    private static String resolve(WorldDefinition def, PendingRef ref, HashMap<String, Integer> roomKeys,
+                                  HashMap<String, Integer> itemKeys, HashMap<String, Integer> puzzleKeys) {
+        switch (ref.command) {
+            case "reward": {
+                Integer item = itemKeys.get(ref.keys[0]);
+                if (item == null) return "unknown reward item '" + ref.keys[0] + "'";
+                WorldDefinition.PuzzleDef p = def.puzzles.get(ref.target);
+                def.puzzles.set(ref.target, new WorldDefinition.PuzzleDef(p.type, p.key, p.name, p.difficulty,
+                        p.text, p.answer, item));
+                return null;
+            }
+            case "put": {
+                Integer room = roomKeys.get(ref.keys[0]);
+                if (room == null) return "unknown room '" + ref.keys[0] + "'";
+                Integer item = itemKeys.get(ref.keys[1]);
+                Integer puzzle = puzzleKeys.get(ref.keys[1]);
+                if (item != null) {
+                    def.contents.add(new int[]{room, item});
+                } else if (puzzle != null) {
+                    def.contents.add(new int[]{room, def.puzzleComponent(puzzle)});
+                } else {
+                    return "unknown item or puzzle '" + ref.keys[1] + "'";
+                }
+                return null;
+            }
+            case "exit": {
+                Integer from = roomKeys.get(ref.keys[0]);
+                Integer to = roomKeys.get(ref.keys[1]);
+                if (from == null) return "unknown room '" + ref.keys[0] + "'";
+                if (to == null) return "unknown room '" + ref.keys[1] + "'";
+                def.edges.add(new int[]{from, to});
+                return null;
+            }
+            default: { // lock
+                Integer room = roomKeys.get(ref.keys[0]);
+                Integer key = itemKeys.get(ref.keys[1]);
+                if (room == null) return "unknown room '" + ref.keys[0] + "'";
+                if (key == null) return "unknown key item '" + ref.keys[1] + "'";
+                def.locks.add(new int[]{room, key});
+                return null;
+            }
+        }
+    }
+
+    public static void write(WorldDefinition def, Writer out) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        for (WorldDefinition.RoomDef room : def.rooms) {
+            sb.append("room ").append(room.key).append(' ');
+            quote(sb, room.name);
+            if (room.exit) sb.append(" exit");
+            sb.append('\n');
+        }
+        for (WorldDefinition.ItemDef item : def.items) {
+            sb.append("item ").append(item.key).append(' ');
+            quote(sb, item.name);
+            sb.append(' ').append(item.value).append(' ').append(item.type).append('\n');
+        }
+        for (WorldDefinition.PuzzleDef puzzle : def.puzzles) {
+            boolean code = puzzle.type.equals(WorldDefinition.CODE);
+            if (code || puzzle.type.equals(WorldDefinition.RIDDLE)) {
+                sb.append(puzzle.type).append(' ');
+            } else {
+                sb.append("puzzle ").append(puzzle.type).append(' ');
+            }
+            sb.append(puzzle.key).append(' ');
+            quote(sb, puzzle.name);
+            sb.append(' ').append(puzzle.difficulty).append(' ');
+            quote(sb, code ? puzzle.answer : puzzle.text);
+            sb.append(' ');
+            quote(sb, code ? puzzle.text : puzzle.answer);
+            if (puzzle.reward != WorldDefinition.NONE) {
+                sb.append(' ').append(def.items.get(puzzle.reward).key);
+            }
+            sb.append('\n');
+        }
+        for (int[] content : def.contents) {
+            sb.append("put ").append(def.rooms.get(content[0]).key).append(' ').append(componentKey(def, content[1])).append('\n');
+        }
+        for (int[] edge : def.edges) {
+            sb.append("exit ").append(def.rooms.get(edge[0]).key).append(' ').append(def.rooms.get(edge[1]).key).append('\n');
+        }
+        for (int[] lock : def.locks) {
+            sb.append("lock ").append(def.rooms.get(lock[0]).key).append(' ').append(def.items.get(lock[1]).key).append('\n');
+        }
+        for (String hint : def.hints) {
+            sb.append("hint ");
+            quote(sb, hint);
+            sb.append('\n');
+        }
+        out.write(sb.toString());
+        out.flush();
+    }
+
+    private static String componentKey(WorldDefinition def, int component) {
+        if (component < def.items.size()) {
+            return def.items.get(component).key;
+        }
+        return def.puzzles.get(component - def.items.size()).key;
+    }
+
+    private static void quote(StringBuilder sb, String s) {
+        sb.append('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '"' || c == '\\') sb.append('\\');
+            sb.append(c);
+        }
+        sb.append('"');
+    }
+
+    // Splits on whitespace; "double quoted" tokens may contain spaces, \" and \\
+    static ArrayList<String> tokenize(String line) throws WorldFormatException {
+        ArrayList<String> tokens = new ArrayList<>();
+        int i = 0;
+        int n = line.length();
+        while (i < n) {
+            char c = line.charAt(i);
+            if (Character.isWhitespace(c)) {
+                i++;
+            } else if (c == '#') {
+                break;
+            } else if (c == '"') {
+                StringBuilder sb = new StringBuilder();
+                i++;
+                while (true) {
+                    if (i >= n) throw new WorldFormatException("unterminated string");
+                    c = line.charAt(i++);
+                    if (c == '"') break;
+                    if (c == '\\' && i < n) c = line.charAt(i++);
+                    sb.append(c);
+                }
+                tokens.add(sb.toString());
+            } else {
+                int start = i;
+                while (i < n && !Character.isWhitespace(line.charAt(i))) i++;
+                tokens.add(line.substring(start, i));
+            }
+        }
+        return tokens;
+    }
+
+    private static void expect(ArrayList<String> tokens, int min, int max) throws WorldFormatException {
+        if (tokens.size() < min || tokens.size() > max) {
+            throw new WorldFormatException("wrong number of fields for '" + tokens.get(0) + "'");
+        }
+    }
+
+    private static void declare(HashMap<String, Integer> keys, HashSet<String> allKeys, String key, int index)
+            throws WorldFormatException {
+        if (!allKeys.add(key)) {
+            throw new WorldFormatException("duplicate key '" + key + "'");
+        }
+        keys.put(key, index);
+    }
+
+    private static boolean requireWord(String token, String word) throws WorldFormatException {
+        if (!token.equals(word)) {
+            throw new WorldFormatException("expected '" + word + "' but found '" + token + "'");
+        }
+        return true;
+    }
+
+    private static int parseInt(String token) throws WorldFormatException {
+        try {
+            return Integer.parseInt(token);
+        } catch (NumberFormatException e) {
+            throw new WorldFormatException("not a number: '" + token + "'");
+        }
+    }
+}
@@ -0,0 +1,530 @@
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+// Static checks for world design mistakes that WorldDefinition.validate lets through,
+// since every reference is in range, but that only show up in play:
+//   - a lock whose key no item in the world provides, or whose every copy lies
+//     behind the lock itself
+//   - exit rooms, or whole parts of the map, that cannot be reached from the start
+//   - two exits, or two puzzles, of one room whose names differ only in case, so
+//     the second can never be picked by name
+//   - an item or puzzle placed in more than one room
+// Like PathOracle, it follows exits only and takes locks one at a time: two locks
+// whose keys lie behind each other pass here, the solver finds those.
+//
+// Works on WorldData by index, so a compiled world is checked straight from the
+// mapped file without building a single room. Per-room checks run over ranges of
+// rooms on a ForkJoinPool, which also joins the rooms into connected components
+// (lock-free union-find over the exits). Each component is then a task of its own:
+// rooms away from the start are simply unreachable, while the start's component
+// gets a reachability pass and a dominator tree (Lengauer-Tarjan), which names the
+// rooms every way to a room goes through, so "behind its own lock" is one ancestor
+// test per copy of the key.
+public class WorldValidator {
+    private static final int CHUNK = 1024; // Rooms or items per task
+    private static final int EXAMPLES = 3; // Rooms named per unreachable component
+    private static final VarHandle INTS = MethodHandles.arrayElementVarHandle(int[].class);
+
+    public record Problem(int room, String where, String what) {
+        @Override
+        public String toString() {
+            return where + ": " + what;
+        }
+    }
+
+    private final WorldData in;
+    private final ForkJoinPool pool;
+    private final int roomCount;
+    private final int itemCount;
+    private final ConcurrentLinkedQueue<Problem> problems = new ConcurrentLinkedQueue<>();
+
+    private int[] exitStart; // CSR over the exits
+    private int[] exits;
+    private int[] lockKey; // Room -> key item, or NONE
+    private int[] parent; // Union-find over rooms; roots point to themselves
+    private int[] placedIn; // Component -> first room holding it + 1, 0 when nowhere
+    private int[] placements; // Component -> rooms holding it
+
+    private int[] keyOf; // Item -> lock key name it provides, -1 for none
+    private HashMap<String, Integer> keyIds; // Folded lock key name -> its number
+    private int[] sourceStart; // Key number -> rooms where a copy can be had, CSR
+    private int[] sources;
+
+    // Reports a WorldFormatException from inside a task
+    private static final class Corrupt extends RuntimeException {
+        Corrupt(WorldFormatException e) {
+            super(e);
+        }
+    }
+
+    private interface Work {
+        void run(int index) throws WorldFormatException;
+    }
+
+    // Indexes from..to, split in halves down to `grain` of them
+    private static final class Range extends RecursiveAction {
+        private final Work work;
+        private final int from;
+        private final int to;
+        private final int grain;
+
+        Range(Work work, int from, int to, int grain) {
+            this.work = work;
+            this.from = from;
+            this.to = to;
+            this.grain = grain;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > grain) {
+                int mid = (from + to) >>> 1;
+                invokeAll(new Range(work, from, mid, grain), new Range(work, mid, to, grain));
+                return;
+            }
+            try {
+                for (int i = from; i < to; i++) {
+                    work.run(i);
+                }
+            } catch (WorldFormatException e) {
+                throw new Corrupt(e);
+            }
+        }
+    }
+
+    WorldValidator(WorldData in, ForkJoinPool pool) {
+        this.in = in;
+        this.pool = pool;
+        this.roomCount = in.roomCount();
+        this.itemCount = in.itemCount();
+    }
+
+    // Checks a text or compiled world file; a compiled one is read in place
+    public static List<Problem> check(Path path, ForkJoinPool pool) throws IOException, WorldFormatException {
+        WorldData data = WorldBinaryFormat.isBinary(path)
+                ? WorldBinaryFormat.openData(path)
+                : WorldDefinition.load(path).data();
+        return new WorldValidator(data, pool).validate();
+    }
+
+    // Every problem found, world-wide ones first, then by room
+    public List<Problem> validate() throws WorldFormatException {
+        problems.clear();
+        if (roomCount == 0) {
+            return List.of(new Problem(-1, "world", "has no rooms"));
+        }
+        int componentCount = itemCount + in.puzzleCount();
+        lockKey = new int[roomCount];
+        parent = new int[roomCount];
+        placedIn = new int[componentCount];
+        placements = new int[componentCount];
+        exitStart = new int[roomCount + 1];
+        for (int r = 0; r < roomCount; r++) {
+            parent[r] = r;
+        }
+
+        forEach(roomCount, CHUNK, this::checkRoom);
+        for (int r = 0; r < roomCount; r++) {
+            exitStart[r + 1] += exitStart[r];
+        }
+        exits = new int[exitStart[roomCount]];
+        forEach(roomCount, CHUNK, this::linkExits);
+        forEach(componentCount, CHUNK, this::checkPlacement);
+        findKeySources();
+
+        // Rooms grouped by component; a root is the lowest room of its component, so
+        // the start's comes first
+        int[] root = new int[roomCount];
+        forEach(roomCount, CHUNK, r -> root[r] = find(r));
+        int[] at = new int[roomCount];
+        for (int r = 0; r < roomCount; r++) {
+            at[root[r]]++;
+        }
+        ArrayList<int[]> components = new ArrayList<>();
+        for (int r = 0, next = 0; r < roomCount; r++) {
+            int size = at[r];
+            if (size == 0) continue;
+            components.add(new int[]{next, next + size});
+            at[r] = next;
+            next += size;
+        }
+        int[] members = new int[roomCount];
+        for (int r = 0; r < roomCount; r++) {
+            members[at[root[r]]++] = r;
+        }
+        forEach(components.size(), 1, c -> {
+            int[] span = components.get(c);
+            if (c == 0) {
+                checkStartComponent(Arrays.copyOfRange(members, span[0], span[1]));
+            } else {
+                unreachable(members, span[0], span[1]);
+            }
+        });
+
+        ArrayList<Problem> found = new ArrayList<>(problems);
+        found.sort(Comparator.comparingInt(Problem::room).thenComparing(Problem::what));
+        return found;
+    }
+
+    private void forEach(int count, int grain, Work work) throws WorldFormatException {
+        try {
+            pool.invoke(new Range(work, 0, count, grain));
+        } catch (RuntimeException e) {
+            // The pool may hand back a copy of the exception, with the original as cause
+            for (Throwable t = e; t != null; t = t.getCause()) {
+                if (t.getCause() instanceof WorldFormatException) throw (WorldFormatException) t.getCause();
+            }
+            throw e;
+        }
+    }
+
+    private void report(int room, String what) throws WorldFormatException {
+        problems.add(new Problem(room, "room \"" + in.roomName(room) + "\" (#" + room + ")", what));
+    }
+
+    private String componentName(int c) throws WorldFormatException {
+        return c < itemCount ? "item " + in.itemName(c) : "puzzle " + in.puzzleDef(c - itemCount).name;
+    }
+
+    // Exits counted and checked for names, contents claimed, the lock noted
+    private void checkRoom(int r) throws WorldFormatException {
+        int[] targets = in.exitsOf(r);
+        exitStart[r + 1] = targets.length;
+        if (targets.length > 1) {
+            HashMap<String, Integer> byName = new HashMap<>();
+            for (int target : targets) {
+                String name = in.roomName(target);
+                Integer first = byName.putIfAbsent(GameComponent.foldName(name), target);
+                if (first != null && first != target) {
+                    report(r, "exits to rooms #" + first + " and #" + target + " are both called \"" + name
+                            + "\"; 'move' only ever reaches the first");
+                }
+            }
+        }
+
+        HashMap<String, Integer> puzzleNames = null;
+        for (int c : in.contentsOf(r)) {
+            int seen = (int) INTS.getVolatile(placedIn, c);
+            while ((seen == 0 || seen > r + 1) && !INTS.compareAndSet(placedIn, c, seen, r + 1)) {
+                seen = (int) INTS.getVolatile(placedIn, c);
+            }
+            INTS.getAndAdd(placements, c, 1);
+            if (c >= itemCount) {
+                if (puzzleNames == null) puzzleNames = new HashMap<>();
+                String name = in.puzzleDef(c - itemCount).name;
+                Integer first = puzzleNames.putIfAbsent(GameComponent.foldName(name), c);
+                if (first != null && first != c) {
+                    report(r, "holds two puzzles called \"" + name + "\"; 'solve' only ever finds the first");
+                }
+            }
+        }
+        lockKey[r] = in.lockKeyOf(r);
+    }
+
+    private void linkExits(int r) throws WorldFormatException {
+        int[] targets = in.exitsOf(r);
+        System.arraycopy(targets, 0, exits, exitStart[r], targets.length);
+        for (int target : targets) {
+            union(r, target);
+        }
+    }
+
+    private void checkPlacement(int c) throws WorldFormatException {
+        int count = placements[c];
+        if (count > 1) {
+            report(placedIn[c] - 1, componentName(c) + " is placed here and in " + (count - 1)
+                    + " more room" + (count > 2 ? "s" : ""));
+        }
+    }
+
+    // Locks go by name: any KEY item with the lock's key name opens it, found on the
+    // floor or as the reward of a puzzle
+    private void findKeySources() throws WorldFormatException {
+        keyIds = new HashMap<>();
+        for (int r = 0; r < roomCount; r++) {
+            if (lockKey[r] != WorldDefinition.NONE) {
+                keyIds.putIfAbsent(GameComponent.foldName(in.itemName(lockKey[r])), keyIds.size());
+            }
+        }
+        keyOf = new int[itemCount];
+        forEach(itemCount, CHUNK, i -> {
+            keyOf[i] = -1;
+            if (keyIds.isEmpty()) return;
+            WorldDefinition.ItemDef def = in.itemDef(i);
+            if (def.type.equals("KEY")) {
+                keyOf[i] = keyIds.getOrDefault(GameComponent.foldName(def.name), -1);
+            }
+        });
+
+        // {key number, room} for every copy lying in a room
+        ArrayList<int[]> found = new ArrayList<>();
+        for (int i = 0; i < itemCount; i++) {
+            if (keyOf[i] >= 0 && placedIn[i] > 0) found.add(new int[]{keyOf[i], placedIn[i] - 1});
+        }
+        for (int p = 0; p < in.puzzleCount() && !keyIds.isEmpty(); p++) {
+            int reward = in.rewardIndex(p);
+            int placed = placedIn[itemCount + p];
+            if (reward != WorldDefinition.NONE && keyOf[reward] >= 0 && placed > 0) {
+                found.add(new int[]{keyOf[reward], placed - 1});
+            }
+        }
+        sourceStart = new int[keyIds.size() + 1];
+        sources = WorldBinaryFormat.groupByRoom(found, keyIds.size(), sourceStart);
+
+        for (int r = 0; r < roomCount; r++) {
+            if (lockKey[r] == WorldDefinition.NONE) continue;
+            int k = keyIds.get(GameComponent.foldName(in.itemName(lockKey[r])));
+            if (sourceStart[k] == sourceStart[k + 1]) {
+                report(r, "is locked by " + in.itemName(lockKey[r]) + ", but no room holds a KEY of that name"
+                        + " and no puzzle in a room gives one");
+            }
+        }
+    }
+
+    private int find(int x) {
+        while (true) {
+            int p = (int) INTS.getVolatile(parent, x);
+            if (p == x) return x;
+            int grand = (int) INTS.getVolatile(parent, p);
+            if (grand != p) INTS.compareAndSet(parent, x, p, grand); // Path halving
+            x = grand;
+        }
+    }
+
+    // The higher root goes under the lower, so the links never form a cycle
+    private void union(int a, int b) {
+        while (true) {
+            a = find(a);
+            b = find(b);
+            if (a == b) return;
+            if (a < b) {
+                int t = a;
+                a = b;
+                b = t;
+            }
+            if (INTS.compareAndSet(parent, a, a, b)) return;
+        }
+    }
+
+    // Rooms members[from..to) cannot be reached: one problem for the lot, one per exit
+    private void unreachable(int[] members, int from, int to) throws WorldFormatException {
+        StringBuilder names = new StringBuilder();
+        for (int i = from; i < to; i++) {
+            int r = members[i];
+            if (in.isExitRoom(r)) {
+                report(r, "is an exit, but cannot be reached from the start");
+            }
+            if (i > from && i - from <= EXAMPLES) {
+                names.append(i - from == 1 ? "" : ", ").append('"').append(in.roomName(r)).append('"');
+            }
+        }
+        int others = to - from - 1;
+        if (others == 0) {
+            report(members[from], "cannot be reached from the start");
+        } else {
+            report(members[from], "cannot be reached from the start, nor can " + others + " more room"
+                    + (others > 1 ? "s" : "") + " joined to it (" + names
+                    + (others > EXAMPLES ? ", ..." : "") + ")");
+        }
+    }
+
+    // Reachability from the start, then every lock against its key's copies
+    private void checkStartComponent(int[] members) throws WorldFormatException {
+        int[] dfn = new int[roomCount]; // Room -> depth-first number, -1 when unreached
+        Arrays.fill(dfn, -1);
+        int[] vertex = new int[members.length]; // Number -> room
+        int[] parentOf = new int[members.length]; // In the depth-first tree, by number
+        int reached = depthFirst(dfn, vertex, parentOf);
+
+        boolean exitReached = false;
+        for (int i = 0; i < reached; i++) {
+            exitReached |= in.isExitRoom(vertex[i]);
+        }
+        if (!exitReached) {
+            problems.add(new Problem(-1, "world", "no exit room can be reached from the start"));
+        }
+        if (reached < members.length) {
+            int[] rest = new int[members.length - reached];
+            int n = 0;
+            for (int r : members) {
+                if (dfn[r] < 0) rest[n++] = r;
+            }
+            unreachable(rest, 0, n);
+        }
+
+        int[] idom = dominators(dfn, vertex, parentOf, reached);
+        int[] pre = new int[reached];
+        int[] post = new int[reached];
+        number(idom, reached, pre, post);
+
+        for (int l = 1; l < reached; l++) {
+            int room = vertex[l];
+            if (lockKey[room] == WorldDefinition.NONE) continue;
+            String keyName = in.itemName(lockKey[room]);
+            int k = keyIds.get(GameComponent.foldName(keyName));
+            if (sourceStart[k] == sourceStart[k + 1]) continue; // Reported with the lock
+            boolean anyReached = false;
+            boolean outside = false;
+            for (int s = sourceStart[k]; s < sourceStart[k + 1] && !outside; s++) {
+                int d = dfn[sources[s]];
+                if (d < 0) continue;
+                anyReached = true;
+                outside = pre[d] < pre[l] || post[d] > post[l];
+            }
+            if (!anyReached) {
+                report(room, "is locked by " + keyName + ", but no copy of it can be reached from the start");
+            } else if (!outside) {
+                report(room, "is locked by " + keyName + ", but every way to a copy of it leads through this room");
+            }
+        }
+    }
+
+    // Iterative depth-first search from room 0; returns the number of rooms reached
+    private int depthFirst(int[] dfn, int[] vertex, int[] parentOf) {
+        int[] stack = new int[vertex.length];
+        int[] edge = new int[vertex.length];
+        int top = 0;
+        int count = 0;
+        dfn[0] = count;
+        vertex[count++] = 0;
+        stack[top] = 0;
+        edge[top++] = exitStart[0];
+        while (top > 0) {
+            int v = stack[top - 1];
+            if (edge[top - 1] == exitStart[v + 1]) {
+                top--;
+                continue;
+            }
+            int w = exits[edge[top - 1]++];
+            if (dfn[w] < 0) {
+                dfn[w] = count;
+                vertex[count] = w;
+                parentOf[count++] = dfn[v];
+                stack[top] = w;
+                edge[top++] = exitStart[w];
+            }
+        }
+        return count;
+    }
+
+    // Immediate dominators by depth-first number (Lengauer-Tarjan, simple version
+    // with path compression); the start's entry is 0 itself
+    private int[] dominators(int[] dfn, int[] vertex, int[] parentOf, int n) {
+        // Predecessors by number
+        int[] predStart = new int[n + 1];
+        for (int v = 0; v < n; v++) {
+            int room = vertex[v];
+            for (int e = exitStart[room]; e < exitStart[room + 1]; e++) {
+                predStart[dfn[exits[e]] + 1]++;
+            }
+        }
+        for (int v = 0; v < n; v++) {
+            predStart[v + 1] += predStart[v];
+        }
+        int[] preds = new int[predStart[n]];
+        int[] next = Arrays.copyOf(predStart, n);
+        for (int v = 0; v < n; v++) {
+            int room = vertex[v];
+            for (int e = exitStart[room]; e < exitStart[room + 1]; e++) {
+                preds[next[dfn[exits[e]]]++] = v;
+            }
+        }
+
+        int[] semi = new int[n];
+        int[] label = new int[n];
+        int[] ancestor = next; // Reused
+        int[] idom = new int[n];
+        int[] bucket = new int[n]; // Head of each semidominator's list
+        int[] bucketNext = new int[n];
+        int[] path = new int[n];
+        for (int v = 0; v < n; v++) {
+            semi[v] = v;
+            label[v] = v;
+            ancestor[v] = -1;
+            bucket[v] = -1;
+        }
+        for (int w = n - 1; w > 0; w--) {
+            for (int p = predStart[w]; p < predStart[w + 1]; p++) {
+                int u = eval(preds[p], ancestor, label, semi, path);
+                if (semi[u] < semi[w]) semi[w] = semi[u];
+            }
+            bucketNext[w] = bucket[semi[w]];
+            bucket[semi[w]] = w;
+            int p = parentOf[w];
+            ancestor[w] = p;
+            for (int v = bucket[p]; v != -1; v = bucketNext[v]) {
+                int u = eval(v, ancestor, label, semi, path);
+                idom[v] = semi[u] < semi[v] ? u : p;
+            }
+            bucket[p] = -1;
+        }
+        for (int w = 1; w < n; w++) {
+            if (idom[w] != semi[w]) idom[w] = idom[idom[w]];
+        }
+        idom[0] = 0;
+        return idom;
+    }
+
+    private static int eval(int v, int[] ancestor, int[] label, int[] semi, int[] path) {
+        if (ancestor[v] == -1) return v;
+        // Compress the way up, nearest the root first
+        int top = 0;
+        for (int x = v; ancestor[ancestor[x]] != -1; x = ancestor[x]) {
+            path[top++] = x;
+        }
+        while (top > 0) {
+            int x = path[--top];
+            int a = ancestor[x];
+            if (semi[label[a]] < semi[label[x]]) label[x] = label[a];
+            ancestor[x] = ancestor[a];
+        }
+        return label[v];
+    }
+
+    // Entry and exit times in the dominator tree: a dominates b exactly when
+    // pre[a] <= pre[b] and post[b] <= post[a]
+    private static void number(int[] idom, int n, int[] pre, int[] post) {
+        int[] childStart = new int[n + 1];
+        for (int w = 1; w < n; w++) {
+            childStart[idom[w] + 1]++;
+        }
+        for (int v = 0; v < n; v++) {
+            childStart[v + 1] += childStart[v];
+        }
+        int[] children = new int[Math.max(0, n - 1)];
+        int[] next = Arrays.copyOf(childStart, n);
+        for (int w = 1; w < n; w++) {
+            children[next[idom[w]]++] = w;
+        }
+
+        int[] stack = next; // Reused
+        int[] edge = new int[n];
+        int top = 0;
+        int clock = 0;
+        stack[top] = 0;
+        edge[top++] = childStart[0];
+        pre[0] = clock++;
+        while (top > 0) {
+            int v = stack[top - 1];
+            if (edge[top - 1] == childStart[v + 1]) {
+                post[v] = clock++;
+                top--;
+                continue;
+            }
+            int w = children[edge[top - 1]++];
+            pre[w] = clock++;
+            stack[top] = w;
+            edge[top++] = childStart[w];
+        }
+    }
+}